@@ -0,0 +1,151 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.generation.util.Composer;
+import org.lunarray.model.generation.util.ComposerExecutors;
+import org.lunarray.model.generation.util.FixedVariableResolver;
+import org.lunarray.model.generation.util.MockContext;
+import org.lunarray.model.generation.util.NoopRenderFactory;
+import org.lunarray.model.generation.util.ParallelComposer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Load tests composition of many contexts with a blocking variable resolver,
+ * on a fixed thread pool and on a thread per task executor. The latter uses
+ * virtual threads where available.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockingResolverBenchmark {
+
+	/** The amount of concurrent compositions. */
+	@Param({ "1000", "10000" })
+	public int compositions;
+	/** The executor, 'fixed' or 'perTask'. */
+	@Param({ "fixed", "perTask" })
+	public String executor;
+	/** The blocking time of the resolver, in milliseconds. */
+	@Param({ "1" })
+	public long latency;
+	/** The contexts. */
+	private List<MockContext> contexts;
+	/** The executor service. */
+	private ExecutorService executorService;
+	/** The parallel composer. */
+	private ParallelComposer<MockContext, Object, Object> parallel;
+
+	/**
+	 * Compose all contexts.
+	 * 
+	 * @return The composed contexts.
+	 */
+	@Benchmark
+	public List<MockContext> composeContexts() {
+		return this.parallel.composeContexts(this.contexts, false);
+	}
+
+	/** Sets up the benchmark. */
+	@Setup
+	public void setup() {
+		final SyntheticModel model = new SyntheticModel(20, 2);
+		if ("perTask".equals(this.executor)) {
+			this.executorService = ComposerExecutors.newThreadPerTaskExecutor();
+		} else {
+			this.executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		}
+		final Composer<MockContext, Object, Object> composer = new Composer<MockContext, Object, Object>(
+				new NoopRenderFactory<MockContext, Object>(), new BlockingResolver(model.getModel(), model.getRoot(), this.latency));
+		this.parallel = new ParallelComposer<MockContext, Object, Object>(composer, null, this.executorService);
+		this.contexts = new ArrayList<MockContext>(this.compositions);
+		for (int i = 0; i < this.compositions; i++) {
+			this.contexts.add(new MockContext());
+		}
+	}
+
+	/** Tears down the benchmark. */
+	@TearDown
+	public void tearDown() {
+		this.executorService.shutdownNow();
+	}
+
+	/**
+	 * A resolver that blocks when resolving the descriptor, like a session
+	 * store lookup.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class BlockingResolver
+			extends FixedVariableResolver<MockContext, Object, Object> {
+
+		/** The latency, in milliseconds. */
+		private final long latency;
+
+		/**
+		 * Constructs the resolver.
+		 * 
+		 * @param model
+		 *            The model.
+		 * @param descriptor
+		 *            The descriptor.
+		 * @param latency
+		 *            The latency, in milliseconds.
+		 */
+		public BlockingResolver(final Model<Object> model, final EntityDescriptor<Object> descriptor, final long latency) {
+			super(model, descriptor, null, Locale.getDefault());
+			this.latency = latency;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public EntityDescriptor<Object> getDescriptor(final MockContext context) {
+			try {
+				Thread.sleep(this.latency);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return super.getDescriptor(context);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util.benchmark;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.lunarray.model.descriptor.builder.annotation.presentation.builder.PresQualBuilder;
+import org.lunarray.model.descriptor.builder.annotation.simple.SimpleBuilder;
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.resource.simpleresource.SimpleClazzResource;
+import org.lunarray.model.generation.util.Composer;
+import org.lunarray.model.generation.util.FixedVariableResolver;
+import org.lunarray.model.generation.util.MockContext;
+import org.lunarray.model.generation.util.NoopRenderFactory;
+import org.lunarray.model.generation.util.model.Qualifier01;
+import org.lunarray.model.generation.util.model.Sample01;
+import org.lunarray.model.generation.util.model.Sample02;
+import org.lunarray.model.generation.util.model.SampleEnum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks composition of the sample models.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComposerBenchmark {
+
+	/** The model type, 'presentation' or 'simple'. */
+	@Param({ "presentation", "simple" })
+	public String model;
+	/** The qualifier, 'none' or 'qualifier01'. */
+	@Param({ "none", "qualifier01" })
+	public String qualifier;
+	/** The composer. */
+	private Composer<MockContext, Object, Sample01> composer;
+	/** The context. */
+	private MockContext context;
+	/** The render factory. */
+	private NoopRenderFactory<MockContext, Sample01> factory;
+
+	/**
+	 * Compose with operations.
+	 * 
+	 * @return The amount of render calls.
+	 */
+	@Benchmark
+	public long composeWithOperations() {
+		this.composer.compose(this.context, true);
+		return this.factory.getCalls();
+	}
+
+	/**
+	 * Compose without operations.
+	 * 
+	 * @return The amount of render calls.
+	 */
+	@Benchmark
+	public long composeWithoutOperations() {
+		this.composer.compose(this.context, false);
+		return this.factory.getCalls();
+	}
+
+	/**
+	 * Resolve the label.
+	 * 
+	 * @return The label.
+	 */
+	@Benchmark
+	public String getLabel() {
+		return this.composer.getLabel(this.context);
+	}
+
+	/** Sets up the benchmark. */
+	@Setup
+	public void setup() {
+		final SimpleClazzResource<Object> resource = new SimpleClazzResource<Object>(Sample01.class, Sample02.class, SampleEnum.class);
+		Model<Object> sampleModel;
+		if ("simple".equals(this.model)) {
+			sampleModel = SimpleBuilder.createBuilder().resources(resource).build();
+		} else {
+			sampleModel = PresQualBuilder.createBuilder().resources(resource).build();
+		}
+		Class<?> sampleQualifier = null;
+		if ("qualifier01".equals(this.qualifier)) {
+			sampleQualifier = Qualifier01.class;
+		}
+		this.context = new MockContext();
+		this.factory = new NoopRenderFactory<MockContext, Sample01>();
+		this.composer = new Composer<MockContext, Object, Sample01>(this.factory, new FixedVariableResolver<MockContext, Object, Sample01>(
+				sampleModel, sampleModel.getEntity(Sample01.class), sampleQualifier, Locale.getDefault()));
+	}
+}
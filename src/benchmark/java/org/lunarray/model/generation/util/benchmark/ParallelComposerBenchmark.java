@@ -0,0 +1,124 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util.benchmark;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.generation.util.Composer;
+import org.lunarray.model.generation.util.ContextFactory;
+import org.lunarray.model.generation.util.FixedVariableResolver;
+import org.lunarray.model.generation.util.MockContext;
+import org.lunarray.model.generation.util.NoopRenderFactory;
+import org.lunarray.model.generation.util.ParallelComposer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks sequential against parallel composition of a whole model, with
+ * cold plan caches.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelComposerBenchmark {
+
+	/** The inline depth, the model holds one entity more. */
+	@Param({ "16", "64" })
+	public int depth;
+	/** The amount of members per entity. */
+	@Param({ "100" })
+	public int members;
+	/** The composer. */
+	private Composer<MockContext, Object, Object> composer;
+	/** The context. */
+	private MockContext context;
+	/** The synthetic model. */
+	private SyntheticModel model;
+	/** The parallel composer. */
+	private ParallelComposer<MockContext, Object, Object> parallel;
+	/** The pool. */
+	private ForkJoinPool pool;
+
+	/**
+	 * Compose all entities in parallel.
+	 * 
+	 * @return The entity contexts.
+	 */
+	@Benchmark
+	public List<MockContext> parallel() {
+		return this.parallel.composeModel(this.context, false, null);
+	}
+
+	/**
+	 * Compose all entities sequentially.
+	 * 
+	 * @return The context.
+	 */
+	@Benchmark
+	public MockContext sequential() {
+		this.composer.composeModel(this.context, false, null);
+		return this.context;
+	}
+
+	/** Sets up a cold composer. */
+	@Setup(Level.Invocation)
+	public void setupComposer() {
+		this.composer = new Composer<MockContext, Object, Object>(new NoopRenderFactory<MockContext, Object>(),
+				new FixedVariableResolver<MockContext, Object, Object>(this.model.getModel(), this.model.getRoot(), null, Locale.getDefault()));
+		this.parallel = new ParallelComposer<MockContext, Object, Object>(this.composer, new ContextFactory<MockContext>() {
+			@Override
+			public MockContext createContext(final MockContext parent, final EntityDescriptor<?> descriptor) {
+				return new MockContext();
+			}
+		}, this.pool);
+	}
+
+	/** Sets up the model and pool. */
+	@Setup(Level.Trial)
+	public void setupModel() {
+		this.model = new SyntheticModel(this.members, this.depth);
+		this.context = new MockContext();
+		this.pool = new ForkJoinPool();
+	}
+
+	/** Tears down the pool. */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.pool.shutdownNow();
+	}
+}
@@ -0,0 +1,88 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util.benchmark;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.lunarray.model.generation.util.Composer;
+import org.lunarray.model.generation.util.CompositionPlanCache;
+import org.lunarray.model.generation.util.FixedVariableResolver;
+import org.lunarray.model.generation.util.LabelCache;
+import org.lunarray.model.generation.util.MockContext;
+import org.lunarray.model.generation.util.NoopRenderFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks composition scaling over entity width and inline depth.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SyntheticComposerBenchmark {
+
+	/** The inline depth. */
+	@Param({ "0", "8", "32" })
+	public int depth;
+	/** The amount of members per entity. */
+	@Param({ "10", "100", "1000" })
+	public int members;
+	/** The composer. */
+	private Composer<MockContext, Object, Object> composer;
+	/** The context. */
+	private MockContext context;
+	/** The render factory. */
+	private NoopRenderFactory<MockContext, Object> factory;
+
+	/**
+	 * Compose the synthetic entity.
+	 * 
+	 * @return The amount of render calls.
+	 */
+	@Benchmark
+	public long compose() {
+		this.composer.compose(this.context, false);
+		return this.factory.getCalls();
+	}
+
+	/** Sets up the benchmark. */
+	@Setup
+	public void setup() {
+		final SyntheticModel model = new SyntheticModel(this.members, this.depth);
+		this.context = new MockContext();
+		this.factory = new NoopRenderFactory<MockContext, Object>();
+		this.composer = new Composer<MockContext, Object, Object>(this.factory, new FixedVariableResolver<MockContext, Object, Object>(
+				model.getModel(), model.getRoot(), null, Locale.getDefault()), new CompositionPlanCache(),
+				new LabelCache());
+	}
+}
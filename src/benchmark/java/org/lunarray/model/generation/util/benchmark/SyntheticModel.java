@@ -0,0 +1,306 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util.benchmark;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+import org.lunarray.model.descriptor.presentation.RelationPresentationDescriptor;
+
+/**
+ * Builds synthetic, non-presentation models of arbitrary width and inline
+ * depth. Descriptors are dynamic proxies, every level is typed by an array
+ * class of the level's dimension so the model can resolve inline relations.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class SyntheticModel {
+
+	/** The entities by type. */
+	private final Map<Class<?>, EntityDescriptor<?>> entities;
+	/** The model. */
+	private final Model<Object> model;
+	/** The root entity. */
+	private final EntityDescriptor<Object> root;
+
+	/**
+	 * Constructs a synthetic model.
+	 * 
+	 * @param members
+	 *            The amount of members per entity.
+	 * @param depth
+	 *            The inline depth, every entity but the last inlines the next
+	 *            level with its last member.
+	 */
+	@SuppressWarnings("unchecked")
+	public SyntheticModel(final int members, final int depth) {
+		this.entities = new HashMap<Class<?>, EntityDescriptor<?>>();
+		for (int level = 0; level <= depth; level++) {
+			final Class<?> type = SyntheticModel.levelType(level);
+			final List<PropertyDescriptor<?, ?>> properties = new ArrayList<PropertyDescriptor<?, ?>>(members);
+			for (int i = 0; i < members; i++) {
+				final boolean inline = (level < depth) && (i == members - 1);
+				Class<?> propertyType = String.class;
+				if (inline) {
+					propertyType = SyntheticModel.levelType(level + 1);
+				}
+				properties.add(SyntheticModel.proxy(PropertyDescriptor.class, new Handler("member" + i, propertyType, inline, null)));
+			}
+			this.entities.put(type, SyntheticModel.proxy(EntityDescriptor.class, new Handler("Level" + level, type, false, properties)));
+		}
+		this.root = (EntityDescriptor<Object>) this.entities.get(SyntheticModel.levelType(0));
+		this.model = SyntheticModel.proxy(Model.class, new ModelHandler());
+	}
+
+	/**
+	 * Gets the type of a level.
+	 * 
+	 * @param level
+	 *            The level.
+	 * @return The type.
+	 */
+	private static Class<?> levelType(final int level) {
+		return Array.newInstance(Object.class, new int[level + 1]).getClass();
+	}
+
+	/**
+	 * Creates a proxy.
+	 * 
+	 * @param type
+	 *            The interface.
+	 * @param handler
+	 *            The handler.
+	 * @return The proxy.
+	 * @param <T>
+	 *            The interface type.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(final Class<?> type, final InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(SyntheticModel.class.getClassLoader(), new Class<?>[] { type }, handler);
+	}
+
+	/**
+	 * Gets the value for the model field.
+	 * 
+	 * @return The value for the model field.
+	 */
+	public Model<Object> getModel() {
+		return this.model;
+	}
+
+	/**
+	 * Gets the value for the root field.
+	 * 
+	 * @return The value for the root field.
+	 */
+	public EntityDescriptor<Object> getRoot() {
+		return this.root;
+	}
+
+	/**
+	 * Handles entity and property descriptor calls.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class Handler
+			implements InvocationHandler {
+
+		/** The inline relation, if any. */
+		private final RelationPresentationDescriptor relation;
+		/** The members, for entities. */
+		private final List<PropertyDescriptor<?, ?>> members;
+		/** The name. */
+		private final String name;
+		/** The type. */
+		private final Class<?> type;
+
+		/**
+		 * Constructs the handler.
+		 * 
+		 * @param name
+		 *            The name.
+		 * @param type
+		 *            The type.
+		 * @param inline
+		 *            Inline the type.
+		 * @param members
+		 *            The members, for entities.
+		 */
+		public Handler(final String name, final Class<?> type, final boolean inline, final List<PropertyDescriptor<?, ?>> members) {
+			this.name = name;
+			this.type = type;
+			this.members = members;
+			if (inline) {
+				this.relation = SyntheticModel.proxy(RelationPresentationDescriptor.class, new RelationHandler(name));
+			} else {
+				this.relation = null;
+			}
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) {
+			final String methodName = method.getName();
+			Object result;
+			if ("getMembers".equals(methodName) || "getProperties".equals(methodName) || "getOrderedMembers".equals(methodName)) {
+				result = SyntheticModel.collection(method, this.members);
+			} else if ("adapt".equals(methodName)) {
+				result = null;
+				if (RelationPresentationDescriptor.class.equals(args[0])) {
+					result = this.relation;
+				}
+			} else if ("isRelation".equals(methodName)) {
+				result = Boolean.valueOf(this.relation != null);
+			} else if ("getName".equals(methodName) || "toString".equals(methodName)) {
+				result = this.name;
+			} else if ("getPropertyType".equals(methodName) || "getEntityType".equals(methodName)) {
+				result = this.type;
+			} else {
+				result = SyntheticModel.defaultValue(proxy, method, args);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Handles model calls.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private final class ModelHandler
+			implements InvocationHandler {
+
+		/**
+		 * Default constructor.
+		 */
+		public ModelHandler() {
+			// Default constructor.
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) {
+			final String methodName = method.getName();
+			Object result;
+			if ("getEntity".equals(methodName)) {
+				result = SyntheticModel.this.entities.get(args[0]);
+			} else if ("getEntities".equals(methodName)) {
+				result = SyntheticModel.collection(method, new ArrayList<Object>(SyntheticModel.this.entities.values()));
+			} else if ("toString".equals(methodName)) {
+				result = "SyntheticModel";
+			} else {
+				result = SyntheticModel.defaultValue(proxy, method, args);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Handles inline relation calls.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class RelationHandler
+			implements InvocationHandler {
+
+		/** The related name. */
+		private final String name;
+
+		/**
+		 * Constructs the handler.
+		 * 
+		 * @param name
+		 *            The related name.
+		 */
+		public RelationHandler(final String name) {
+			this.name = name;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) {
+			final String methodName = method.getName();
+			Object result;
+			if ("isInLineIndication".equals(methodName)) {
+				result = Boolean.TRUE;
+			} else if ("getRelatedName".equals(methodName) || "toString".equals(methodName)) {
+				result = this.name;
+			} else {
+				result = SyntheticModel.defaultValue(proxy, method, args);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Creates a collection matching the return type of the method.
+	 * 
+	 * @param method
+	 *            The method.
+	 * @param values
+	 *            The values.
+	 * @return The collection.
+	 */
+	private static Collection<?> collection(final Method method, final List<?> values) {
+		Collection<?> result = values;
+		if (!method.getReturnType().isAssignableFrom(ArrayList.class)) {
+			result = new LinkedHashSet<Object>(values);
+		}
+		return result;
+	}
+
+	/**
+	 * Gets a default value for a method.
+	 * 
+	 * @param proxy
+	 *            The proxy.
+	 * @param method
+	 *            The method.
+	 * @param args
+	 *            The arguments.
+	 * @return The default value.
+	 */
+	private static Object defaultValue(final Object proxy, final Method method, final Object[] args) {
+		final String methodName = method.getName();
+		final Class<?> returnType = method.getReturnType();
+		Object result = null;
+		if ("equals".equals(methodName)) {
+			result = Boolean.valueOf(proxy == args[0]);
+		} else if ("hashCode".equals(methodName)) {
+			result = Integer.valueOf(System.identityHashCode(proxy));
+		} else if (Boolean.TYPE.equals(returnType)) {
+			result = Boolean.FALSE;
+		} else if (Integer.TYPE.equals(returnType)) {
+			result = Integer.valueOf(0);
+		} else if (Long.TYPE.equals(returnType)) {
+			result = Long.valueOf(0);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,167 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.lunarray.common.check.CheckUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Composes with an asynchronous render factory. All render calls are started
+ * before any result is awaited, so the composition takes as long as the
+ * slowest call rather than all calls combined. Results are returned in
+ * composition order. The context moves on while calls are pending, so the
+ * render factory must copy any prefixes it needs during a call.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <C>
+ *            The context type.
+ * @param <S>
+ *            The super type.
+ * @param <E>
+ *            The entity type.
+ * @param <T>
+ *            The render result type.
+ */
+public final class AsyncComposer<C extends Context, S, E extends S, T> {
+
+	/** The logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(AsyncComposer.class);
+	/** The composer. */
+	private final Composer<C, S, E> composer;
+	/** The render factory. */
+	private final AsyncRenderFactory<C, E, T> renderFactory;
+
+	/**
+	 * Constructs the asynchronous composer.
+	 * 
+	 * @param composer
+	 *            The composer, for its caches and variable resolver.
+	 * @param renderFactory
+	 *            The asynchronous render factory.
+	 */
+	public AsyncComposer(final Composer<C, S, E> composer, final AsyncRenderFactory<C, E, T> renderFactory) {
+		this.composer = composer;
+		this.renderFactory = renderFactory;
+	}
+
+	/**
+	 * Composes the resolved entity. Starts all render calls, then awaits them.
+	 * If a call fails, when started or while pending, the pending calls are
+	 * cancelled.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @return The render results, in composition order.
+	 * @throws IllegalStateException
+	 *             Thrown if the render factory returns no pending result for a
+	 *             render call.
+	 */
+	public List<T> compose(final C context, final boolean includeOperations) {
+		AsyncComposer.LOGGER.debug("Started asynchronous composition, include operations: {}", includeOperations);
+		final CompositionPlan<E> plan = this.composer.getPlan(context, includeOperations);
+		final List<Future<T>> pending = new ArrayList<Future<T>>(plan.size());
+		boolean started = false;
+		try {
+			for (final CompositionStep step : plan) {
+				final Future<T> result = step.replay(context, this.renderFactory);
+				if ((step.getType() != StepType.PUSH_PREFIX) && (step.getType() != StepType.POP_PREFIX)) {
+					if (CheckUtil.isNull(result)) {
+						throw new IllegalStateException(String.format("No pending result for %s step of '%s'.", step.getType(),
+								step.getDescriptor()));
+					}
+					pending.add(result);
+				}
+			}
+			started = true;
+		} finally {
+			if (!started) {
+				AsyncComposer.cancel(pending);
+			}
+		}
+		return AsyncComposer.await(pending);
+	}
+
+	/**
+	 * Gets the value for the composer field.
+	 * 
+	 * @return The value for the composer field.
+	 */
+	public Composer<C, S, E> getComposer() {
+		return this.composer;
+	}
+
+	/**
+	 * Gets the value for the renderFactory field.
+	 * 
+	 * @return The value for the renderFactory field.
+	 */
+	public AsyncRenderFactory<C, E, T> getRenderFactory() {
+		return this.renderFactory;
+	}
+
+	/**
+	 * Awaits the pending results.
+	 * 
+	 * @param pending
+	 *            The pending results.
+	 * @return The results.
+	 * @param <T>
+	 *            The render result type.
+	 */
+	private static <T> List<T> await(final List<Future<T>> pending) {
+		final List<T> results = new ArrayList<T>(pending.size());
+		boolean done = false;
+		try {
+			for (final Future<T> result : pending) {
+				results.add(result.get());
+			}
+			done = true;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted during asynchronous composition.", e);
+		} catch (final ExecutionException e) {
+			throw ParallelComposer.unwrap(e);
+		} finally {
+			if (!done) {
+				AsyncComposer.cancel(pending);
+			}
+		}
+		return Collections.unmodifiableList(results);
+	}
+
+	/**
+	 * Cancels the pending results.
+	 * 
+	 * @param pending
+	 *            The pending results.
+	 */
+	private static void cancel(final List<? extends Future<?>> pending) {
+		for (final Future<?> result : pending) {
+			result.cancel(true);
+		}
+	}
+}
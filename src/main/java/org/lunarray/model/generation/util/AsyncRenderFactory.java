@@ -0,0 +1,182 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.Collection;
+import java.util.concurrent.Future;
+
+import org.lunarray.model.descriptor.model.operation.OperationDescriptor;
+import org.lunarray.model.descriptor.model.operation.parameters.CollectionParameterDescriptor;
+import org.lunarray.model.descriptor.model.operation.parameters.ParameterDescriptor;
+import org.lunarray.model.descriptor.model.operation.result.CollectionResultDescriptor;
+import org.lunarray.model.descriptor.model.operation.result.ResultDescriptor;
+import org.lunarray.model.descriptor.model.property.CollectionPropertyDescriptor;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+import org.lunarray.model.descriptor.presentation.RenderType;
+
+/**
+ * The factory for composing the rendering asynchronously. Every call may
+ * start a slow fetch, such as loading picklist options, and returns at once.
+ * The results are joined in composition order once all calls are made.
+ * Calls are made on the composing thread, and the context moves on to the
+ * next member as soon as a call returns. A call that needs the prefixes of
+ * the context while pending must copy them before returning, for example
+ * with {@link PrefixStackContext#getPrefixes()} or
+ * {@link PrefixStackContext#getPath()}, rather than read the context from
+ * another thread.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <C>
+ *            The context type.
+ * @param <E>
+ *            The entity type.
+ * @param <T>
+ *            The render result type.
+ * @see AsyncComposer
+ */
+public interface AsyncRenderFactory<C extends Context, E, T> {
+
+	/**
+	 * Begin a operation.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param descriptor
+	 *            The descriptor.
+	 * @return The pending result.
+	 */
+	Future<T> beginOperation(C context, OperationDescriptor<E> descriptor);
+
+	/**
+	 * End a operation.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param operation
+	 *            The operation.
+	 * @return The pending result.
+	 */
+	Future<T> endOperation(C context, OperationDescriptor<E> operation);
+
+	/**
+	 * Render a collection parameter.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param operation
+	 *            The operation.
+	 * @param descriptor
+	 *            The descriptor.
+	 * @param renderType
+	 *            The render type.
+	 * @return The pending result.
+	 * @param <D>
+	 *            The collection type.
+	 * @param <P>
+	 *            The parameter type.
+	 */
+	<D, P extends Collection<D>> Future<T> renderCollectionParameter(C context, OperationDescriptor<E> operation,
+			CollectionParameterDescriptor<D, P> descriptor, RenderType renderType);
+
+	/**
+	 * Render a collection property.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param descriptor
+	 *            The descriptor.
+	 * @param renderType
+	 *            The render type.
+	 * @return The pending result.
+	 * @param <D>
+	 *            The collection type.
+	 * @param <P>
+	 *            The property type.
+	 */
+	<D, P extends Collection<D>> Future<T> renderCollectionProperty(C context, CollectionPropertyDescriptor<D, P, E> descriptor,
+			RenderType renderType);
+
+	/**
+	 * Render a collection result type.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param operation
+	 *            The operation.
+	 * @param resultDescriptor
+	 *            The result descriptor.
+	 * @param renderType
+	 *            The render type.
+	 * @return The pending result.
+	 * @param <D>
+	 *            The collection type.
+	 * @param <R>
+	 *            The result type.
+	 */
+	<D, R extends Collection<D>> Future<T> renderCollectionResultType(C context, OperationDescriptor<E> operation,
+			CollectionResultDescriptor<D, R> resultDescriptor, RenderType renderType);
+
+	/**
+	 * Render a parameter.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param descriptor
+	 *            The descriptor.
+	 * @param operation
+	 *            The operation.
+	 * @param renderType
+	 *            The render type.
+	 * @return The pending result.
+	 * @param <P>
+	 *            The parameter type.
+	 */
+	<P> Future<T> renderParameter(C context, ParameterDescriptor<P> descriptor, OperationDescriptor<E> operation, RenderType renderType);
+
+	/**
+	 * Render property.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param descriptor
+	 *            The descriptor.
+	 * @param renderType
+	 *            The render type.
+	 * @return The pending result.
+	 * @param <P>
+	 *            The property type.
+	 */
+	<P> Future<T> renderProperty(C context, PropertyDescriptor<P, E> descriptor, RenderType renderType);
+
+	/**
+	 * Render a result type.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param operation
+	 *            The operation.
+	 * @param resultDescriptor
+	 *            The result type.
+	 * @param renderType
+	 *            The render type.
+	 * @return The pending result.
+	 * @param <R>
+	 *            The result type.
+	 */
+	<R> Future<T> renderResultType(C context, OperationDescriptor<E> operation, ResultDescriptor<R> resultDescriptor, RenderType renderType);
+}
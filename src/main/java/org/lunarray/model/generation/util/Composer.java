@@ -18,32 +18,22 @@
 package org.lunarray.model.generation.util;
 
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 
 import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.model.Model;
 import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
-import org.lunarray.model.descriptor.model.member.MemberDescriptor;
-import org.lunarray.model.descriptor.model.operation.OperationDescriptor;
-import org.lunarray.model.descriptor.model.operation.parameters.CollectionParameterDescriptor;
-import org.lunarray.model.descriptor.model.operation.parameters.ParameterDescriptor;
-import org.lunarray.model.descriptor.model.operation.result.CollectionResultDescriptor;
-import org.lunarray.model.descriptor.model.operation.result.ResultDescriptor;
-import org.lunarray.model.descriptor.model.property.CollectionPropertyDescriptor;
-import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
 import org.lunarray.model.descriptor.presentation.PresentationEntityDescriptor;
-import org.lunarray.model.descriptor.presentation.PresentationParameterDescriptor;
-import org.lunarray.model.descriptor.presentation.PresentationPropertyDescriptor;
-import org.lunarray.model.descriptor.presentation.PresentationResultDescriptor;
-import org.lunarray.model.descriptor.presentation.RelationPresentationDescriptor;
-import org.lunarray.model.descriptor.presentation.RenderType;
-import org.lunarray.model.descriptor.qualifier.QualifierEntityDescriptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * The render composer. Composes the rendering.
+ * The render composer. Composes the rendering. Compositions are resolved
+ * into a {@link CompositionPlan} once and replayed from the plan cache
+ * afterwards. The composer holds no per-composition state, a single instance
+ * may be shared between threads.
  * 
  * @author Pal Hargitai (pal@lunarray.org)
  * @param <C>
@@ -56,476 +46,617 @@ import org.slf4j.LoggerFactory;
 public final class Composer<C extends Context, S, E extends S> {
 	/** The logger. */
 	private static final Logger LOGGER = LoggerFactory.getLogger(Composer.class);
-	/** The context. */
-	private transient C context;
+	/** The label cache. */
+	private final LabelCache labelCache;
+	/** The monitor, null if disabled. */
+	private final CompositionMonitor monitor;
+	/** The plan cache. */
+	private final CompositionPlanCache planCache;
+	/** The resolver used internally, the variable resolver wrapped if monitored. */
+	private final VariableResolver<C, S, E> resolver;
 	/** The row strategy factory. */
-	private transient RenderFactory<C, E> strategyFactory;
+	private final RenderFactory<C, E> strategyFactory;
 	/** A variable resolver. */
-	private transient VariableResolver<C, S, E> variableResolver;
+	private final VariableResolver<C, S, E> variableResolver;
 
 	/**
-	 * Default constructor.
+	 * Constructs the composer with its own caches.
+	 * 
+	 * @param strategyFactory
+	 *            The render factory.
+	 * @param variableResolver
+	 *            The variable resolver.
 	 */
-	public Composer() {
-		// Default constructor.
+	public Composer(final RenderFactory<C, E> strategyFactory, final VariableResolver<C, S, E> variableResolver) {
+		this(strategyFactory, variableResolver, new CompositionPlanCache(), new LabelCache());
+	}
+
+	/**
+	 * Constructs the composer.
+	 * 
+	 * @param strategyFactory
+	 *            The render factory.
+	 * @param variableResolver
+	 *            The variable resolver.
+	 * @param planCache
+	 *            The plan cache, allows sharing plans between composers.
+	 * @param labelCache
+	 *            The label cache, allows sharing labels between composers.
+	 */
+	public Composer(final RenderFactory<C, E> strategyFactory, final VariableResolver<C, S, E> variableResolver,
+			final CompositionPlanCache planCache, final LabelCache labelCache) {
+		this(strategyFactory, variableResolver, planCache, labelCache, null);
+	}
+
+	/**
+	 * Constructs a monitored composer. The variable resolver is wrapped to
+	 * report its calls, the getter returns it unwrapped.
+	 * 
+	 * @param strategyFactory
+	 *            The render factory.
+	 * @param variableResolver
+	 *            The variable resolver.
+	 * @param planCache
+	 *            The plan cache, may be shared.
+	 * @param labelCache
+	 *            The label cache, may be shared.
+	 * @param monitor
+	 *            The monitor, null to disable monitoring.
+	 */
+	public Composer(final RenderFactory<C, E> strategyFactory, final VariableResolver<C, S, E> variableResolver,
+			final CompositionPlanCache planCache, final LabelCache labelCache, final CompositionMonitor monitor) {
+		this.strategyFactory = strategyFactory;
+		this.planCache = planCache;
+		this.labelCache = labelCache;
+		this.monitor = monitor;
+		this.variableResolver = variableResolver;
+		if (CheckUtil.isNull(monitor)) {
+			this.resolver = variableResolver;
+		} else {
+			this.resolver = new MonitoredVariableResolver<C, S, E>(variableResolver, monitor);
+		}
 	}
 
 	/**
 	 * Composes the property render strategy list.
 	 * 
+	 * @param context
+	 *            The context.
 	 * @param includeOperations
 	 *            Include the operations.
 	 */
-	public void compose(final boolean includeOperations) {
+	public void compose(final C context, final boolean includeOperations) {
 		Composer.LOGGER.debug("Started composition, inculde operations: {}", includeOperations);
+		final long start = this.startTime();
 		// Get the descriptor.
-		final EntityDescriptor<E> entityDescriptor = this.getEntityDescriptor();
-		// Get presentation descriptor.
-		@SuppressWarnings("unchecked")
-		// Can't be more sure.
-		final PresentationEntityDescriptor<E> presentationDescriptor = entityDescriptor.adapt(PresentationEntityDescriptor.class);
-		// Get strategies.
-		List<? extends MemberDescriptor<E>> memberDescriptors;
-		if (CheckUtil.isNull(presentationDescriptor)) {
-			Composer.LOGGER.debug("Processing non-presentation descriptor.");
-			if (includeOperations) {
-				memberDescriptors = new LinkedList<MemberDescriptor<E>>(entityDescriptor.getMembers());
-			} else {
-				memberDescriptors = new LinkedList<MemberDescriptor<E>>(entityDescriptor.getProperties());
-			}
-		} else {
-			Composer.LOGGER.debug("Processing presentation descriptor.");
-			if (includeOperations) {
-				memberDescriptors = presentationDescriptor.getOrderedMembers();
-			} else {
-				memberDescriptors = presentationDescriptor.getOrderedProperties();
-			}
-		}
-		final Class<?> qualifier = this.getQualifier();
-		Composer.LOGGER.debug("Resolving {} members for qualifier '{}'.", memberDescriptors.size(), qualifier);
-		this.resolveMembers(memberDescriptors, qualifier);
+		final EntityDescriptor<E> entityDescriptor = this.resolver.getDescriptor(context);
+		final Class<?> qualifier = this.getQualifier(context);
+		this.replay(context, this.getPlan(context, entityDescriptor, qualifier, null, includeOperations, null), start);
 	}
 
 	/**
-	 * Gets the value for the context field.
+	 * Composes the members the filter accepts. The filtered plan is cached
+	 * by filter, so the filter must have value equality or be reused.
 	 * 
-	 * @return The value for the context field.
+	 * @param context
+	 *            The context.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @param filter
+	 *            The member filter.
 	 */
-	public C getContext() {
-		return this.context;
+	public void compose(final C context, final boolean includeOperations, final MemberFilter filter) {
+		Composer.LOGGER.debug("Started filtered composition, include operations: {}", includeOperations);
+		final long start = this.startTime();
+		final EntityDescriptor<E> entityDescriptor = this.resolver.getDescriptor(context);
+		final Class<?> qualifier = this.getQualifier(context);
+		this.replay(context, this.getPlan(context, entityDescriptor, qualifier, null, includeOperations, filter), start);
+	}
+
+	/**
+	 * Composes a window of top level members, for entities too wide to
+	 * compose at once. The plan is built once and cached, a window only
+	 * replays its own members. A window isn't reported to the monitor as a
+	 * composition.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @param offset
+	 *            The index of the first member, the cursor.
+	 * @param limit
+	 *            The maximum amount of members.
+	 * @return The cursor of the next window, equal to the member count of
+	 *         the plan once all members are composed.
+	 * @see CompositionPlan#getMemberCount()
+	 */
+	public int compose(final C context, final boolean includeOperations, final int offset, final int limit) {
+		Composer.LOGGER.debug("Started windowed composition, offset: {}, limit: {}", offset, limit);
+		final EntityDescriptor<E> entityDescriptor = this.resolver.getDescriptor(context);
+		final Class<?> qualifier = this.getQualifier(context);
+		return this.getPlan(context, entityDescriptor, qualifier, null, includeOperations, null).replay(context, this.strategyFactory, offset,
+				limit);
+	}
+
+	/**
+	 * Composes a batch of entities in one pass. The model, locale and
+	 * qualifier are resolved once for the whole batch.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param descriptors
+	 *            The (unqualified) entity descriptors, in composition order.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @param listener
+	 *            The listener, called before and after every entity, may be null.
+	 */
+	public void composeAll(final C context, final Collection<? extends EntityDescriptor<? extends E>> descriptors,
+			final boolean includeOperations, final CompositionListener<C, E> listener) {
+		this.composeAll(context, descriptors, this.resolver.getModel(context), includeOperations, listener);
+	}
+
+	/**
+	 * Composes all entities of the resolved model in one pass. Only sensible
+	 * for a composer whose entity type is the model super type.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @param listener
+	 *            The listener, called before and after every entity, may be null.
+	 */
+	@SuppressWarnings("unchecked")
+	// The composer is typed on the super type.
+	public void composeModel(final C context, final boolean includeOperations, final CompositionListener<C, E> listener) {
+		final Model<S> model = this.resolver.getModel(context);
+		final Collection<?> entities = model.getEntities();
+		this.composeAll(context, (Collection<? extends EntityDescriptor<? extends E>>) entities, model, includeOperations, listener);
+	}
+
+	/**
+	 * Gets the composition events for the resolved entity. The events are
+	 * pulled from the composition plan, rather than pushed into the render
+	 * factory, so a consumer may stop at any event. The context is not
+	 * modified, prefixes are events as well.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @return The composition events, in composition order.
+	 */
+	public Iterator<CompositionStep> events(final C context, final boolean includeOperations) {
+		return this.getPlan(context, includeOperations).iterator();
 	}
 
 	/**
 	 * Gets the label for the form.
 	 * 
+	 * @param context
+	 *            The context.
 	 * @return The label.
 	 */
-	public String getLabel() {
-		// Get the descriptor.
-		final EntityDescriptor<?> entityDescriptor = this.getEntityDescriptor();
-		// Get presentation descriptor.
-		final PresentationEntityDescriptor<?> presentationDescriptor = entityDescriptor.adapt(PresentationEntityDescriptor.class);
-		// The label.
-		String label;
-		Locale locale = null;
-		if (CheckUtil.isNull(presentationDescriptor)) {
-			label = entityDescriptor.getName();
-		} else {
-			locale = this.variableResolver.getLocale(this.context);
-			if (CheckUtil.isNull(locale)) {
-				label = presentationDescriptor.getDescription();
-			} else {
-				label = presentationDescriptor.getDescription(locale);
-			}
-		}
-		Composer.LOGGER.debug("Resolved label '{}' for locale '{}'.", label, locale);
-		return label;
+	public String getLabel(final C context) {
+		final EntityDescriptor<E> descriptor = this.resolver.getDescriptor(context);
+		return this.getLabel(descriptor, this.getQualifier(context), this.resolver.getLocale(context));
 	}
 
 	/**
-	 * Gets the value for the propertyRenderStrategyFactory field.
+	 * Gets the value for the labelCache field.
 	 * 
-	 * @return The value for the propertyRenderStrategyFactory field.
+	 * @return The value for the labelCache field.
 	 */
-	public RenderFactory<C, E> getPropertyRenderStrategyFactory() {
-		return this.strategyFactory;
+	public LabelCache getLabelCache() {
+		return this.labelCache;
 	}
 
 	/**
-	 * Gets the value for the variableResolver field.
+	 * Gets the value for the monitor field.
 	 * 
-	 * @return The value for the variableResolver field.
+	 * @return The value for the monitor field, null if disabled.
 	 */
-	public VariableResolver<C, S, E> getVariableResolver() {
-		return this.variableResolver;
+	public CompositionMonitor getMonitor() {
+		return this.monitor;
 	}
 
 	/**
-	 * Sets a new value for the context field.
+	 * Gets the plan for the resolved entity, from the cache if possible.
 	 * 
 	 * @param context
-	 *            The new value for the context field.
+	 *            The context.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @return The plan.
 	 */
-	public void setContext(final C context) {
-		this.context = context;
+	public CompositionPlan<E> getPlan(final C context, final boolean includeOperations) {
+		final EntityDescriptor<E> entityDescriptor = this.resolver.getDescriptor(context);
+		return this.getPlan(context, entityDescriptor, this.getQualifier(context), null, includeOperations, null);
 	}
 
 	/**
-	 * Sets a new value for the propertyRenderStrategyFactory field.
+	 * Gets the filtered plan for the resolved entity, from the cache if
+	 * possible. Plans are cached by filter, so the filter must have value
+	 * equality or be reused.
 	 * 
-	 * @param strategyFactory
-	 *            The new value for the propertyRenderStrategyFactory field.
+	 * @param context
+	 *            The context.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @param filter
+	 *            The member filter, may be null.
+	 * @return The plan.
 	 */
-	public void setPropertyRenderStrategyFactory(final RenderFactory<C, E> strategyFactory) {
-		this.strategyFactory = strategyFactory;
+	public CompositionPlan<E> getPlan(final C context, final boolean includeOperations, final MemberFilter filter) {
+		final EntityDescriptor<E> entityDescriptor = this.resolver.getDescriptor(context);
+		return this.getPlan(context, entityDescriptor, this.getQualifier(context), null, includeOperations, filter);
 	}
 
 	/**
-	 * Sets a new value for the variableResolver field.
+	 * Gets the value for the planCache field.
 	 * 
-	 * @param variableResolver
-	 *            The new value for the variableResolver field.
+	 * @return The value for the planCache field.
 	 */
-	public void setVariableResolver(final VariableResolver<C, S, E> variableResolver) {
-		this.variableResolver = variableResolver;
+	public CompositionPlanCache getPlanCache() {
+		return this.planCache;
 	}
 
 	/**
-	 * Make a list from a collection.
+	 * Gets the value for the propertyRenderStrategyFactory field.
 	 * 
-	 * @param <T>
-	 *            The collection type.
-	 * @param collection
-	 *            The collection.
-	 * @return The list.
+	 * @return The value for the propertyRenderStrategyFactory field.
 	 */
-	private <T> List<T> collectionToList(final Collection<T> collection) {
-		return new LinkedList<T>(collection);
+	public RenderFactory<C, E> getPropertyRenderStrategyFactory() {
+		return this.strategyFactory;
 	}
 
 	/**
-	 * Gets the entity descriptor.
+	 * Gets the value for the variableResolver field.
 	 * 
-	 * @return The entity descriptor.
+	 * @return The value for the variableResolver field.
 	 */
-	private EntityDescriptor<E> getEntityDescriptor() {
-		final Class<?> qualifier = this.getQualifier();
-		EntityDescriptor<E> entityDescriptor;
-		entityDescriptor = this.variableResolver.getDescriptor(this.context);
-		@SuppressWarnings("unchecked")
-		// Can't be more sure.
-		final QualifierEntityDescriptor<E> qualifierDescriptor = entityDescriptor.adapt(QualifierEntityDescriptor.class);
-		if (!CheckUtil.isNull(qualifier) && !CheckUtil.isNull(qualifierDescriptor)) {
-			entityDescriptor = qualifierDescriptor.getQualifierEntity(qualifier);
+	public VariableResolver<C, S, E> getVariableResolver() {
+		return this.variableResolver;
+	}
+
+	/**
+	 * Recomposes the resolved entity incrementally. The current plan is
+	 * compared with the previous plan by top level member, and only removed,
+	 * inserted, changed and moved members are passed to the factory.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param previous
+	 *            The plan of the previous composition, may be null to insert
+	 *            all members.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @param factory
+	 *            The delta render factory.
+	 * @return The current plan, to pass to the next recomposition.
+	 */
+	public CompositionPlan<E> recompose(final C context, final CompositionPlan<? extends E> previous, final boolean includeOperations,
+			final DeltaRenderFactory<C, E> factory) {
+		Composer.LOGGER.debug("Started recomposition, include operations: {}", includeOperations);
+		final CompositionPlan<E> current = this.getPlan(context, includeOperations);
+		if (current != previous) {
+			PlanDiff.replay(previous, current, context, factory);
 		}
-		Composer.LOGGER.debug("Resolved entity descriptor: {}", entityDescriptor);
-		return entityDescriptor;
+		return current;
 	}
 
 	/**
-	 * Gets the qualifier.
+	 * Composes a batch of entities.
 	 * 
-	 * @return The qualifier.
+	 * @param context
+	 *            The context.
+	 * @param descriptors
+	 *            The (unqualified) entity descriptors.
+	 * @param model
+	 *            The model.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @param listener
+	 *            The listener, may be null.
 	 */
-	private Class<?> getQualifier() {
-		Class<?> qualifier = null;
-		// Find qualifier.
-		if (this.variableResolver.hasQualifier(this.context)) {
-			qualifier = this.variableResolver.getQualifier(this.context);
+	private void composeAll(final C context, final Collection<? extends EntityDescriptor<? extends E>> descriptors, final Model<S> model,
+			final boolean includeOperations, final CompositionListener<C, E> listener) {
+		Composer.LOGGER.debug("Started batch composition of {} entities, include operations: {}", descriptors.size(), includeOperations);
+		final Class<?> qualifier = this.getQualifier(context);
+		final Locale locale = this.resolver.getLocale(context);
+		for (final EntityDescriptor<? extends E> descriptor : descriptors) {
+			this.composeEntity(context, descriptor, qualifier, model, locale, includeOperations, listener);
 		}
-		return qualifier;
 	}
 
 	/**
-	 * Process an inline property.
+	 * Composes a single entity of a batch.
 	 * 
+	 * @param context
+	 *            The context.
+	 * @param descriptor
+	 *            The (unqualified) entity descriptor.
 	 * @param qualifier
-	 *            The qualifier.
-	 * @param property
-	 *            The property.
-	 * @param innerDescriptorArgument
-	 *            The descriptor.
+	 *            The qualifier, may be null.
+	 * @param model
+	 *            The model.
+	 * @param locale
+	 *            The locale, may be null.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @param listener
+	 *            The listener, may be null.
 	 * @param <F>
 	 *            The entity type.
 	 */
-	private <F extends S> void processInline(final Class<?> qualifier, final PropertyDescriptor<F, ?> property,
-			final EntityDescriptor<F> innerDescriptorArgument) {
-		Composer.LOGGER.debug("Processing inline descriptor '{}' for property: {}", innerDescriptorArgument, property);
-		// Get qualifier descriptor.
-		EntityDescriptor<F> innerDescriptor = innerDescriptorArgument;
-		@SuppressWarnings("unchecked")
-		// Can't be more sure.
-		final QualifierEntityDescriptor<F> innerQualifierDescriptor = innerDescriptor.adapt(QualifierEntityDescriptor.class);
-		if (!CheckUtil.isNull(qualifier) && !CheckUtil.isNull(innerQualifierDescriptor)) {
-			innerDescriptor = innerQualifierDescriptor.getQualifierEntity(qualifier);
+	<F extends E> void composeEntity(final C context, final EntityDescriptor<F> descriptor, final Class<?> qualifier,
+			final Model<S> model, final Locale locale, final boolean includeOperations, final CompositionListener<C, E> listener) {
+		final long start = this.startTime();
+		if (!CheckUtil.isNull(listener)) {
+			listener.beginEntity(context, descriptor, this.getLabel(descriptor, qualifier, locale));
 		}
-		// Presentation descriptor.
-		@SuppressWarnings("unchecked")
-		// Can't be more sure.
-		final PresentationEntityDescriptor<F> innerPresentationDescriptor = innerDescriptor.adapt(PresentationEntityDescriptor.class);
-		// Resolve properties.
-		List<MemberDescriptor<F>> innerProperties;
-		if (CheckUtil.isNull(innerPresentationDescriptor)) {
-			innerProperties = this.collectionToList(innerDescriptor.getMembers());
-		} else {
-			innerProperties = innerPresentationDescriptor.getOrderedMembers();
+		this.replay(context, this.getPlan(context, descriptor, qualifier, model, includeOperations, null), start);
+		if (!CheckUtil.isNull(listener)) {
+			listener.endEntity(context, descriptor);
 		}
-		Composer.LOGGER.debug("Resolved {} properties for inner descriptor: {}", innerProperties.size(), innerDescriptorArgument);
-		// Push variable.
-		this.context.pushPrefix(property);
-		// Render properties.
-		this.resolveMembers(innerProperties, qualifier);
-		// Pop variable.
-		this.context.popPrefix();
 	}
 
 	/**
-	 * Process presentation descriptor.
+	 * Gets the label, from the cache if possible.
 	 * 
-	 * @param parameter
-	 *            The parameter.
-	 * @param presentationParameter
-	 *            The presentation parameter.
-	 * @param operation
-	 *            The operation.
-	 * @param <P>
-	 *            The parameter type.
-	 * @param <D>
-	 *            The parameter Collection type.
+	 * @param descriptor
+	 *            The (unqualified) entity descriptor.
+	 * @param qualifier
+	 *            The qualifier, may be null.
+	 * @param locale
+	 *            The locale, may be null.
+	 * @return The label.
 	 */
-	@SuppressWarnings("unchecked")
-	private <P, D extends Collection<P>> void processPresentationDescriptor(final ParameterDescriptor<P> parameter,
-			final PresentationParameterDescriptor<P> presentationParameter, final OperationDescriptor<E> operation) {
-		final CollectionParameterDescriptor<P, D> descriptor = parameter.adapt(CollectionParameterDescriptor.class);
-		if (CheckUtil.isNull(presentationParameter)) {
-			this.processPresentationParameter(parameter, operation, descriptor);
-		} else {
-			if (CheckUtil.isNull(descriptor)) {
-				this.strategyFactory.renderParameter(this.context, presentationParameter, operation, presentationParameter.getRenderType());
-			} else {
-				this.strategyFactory.renderCollectionParameter(this.context, operation, descriptor, presentationParameter.getRenderType());
-			}
+	private String getLabel(final EntityDescriptor<?> descriptor, final Class<?> qualifier, final Locale locale) {
+		String label = this.labelCache.getLabel(descriptor, qualifier, locale);
+		if (!CheckUtil.isNull(this.monitor)) {
+			this.monitor.labelLookup(!CheckUtil.isNull(label));
 		}
+		if (CheckUtil.isNull(label)) {
+			label = this.resolveLabel(descriptor, qualifier, locale);
+			this.labelCache.putLabel(descriptor, qualifier, locale, label);
+		}
+		return label;
 	}
 
 	/**
-	 * Process presentation descriptor.
+	 * Gets the plan, from the cache if possible.
 	 * 
-	 * @param property
-	 *            The property.
-	 * @param presentationProperty
-	 *            The descriptor.
-	 * @param <P>
-	 *            The property type.
+	 * @param context
+	 *            The context.
+	 * @param descriptor
+	 *            The (unqualified) entity descriptor.
+	 * @param qualifier
+	 *            The qualifier, may be null.
+	 * @param model
+	 *            The model, resolved from the context if null.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @param filter
+	 *            The member filter, may be null.
+	 * @return The plan.
 	 * @param <F>
 	 *            The entity type.
 	 */
-	@SuppressWarnings("unchecked")
-	private <P, F> void processPresentationDescriptor(final PropertyDescriptor<P, F> property,
-			final PresentationPropertyDescriptor<P, F> presentationProperty) {
-		final CollectionPropertyDescriptor<P, Collection<P>, F> descriptor = property.adapt(CollectionPropertyDescriptor.class);
-		if (CheckUtil.isNull(presentationProperty)) {
-			this.processPresentationProperty(property, descriptor);
-		} else {
-			if (CheckUtil.isNull(descriptor)) {
-				this.strategyFactory.renderProperty(this.context, (PropertyDescriptor<P, E>) presentationProperty,
-						presentationProperty.getRenderType());
-			} else {
-				this.strategyFactory.renderCollectionProperty(this.context, (CollectionPropertyDescriptor<P, Collection<P>, E>) descriptor,
-						presentationProperty.getRenderType());
+	private <F extends E> CompositionPlan<F> getPlan(final C context, final EntityDescriptor<F> descriptor, final Class<?> qualifier,
+			final Model<S> model, final boolean includeOperations, final MemberFilter filter) {
+		CompositionPlan<F> plan = this.planCache.getPlan(descriptor, qualifier, includeOperations, filter);
+		if (!CheckUtil.isNull(this.monitor)) {
+			this.monitor.planLookup(!CheckUtil.isNull(plan));
+		}
+		if (CheckUtil.isNull(plan)) {
+			Composer.LOGGER.debug("Building plan for descriptor '{}' and qualifier '{}'.", descriptor, qualifier);
+			Model<S> planModel = model;
+			if (CheckUtil.isNull(planModel)) {
+				planModel = this.resolver.getModel(context);
 			}
+			final PlanBuilder<S> builder = new PlanBuilder<S>(planModel, qualifier, filter, this.planCache);
+			plan = this.planCache.putPlan(descriptor, qualifier, includeOperations, filter, builder.build(descriptor, includeOperations));
 		}
+		return plan;
 	}
 
 	/**
-	 * Process the presentation descriptor.
+	 * Gets the qualifier.
 	 * 
-	 * @param parameter
-	 *            The result type.
-	 * @param presentationParameter
-	 *            The presentation result type.
-	 * @param operation
-	 *            The operation.
-	 * @param <R>
-	 *            The result type.
-	 * @param <D>
-	 *            The parameter Collection type.
+	 * @param context
+	 *            The context.
+	 * @return The qualifier.
 	 */
-	@SuppressWarnings("unchecked")
-	private <R, D extends Collection<R>> void processPresentationDescriptor(final ResultDescriptor<R> parameter,
-			final PresentationResultDescriptor<R> presentationParameter, final OperationDescriptor<E> operation) {
-		final CollectionResultDescriptor<R, D> descriptor = parameter.adapt(CollectionResultDescriptor.class);
-		if (CheckUtil.isNull(presentationParameter)) {
-			this.processPresentationResult(parameter, operation, descriptor);
-		} else {
-			if (CheckUtil.isNull(descriptor)) {
-				this.strategyFactory
-						.renderResultType(this.context, operation, presentationParameter, presentationParameter.getRenderType());
-			} else {
-				this.strategyFactory.renderCollectionResultType(this.context, operation, descriptor, presentationParameter.getRenderType());
-			}
+	Class<?> getQualifier(final C context) {
+		Class<?> qualifier = null;
+		// Find qualifier.
+		if (this.resolver.hasQualifier(context)) {
+			qualifier = this.resolver.getQualifier(context);
 		}
+		return qualifier;
 	}
 
 	/**
-	 * Process presentation descriptor.
+	 * Gets the resolver used internally, which reports to the monitor if
+	 * monitored.
 	 * 
-	 * @param parameter
-	 *            The parameter.
-	 * @param operation
-	 *            The operation.
-	 * @param descriptor
-	 *            The collection descriptor.
-	 * @param <P>
-	 *            The parameter type.
-	 * @param <D>
-	 *            The parameter Collection type.
+	 * @return The resolver.
 	 */
-	private <P, D extends Collection<P>> void processPresentationParameter(final ParameterDescriptor<P> parameter,
-			final OperationDescriptor<E> operation, final CollectionParameterDescriptor<P, D> descriptor) {
-		if (parameter.isRelation()) {
-			if (CheckUtil.isNull(descriptor)) {
-				this.strategyFactory.renderParameter(this.context, parameter, operation, RenderType.PICKLIST);
-			} else {
-				this.strategyFactory.renderCollectionParameter(this.context, operation, descriptor, RenderType.DROPDOWN);
-			}
-		} else {
-			this.strategyFactory.renderParameter(this.context, parameter, operation, RenderType.TEXT);
+	VariableResolver<C, S, E> getResolver() {
+		return this.resolver;
+	}
+
+	/**
+	 * Replays a plan, and reports the composition if monitored.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param plan
+	 *            The plan.
+	 * @param start
+	 *            The start of the composition.
+	 */
+	private void replay(final C context, final CompositionPlan<? extends E> plan, final long start) {
+		plan.replay(context, this.strategyFactory);
+		if (!CheckUtil.isNull(this.monitor)) {
+			this.monitor.composed(plan.getStatistics(), System.nanoTime() - start);
 		}
 	}
 
 	/**
-	 * Process presentation property.
+	 * Resolves the label for the form.
 	 * 
-	 * @param property
-	 *            The property.
 	 * @param descriptor
-	 *            The descriptor.
-	 * @param <P>
-	 *            The property type.
+	 *            The (unqualified) entity descriptor.
+	 * @param qualifier
+	 *            The qualifier, may be null.
+	 * @param locale
+	 *            The locale, may be null.
+	 * @return The label.
 	 * @param <F>
 	 *            The entity type.
 	 */
-	@SuppressWarnings("unchecked")
-	private <P, F> void processPresentationProperty(final PropertyDescriptor<P, F> property,
-			final CollectionPropertyDescriptor<P, Collection<P>, F> descriptor) {
-		if (property.isRelation()) {
-			if (CheckUtil.isNull(descriptor)) {
-				this.strategyFactory.renderProperty(this.context, (PropertyDescriptor<P, E>) property, RenderType.PICKLIST);
-			} else {
-				this.strategyFactory.renderCollectionProperty(this.context, (CollectionPropertyDescriptor<P, Collection<P>, E>) descriptor,
-						RenderType.DROPDOWN);
-			}
+	private <F> String resolveLabel(final EntityDescriptor<F> descriptor, final Class<?> qualifier, final Locale locale) {
+		// Get the descriptor.
+		final EntityDescriptor<F> entityDescriptor = this.planCache.getQualifiedDescriptors().qualify(descriptor, qualifier);
+		Composer.LOGGER.debug("Resolved entity descriptor: {}", entityDescriptor);
+		// Get presentation descriptor.
+		final PresentationEntityDescriptor<?> presentationDescriptor = entityDescriptor.adapt(PresentationEntityDescriptor.class);
+		// The label.
+		String label;
+		if (CheckUtil.isNull(presentationDescriptor)) {
+			label = entityDescriptor.getName();
+		} else if (CheckUtil.isNull(locale)) {
+			label = presentationDescriptor.getDescription();
 		} else {
-			this.strategyFactory.renderProperty(this.context, (PropertyDescriptor<P, E>) property, RenderType.TEXT);
+			label = presentationDescriptor.getDescription(locale);
 		}
+		Composer.LOGGER.debug("Resolved label '{}' for locale '{}'.", label, locale);
+		return label;
 	}
 
 	/**
-	 * Process a presentation result type.
+	 * Gets the start time of a composition.
 	 * 
-	 * @param parameter
-	 *            The result type.
-	 * @param operation
-	 *            The operation.
-	 * @param descriptor
-	 *            The descriptor.
-	 * @param <R>
-	 *            The result type.
-	 * @param <D>
-	 *            The collection type.
+	 * @return The start time, or 0 if not monitored.
 	 */
-	private <R, D extends Collection<R>> void processPresentationResult(final ResultDescriptor<R> parameter,
-			final OperationDescriptor<E> operation, final CollectionResultDescriptor<R, D> descriptor) {
-		if (parameter.isRelation()) {
-			if (CheckUtil.isNull(descriptor)) {
-				this.strategyFactory.renderResultType(this.context, operation, parameter, RenderType.PICKLIST);
-			} else {
-				this.strategyFactory.renderCollectionResultType(this.context, operation, descriptor, RenderType.DROPDOWN);
-			}
-		} else {
-			this.strategyFactory.renderResultType(this.context, operation, parameter, RenderType.TEXT);
+	private long startTime() {
+		long start = 0;
+		if (!CheckUtil.isNull(this.monitor)) {
+			start = System.nanoTime();
 		}
+		return start;
 	}
 
 	/**
-	 * Renders a property.
+	 * Warms the caches for an entity. The label is resolved unless it is
+	 * cached, and the plan is built unless it is cached.
 	 * 
+	 * @param descriptor
+	 *            The (unqualified) entity descriptor.
 	 * @param qualifier
-	 *            The qualifier.
-	 * @param property
-	 *            The property.
-	 * @param <P>
-	 *            The property type.
-	 * @param <G>
-	 *            The entity type.
+	 *            The qualifier, may be null.
+	 * @param model
+	 *            The model.
+	 * @param locale
+	 *            The locale, may be null.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @return What this call cached, and the inline descriptors of the plan
+	 *         that could not be resolved.
 	 * @param <F>
 	 *            The entity type.
 	 */
-	@SuppressWarnings("unchecked")
-	// We are fairly sure.
-	private <P, G, F extends S> void renderProperty(final Class<?> qualifier, final PropertyDescriptor<P, G> property) {
-		// Push variable.
-		this.context.pushPrefix(property);
-		final PresentationPropertyDescriptor<P, G> presentationProperty = property.adapt(PresentationPropertyDescriptor.class);
-		boolean visible;
-		if (CheckUtil.isNull(presentationProperty)) {
-			visible = true;
-		} else {
-			visible = presentationProperty.isVisible();
+	<F extends E> WarmUp warmUp(final EntityDescriptor<F> descriptor, final Class<?> qualifier, final Model<S> model,
+			final Locale locale, final boolean includeOperations) {
+		boolean label = false;
+		if (CheckUtil.isNull(this.labelCache.getLabel(descriptor, qualifier, locale))) {
+			label = this.labelCache.putLabel(descriptor, qualifier, locale, this.resolveLabel(descriptor, qualifier, locale));
 		}
-		Composer.LOGGER.debug("Property is visible {}: {}", visible, property);
-		if (visible) {
-			if (property.isImmutable()) {
-				this.strategyFactory.renderProperty(this.context, (PropertyDescriptor<P, E>) property, RenderType.UNDEFINED);
-			} else {
-				this.processPresentationDescriptor(property, presentationProperty);
-			}
+		boolean built = false;
+		CompositionPlan<F> plan = this.planCache.getPlan(descriptor, qualifier, includeOperations);
+		if (CheckUtil.isNull(plan)) {
+			Composer.LOGGER.debug("Warming plan for descriptor '{}' and qualifier '{}'.", descriptor, qualifier);
+			final CompositionPlan<F> created = new PlanBuilder<S>(model, qualifier, this.planCache).build(descriptor, includeOperations);
+			plan = this.planCache.putPlan(descriptor, qualifier, includeOperations, created);
+			built = plan == created;
 		}
-		final RelationPresentationDescriptor relationPresentation = property.adapt(RelationPresentationDescriptor.class);
-		final PropertyDescriptor<F, E> relationDescriptor = (PropertyDescriptor<F, E>) property;
-		if (!CheckUtil.isNull(relationPresentation) && relationPresentation.isInLineIndication()) {
-			final EntityDescriptor<F> innerDescriptor = this.variableResolver.getModel(this.context).getEntity(
-					relationDescriptor.getPropertyType());
-			if (CheckUtil.isNull(innerDescriptor)) {
-				Composer.LOGGER.warn("Could not process inner descriptor '{}'.", relationPresentation.getRelatedName());
-			} else {
-				this.processInline(qualifier, relationDescriptor, innerDescriptor);
-			}
+		CompositionPlan<F> cached = null;
+		if (built) {
+			cached = plan;
 		}
-		// Pop variable.
-		this.context.popPrefix();
+		return new WarmUp(cached, label, plan.getUnresolved());
 	}
 
 	/**
-	 * Resolve property list.
+	 * The result of warming the caches for an entity.
 	 * 
-	 * @param members
-	 *            The property list.
-	 * @param qualifier
-	 *            The qualifier.
-	 * @param <G>
-	 *            The entity type.
+	 * @author Pal Hargitai (pal@lunarray.org)
 	 */
-	@SuppressWarnings("unchecked")
-	private <G extends S> void resolveMembers(final List<? extends MemberDescriptor<G>> members, final Class<?> qualifier) {
-		for (final MemberDescriptor<G> member : members) {
-			if (member instanceof PropertyDescriptor) {
-				this.renderProperty(qualifier, (PropertyDescriptor<?, G>) member);
-			} else if (member instanceof OperationDescriptor) {
-				final OperationDescriptor<E> operationDescriptor = (OperationDescriptor<E>) member;
-				this.strategyFactory.beginOperation(this.getContext(), operationDescriptor);
-				for (final ParameterDescriptor<?> parameter : operationDescriptor.getParameters()) {
-					this.processPresentationDescriptor(parameter, parameter.adapt(PresentationParameterDescriptor.class),
-							operationDescriptor);
-				}
-				final ResultDescriptor<?> resultDescriptor = operationDescriptor.getResultDescriptor();
-				if (!CheckUtil.isNull(resultDescriptor)) {
-					this.processPresentationDescriptor(resultDescriptor, resultDescriptor.adapt(PresentationResultDescriptor.class),
-							operationDescriptor);
-				}
-				this.strategyFactory.endOperation(this.getContext(), operationDescriptor);
-			}
+	static final class WarmUp {
+
+		/** Whether the label was cached by the warm-up. */
+		private final boolean label;
+		/** The plan cached by the warm-up, may be null. */
+		private final CompositionPlan<?> plan;
+		/** The unresolved inline descriptors. */
+		private final List<String> unresolved;
+
+		/**
+		 * Constructs the result.
+		 * 
+		 * @param plan
+		 *            The plan cached by the warm-up, null if it was cached
+		 *            before.
+		 * @param label
+		 *            Whether the label was cached by the warm-up.
+		 * @param unresolved
+		 *            The unresolved inline descriptors.
+		 */
+		WarmUp(final CompositionPlan<?> plan, final boolean label, final List<String> unresolved) {
+			this.plan = plan;
+			this.label = label;
+			this.unresolved = unresolved;
+		}
+
+		/**
+		 * Gets the plan cached by the warm-up.
+		 * 
+		 * @return The plan, or null if it was cached before.
+		 */
+		CompositionPlan<?> getPlan() {
+			return this.plan;
+		}
+
+		/**
+		 * Gets the inline descriptors of the plan that could not be
+		 * resolved, whether or not the plan was cached before.
+		 * 
+		 * @return The descriptions of the unresolved inline descriptors.
+		 */
+		List<String> getUnresolved() {
+			return this.unresolved;
+		}
+
+		/**
+		 * Tests whether the label was cached by the warm-up.
+		 * 
+		 * @return True if and only if the label was cached by the warm-up.
+		 */
+		boolean isLabel() {
+			return this.label;
+		}
+
+		/**
+		 * Tests whether the plan was cached by the warm-up.
+		 * 
+		 * @return True if and only if the plan was cached by the warm-up.
+		 */
+		boolean isPlan() {
+			return !CheckUtil.isNull(this.plan);
 		}
 	}
 }
@@ -0,0 +1,98 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.lunarray.common.check.CheckUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates executors for parallel composition.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class ComposerExecutors {
+
+	/** The logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(ComposerExecutors.class);
+	/** The virtual thread per task executor factory method. */
+	private static final String VIRTUAL_THREAD_EXECUTOR = "newVirtualThreadPerTaskExecutor";
+
+	/**
+	 * Utility class.
+	 */
+	private ComposerExecutors() {
+		// Utility class.
+	}
+
+	/**
+	 * Tests if virtual threads are available.
+	 * 
+	 * @return True if and only if the runtime provides virtual threads.
+	 */
+	public static boolean isVirtualThreadsAvailable() {
+		return !CheckUtil.isNull(ComposerExecutors.getVirtualThreadExecutorMethod());
+	}
+
+	/**
+	 * Creates an executor that starts a thread per task, for compositions
+	 * that block in the variable resolver. Uses virtual threads where the
+	 * runtime provides them, so blocked compositions do not tie up platform
+	 * threads. Falls back to a cached thread pool.
+	 * 
+	 * @return The executor.
+	 */
+	public static ExecutorService newThreadPerTaskExecutor() {
+		final Method method = ComposerExecutors.getVirtualThreadExecutorMethod();
+		ExecutorService executor = null;
+		if (!CheckUtil.isNull(method)) {
+			try {
+				executor = (ExecutorService) method.invoke(null);
+			} catch (final IllegalAccessException e) {
+				ComposerExecutors.LOGGER.warn("Could not create virtual thread executor.", e);
+			} catch (final InvocationTargetException e) {
+				ComposerExecutors.LOGGER.warn("Could not create virtual thread executor.", e);
+			}
+		}
+		if (CheckUtil.isNull(executor)) {
+			ComposerExecutors.LOGGER.debug("Virtual threads unavailable, using a cached thread pool.");
+			executor = Executors.newCachedThreadPool();
+		}
+		return executor;
+	}
+
+	/**
+	 * Gets the virtual thread executor factory method.
+	 * 
+	 * @return The method, or null if unavailable.
+	 */
+	private static Method getVirtualThreadExecutorMethod() {
+		Method method = null;
+		try {
+			method = Executors.class.getMethod(ComposerExecutors.VIRTUAL_THREAD_EXECUTOR);
+		} catch (final NoSuchMethodException e) {
+			ComposerExecutors.LOGGER.trace("No virtual threads.", e);
+		}
+		return method;
+	}
+}
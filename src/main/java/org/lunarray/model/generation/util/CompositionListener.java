@@ -0,0 +1,55 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+
+/**
+ * Listens to the entities of a batch composition, allows segmenting the
+ * rendered output per entity.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <C>
+ *            The context type.
+ * @param <E>
+ *            The entity type.
+ */
+public interface CompositionListener<C extends Context, E> {
+
+	/**
+	 * Begin composing an entity.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param descriptor
+	 *            The (unqualified) entity descriptor.
+	 * @param label
+	 *            The entity label.
+	 */
+	void beginEntity(C context, EntityDescriptor<? extends E> descriptor, String label);
+
+	/**
+	 * End composing an entity.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param descriptor
+	 *            The (unqualified) entity descriptor.
+	 */
+	void endEntity(C context, EntityDescriptor<? extends E> descriptor);
+}
@@ -0,0 +1,63 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+/**
+ * Monitors compositions. Implementations are called on the composing thread
+ * and should be thread safe and cheap. A composer without a monitor does not
+ * measure anything.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see HistogramCompositionMonitor
+ */
+public interface CompositionMonitor {
+
+	/**
+	 * Called after a composition.
+	 * 
+	 * @param statistics
+	 *            The statistics of the replayed plan.
+	 * @param duration
+	 *            The duration, in nanoseconds.
+	 */
+	void composed(CompositionStatistics statistics, long duration);
+
+	/**
+	 * Called on a label cache lookup.
+	 * 
+	 * @param hit
+	 *            True if and only if the label was cached.
+	 */
+	void labelLookup(boolean hit);
+
+	/**
+	 * Called on a plan cache lookup.
+	 * 
+	 * @param hit
+	 *            True if and only if the plan was cached.
+	 */
+	void planLookup(boolean hit);
+
+	/**
+	 * Called on a variable resolver call.
+	 * 
+	 * @param method
+	 *            The resolver method name.
+	 */
+	void resolverCall(String method);
+}
@@ -0,0 +1,463 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.model.operation.OperationDescriptor;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+
+/**
+ * A precompiled, immutable composition. Holds the resolved render calls for
+ * an entity, qualifier and operation inclusion, so that composing does not
+ * need to adapt any descriptors. The steps may also be pulled one by one, as composition events. The path of every property
+ * position is computed with the plan. Operations can be composed lazily,
+ * through their operation plans. A plan can also be replayed in windows of
+ * top level members, a property with its inline members or an operation,
+ * with the member index as a stable cursor.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <E>
+ *            The entity type.
+ */
+public final class CompositionPlan<E>
+		implements Iterable<CompositionStep> {
+
+	/** The estimated size of an array or small object header, in bytes. */
+	private static final int HEADER_SIZE = 16;
+	/** The estimated size of a small object, a step or a path, in bytes. */
+	private static final int OBJECT_SIZE = 24;
+	/** The estimated size of a reference or an int, in bytes. */
+	private static final int SLOT_SIZE = 4;
+	/** The first step of every top level member, and the step count. */
+	private final int[] memberStarts;
+	/** The matching end step of every operation, by begin step index. */
+	private final int[] operationEnds;
+	/** The shared operation plans, the handles of lazy operations. */
+	private final OperationPlanCache operationPlans;
+	/** The operation plans, by begin step index, null until needed. */
+	private volatile OperationPlan[] operations;
+	/** The property paths, by step index. */
+	private final PropertyPath[] paths;
+	/** The qualifier, may be null. */
+	private final Class<?> qualifier;
+	/** The statistics. */
+	private final CompositionStatistics statistics;
+	/** The steps. */
+	private final CompositionStep[] steps;
+	/** The inline descriptors that could not be resolved. */
+	private final List<String> unresolved;
+
+	/**
+	 * Constructs the plan.
+	 * 
+	 * @param steps
+	 *            The steps.
+	 * @param operationPlans
+	 *            The shared operation plans, to take the handles of lazy
+	 *            operations from.
+	 * @param qualifier
+	 *            The qualifier the plan was built for, may be null.
+	 * @param unresolved
+	 *            The inline descriptors that could not be resolved while
+	 *            building.
+	 */
+	CompositionPlan(final List<CompositionStep> steps, final OperationPlanCache operationPlans, final Class<?> qualifier,
+			final List<String> unresolved) {
+		this.steps = steps.toArray(new CompositionStep[steps.size()]);
+		this.paths = CompositionPlan.paths(this.steps);
+		this.memberStarts = CompositionPlan.memberStarts(this.steps);
+		this.operationEnds = CompositionPlan.operationEnds(this.steps);
+		this.statistics = new CompositionStatistics(this.steps);
+		this.operationPlans = operationPlans;
+		this.qualifier = qualifier;
+		this.unresolved = Collections.unmodifiableList(new ArrayList<String>(unresolved));
+	}
+
+	/**
+	 * Gets the amount of top level members.
+	 * 
+	 * @return The amount of members.
+	 */
+	public int getMemberCount() {
+		return this.memberStarts.length - 1;
+	}
+
+	/**
+	 * Gets the path of a property step.
+	 * 
+	 * @param index
+	 *            The step index.
+	 * @return The property path, or null if the step doesn't render a
+	 *         property.
+	 */
+	public PropertyPath getPath(final int index) {
+		return this.paths[index];
+	}
+
+	/**
+	 * Gets the value for the statistics field.
+	 * 
+	 * @return The value for the statistics field.
+	 */
+	public CompositionStatistics getStatistics() {
+		return this.statistics;
+	}
+
+	/**
+	 * Iterates the steps, in composition order. Steps can not be removed.
+	 * 
+	 * @return The step iterator.
+	 */
+	@Override
+	public Iterator<CompositionStep> iterator() {
+		return new StepIterator(this.steps);
+	}
+
+	/**
+	 * Replays the plan. A path render factory is passed the property paths,
+	 * and a lazy operation render factory is passed operation handles
+	 * instead of parameters and results. These are replayed step by step.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param factory
+	 *            The render factory.
+	 * @param <C>
+	 *            The context type.
+	 */
+	public <C extends Context> void replay(final C context, final RenderFactory<C, ? super E> factory) {
+		if ((factory instanceof PathRenderFactory) || (factory instanceof LazyOperationRenderFactory)) {
+			this.replaySteps(context, factory, 0, this.steps.length);
+		} else {
+			for (final CompositionStep step : this.steps) {
+				step.replay(context, factory);
+			}
+		}
+	}
+
+	/**
+	 * Replays a window of top level members.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param factory
+	 *            The render factory.
+	 * @param offset
+	 *            The index of the first member.
+	 * @param limit
+	 *            The maximum amount of members.
+	 * @return The index of the member after the window, the cursor for the
+	 *         next window.
+	 * @param <C>
+	 *            The context type.
+	 */
+	public <C extends Context> int replay(final C context, final RenderFactory<C, ? super E> factory, final int offset, final int limit) {
+		if ((offset < 0) || (limit < 0)) {
+			throw new IllegalArgumentException("Offset and limit may not be negative.");
+		}
+		final int first = Math.min(offset, this.getMemberCount());
+		final int end = (int) Math.min((long) first + limit, this.getMemberCount());
+		final int from = this.memberStarts[first];
+		final int to = this.memberStarts[end];
+		if ((factory instanceof PathRenderFactory) || (factory instanceof LazyOperationRenderFactory)) {
+			this.replaySteps(context, factory, from, to);
+		} else {
+			for (int i = from; i < to; i++) {
+				this.steps[i].replay(context, factory);
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * Gets the amount of steps.
+	 * 
+	 * @return The amount of steps.
+	 */
+	public int size() {
+		return this.steps.length;
+	}
+
+	/**
+	 * Computes the top level member boundaries. A member spans the steps
+	 * from its prefix push up to its pop, or from the begin up to the end of
+	 * an operation.
+	 * 
+	 * @param steps
+	 *            The steps.
+	 * @return The first step of every member, followed by the step count.
+	 */
+	private static int[] memberStarts(final CompositionStep[] steps) {
+		final List<Integer> starts = new ArrayList<Integer>();
+		int depth = 0;
+		for (int i = 0; i < steps.length; i++) {
+			if (depth == 0) {
+				starts.add(Integer.valueOf(i));
+			}
+			final StepType type = steps[i].getType();
+			if ((type == StepType.PUSH_PREFIX) || (type == StepType.BEGIN_OPERATION)) {
+				depth++;
+			} else if ((type == StepType.POP_PREFIX) || (type == StepType.END_OPERATION)) {
+				depth--;
+			}
+		}
+		final int[] memberStarts = new int[starts.size() + 1];
+		for (int i = 0; i < starts.size(); i++) {
+			memberStarts[i] = starts.get(i).intValue();
+		}
+		memberStarts[starts.size()] = steps.length;
+		return memberStarts;
+	}
+
+	/**
+	 * Computes the matching end step of every operation.
+	 * 
+	 * @param steps
+	 *            The steps.
+	 * @return The end step index, by begin step index.
+	 */
+	private static int[] operationEnds(final CompositionStep[] steps) {
+		final int[] operationEnds = new int[steps.length];
+		int begin = 0;
+		for (int i = 0; i < steps.length; i++) {
+			if (steps[i].getType() == StepType.BEGIN_OPERATION) {
+				begin = i;
+			} else if (steps[i].getType() == StepType.END_OPERATION) {
+				operationEnds[begin] = i;
+			}
+		}
+		return operationEnds;
+	}
+
+	/**
+	 * Gets the first step of a top level member.
+	 * 
+	 * @param member
+	 *            The member index, or the member count for the step count.
+	 * @return The step index.
+	 */
+	int getMemberStart(final int member) {
+		return this.memberStarts[member];
+	}
+
+	/**
+	 * Gets the inline descriptors that could not be resolved while building,
+	 * their properties are composed without their inline members.
+	 * 
+	 * @return The descriptions of the unresolved inline descriptors.
+	 */
+	List<String> getUnresolved() {
+		return this.unresolved;
+	}
+
+	/**
+	 * Estimates the memory retained by the plan, assuming compressed
+	 * references. The steps, paths and lookup arrays are counted, the
+	 * descriptors, interned names and operation plans are shared and are
+	 * not.
+	 * 
+	 * @return The estimated footprint, in bytes.
+	 */
+	long getFootprint() {
+		final long arrays = CompositionPlan.HEADER_SIZE + ((long) this.steps.length * CompositionPlan.SLOT_SIZE);
+		long footprint = CompositionPlan.OBJECT_SIZE + (3 * arrays) + ((long) this.steps.length * CompositionPlan.OBJECT_SIZE)
+				+ CompositionPlan.HEADER_SIZE + ((long) this.memberStarts.length * CompositionPlan.SLOT_SIZE);
+		for (final PropertyPath path : this.paths) {
+			if (!CheckUtil.isNull(path)) {
+				footprint += CompositionPlan.OBJECT_SIZE;
+			}
+		}
+		return footprint;
+	}
+
+	/**
+	 * Computes the property paths. An inline expansion pushes its property
+	 * again, which doesn't add to the path.
+	 * 
+	 * @param steps
+	 *            The steps.
+	 * @return The paths, by step index.
+	 */
+	private static PropertyPath[] paths(final CompositionStep[] steps) {
+		final PropertyPath[] paths = new PropertyPath[steps.length];
+		final List<Object> prefixes = new ArrayList<Object>();
+		final List<PropertyPath> prefixPaths = new ArrayList<PropertyPath>();
+		for (int i = 0; i < steps.length; i++) {
+			final CompositionStep step = steps[i];
+			final int top = prefixes.size() - 1;
+			switch (step.getType()) {
+			case PUSH_PREFIX:
+				PropertyPath path;
+				if (top < 0) {
+					path = new PropertyPath(null, ((PropertyDescriptor<?, ?>) step.getDescriptor()).getName());
+				} else if (prefixes.get(top) == step.getDescriptor()) {
+					path = prefixPaths.get(top);
+				} else {
+					path = new PropertyPath(prefixPaths.get(top), ((PropertyDescriptor<?, ?>) step.getDescriptor()).getName());
+				}
+				prefixes.add(step.getDescriptor());
+				prefixPaths.add(path);
+				break;
+			case POP_PREFIX:
+				prefixes.remove(top);
+				prefixPaths.remove(top);
+				break;
+			case PROPERTY:
+			case COLLECTION_PROPERTY:
+				if (top >= 0) {
+					paths[i] = prefixPaths.get(top);
+				}
+				break;
+			default:
+				break;
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * Gets the operation plans, on first use from the shared operation
+	 * plans, so the handles are the same as those of other plans.
+	 * 
+	 * @return The operation plans, by begin step index.
+	 * @throws IllegalStateException
+	 *             Thrown if a shared handle doesn't span the steps of its
+	 *             operation in this plan.
+	 */
+	private OperationPlan[] getOperations() {
+		OperationPlan[] result = this.operations;
+		if (CheckUtil.isNull(result)) {
+			result = new OperationPlan[this.steps.length];
+			for (int i = 0; i < this.steps.length; i++) {
+				if (this.steps[i].getType() == StepType.BEGIN_OPERATION) {
+					final int end = this.operationEnds[i];
+					final OperationDescriptor<?> operation = this.steps[i].getOperation();
+					OperationPlan handle = this.operationPlans.getPlan(operation, this.qualifier);
+					if (CheckUtil.isNull(handle)) {
+						handle = this.operationPlans.putPlan(operation, this.qualifier,
+								new OperationPlan(operation, Arrays.asList(this.steps).subList(i, end + 1)));
+					}
+					if (handle.size() != ((end - i) + 1)) {
+						throw new IllegalStateException(String.format("Operation plan of '%s' spans %d steps, the plan spans %d.",
+								operation.getName(), Integer.valueOf(handle.size()), Integer.valueOf((end - i) + 1)));
+					}
+					result[i] = handle;
+				}
+			}
+			this.operations = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Replays the plan step by step, passing the property paths or operation
+	 * handles if the factory takes these.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param factory
+	 *            The render factory.
+	 * @param from
+	 *            The first step.
+	 * @param to
+	 *            The step after the last step.
+	 * @param <C>
+	 *            The context type.
+	 * @param <F>
+	 *            The entity type.
+	 */
+	private <C extends Context, F> void replaySteps(final C context, final RenderFactory<C, F> factory, final int from, final int to) {
+		PathRenderFactory<C, F> pathFactory = null;
+		if (factory instanceof PathRenderFactory) {
+			pathFactory = (PathRenderFactory<C, F>) factory;
+		}
+		LazyOperationRenderFactory<C, F> lazyFactory = null;
+		OperationPlan[] handles = null;
+		if (factory instanceof LazyOperationRenderFactory) {
+			lazyFactory = (LazyOperationRenderFactory<C, F>) factory;
+			handles = this.getOperations();
+		}
+		int i = from;
+		while (i < to) {
+			final CompositionStep step = this.steps[i];
+			if (!CheckUtil.isNull(lazyFactory) && (step.getType() == StepType.BEGIN_OPERATION)) {
+				step.replay(context, lazyFactory, handles[i]);
+				// Continue at the end step, the handle is checked to span up to it.
+				i = this.operationEnds[i];
+			} else if (CheckUtil.isNull(pathFactory)) {
+				step.replay(context, factory);
+				i++;
+			} else {
+				step.replay(context, pathFactory, this.paths[i]);
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Iterates an array of steps.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class StepIterator
+			implements Iterator<CompositionStep> {
+
+		/** The next index. */
+		private int index;
+		/** The steps. */
+		private final CompositionStep[] steps;
+
+		/**
+		 * Constructs the iterator.
+		 * 
+		 * @param steps
+		 *            The steps.
+		 */
+		public StepIterator(final CompositionStep[] steps) {
+			this.steps = steps;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean hasNext() {
+			return this.index < this.steps.length;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public CompositionStep next() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return this.steps[this.index++];
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Steps can not be removed.");
+		}
+	}
+}
@@ -0,0 +1,498 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+
+/**
+ * A concurrent cache of composition plans. Plans are keyed by entity
+ * descriptor, qualifier and operation inclusion. The descriptor is used
+ * rather than the entity class, since a class may be described by several
+ * models. Filtered plans are cached apart, by member filter, and are looked
+ * up without locking. The amount of cached filters is bounded. Every filter
+ * is stamped past the tick of the last new filter when it is used, so it
+ * ranks after the filters added before. Once the maximum is exceeded the
+ * plans of the filter with the oldest stamp are evicted, which approximates
+ * evicting the least recently used filter.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class CompositionPlanCache {
+
+	/** The default maximum amount of cached filters. */
+	public static final int DEFAULT_MAXIMUM_FILTERS = 64;
+	/** The default maximum inline depth. */
+	public static final int DEFAULT_MAXIMUM_INLINE_DEPTH = 64;
+	/** Slot for plans including operations. */
+	private static final int MEMBERS = 1;
+	/** Key for the absent qualifier. */
+	private static final Object NO_QUALIFIER = new Object();
+	/** Slot for plans excluding operations. */
+	private static final int PROPERTIES = 0;
+	/** The decision tables. */
+	private final DecisionTableCache decisionTables;
+	/** The eviction lock, evictions are serialized, lookups are not. */
+	private final Object evictions;
+	/** The filtered plans, by filter. */
+	private final ConcurrentMap<MemberFilter, FilteredPlans> filteredPlans;
+	/** The maximum amount of cached filters. */
+	private final int maximumFilters;
+	/** The maximum inline depth. */
+	private final int maximumInlineDepth;
+	/** The operation plans. */
+	private final OperationPlanCache operationPlans;
+	/** The qualified descriptors. */
+	private final QualifiedDescriptorCache qualifiedDescriptors;
+	/** The plans, by descriptor, by qualifier. Nested to avoid allocating keys. */
+	private final ConcurrentMap<EntityDescriptor<?>, ConcurrentMap<Object, AtomicReferenceArray<CompositionPlan<?>>>> plans;
+	/** The tick, advanced by every new filter. */
+	private final AtomicLong tick;
+
+	/**
+	 * Default constructor.
+	 */
+	public CompositionPlanCache() {
+		this(CompositionPlanCache.DEFAULT_MAXIMUM_INLINE_DEPTH);
+	}
+
+	/**
+	 * Constructs the cache.
+	 * 
+	 * @param maximumInlineDepth
+	 *            The maximum amount of nested inline expansions, 0 to never
+	 *            inline.
+	 */
+	public CompositionPlanCache(final int maximumInlineDepth) {
+		this(maximumInlineDepth, CompositionPlanCache.DEFAULT_MAXIMUM_FILTERS);
+	}
+
+	/**
+	 * Constructs the cache.
+	 * 
+	 * @param maximumInlineDepth
+	 *            The maximum amount of nested inline expansions, 0 to never
+	 *            inline.
+	 * @param maximumFilters
+	 *            The maximum amount of member filters to cache plans for.
+	 */
+	public CompositionPlanCache(final int maximumInlineDepth, final int maximumFilters) {
+		if (maximumInlineDepth < 0) {
+			throw new IllegalArgumentException("Maximum inline depth may not be negative.");
+		}
+		if (maximumFilters < 1) {
+			throw new IllegalArgumentException("Maximum filters must be positive.");
+		}
+		this.maximumFilters = maximumFilters;
+		this.maximumInlineDepth = maximumInlineDepth;
+		this.qualifiedDescriptors = new QualifiedDescriptorCache();
+		this.decisionTables = new DecisionTableCache();
+		this.operationPlans = new OperationPlanCache();
+		this.plans = new ConcurrentHashMap<EntityDescriptor<?>, ConcurrentMap<Object, AtomicReferenceArray<CompositionPlan<?>>>>();
+		this.filteredPlans = new ConcurrentHashMap<MemberFilter, FilteredPlans>();
+		this.evictions = new Object();
+		this.tick = new AtomicLong();
+	}
+
+	/**
+	 * Clears the cache, including the filtered plans, qualified descriptors,
+	 * decision tables and operation plans.
+	 */
+	public void clear() {
+		this.plans.clear();
+		this.filteredPlans.clear();
+		this.qualifiedDescriptors.clear();
+		this.decisionTables.clear();
+		this.operationPlans.clear();
+	}
+
+	/**
+	 * Gets the value for the decisionTables field.
+	 * 
+	 * @return The value for the decisionTables field.
+	 */
+	DecisionTableCache getDecisionTables() {
+		return this.decisionTables;
+	}
+
+	/**
+	 * Gets the value for the maximumFilters field.
+	 * 
+	 * @return The value for the maximumFilters field.
+	 */
+	public int getMaximumFilters() {
+		return this.maximumFilters;
+	}
+
+	/**
+	 * Gets the value for the maximumInlineDepth field.
+	 * 
+	 * @return The value for the maximumInlineDepth field.
+	 */
+	public int getMaximumInlineDepth() {
+		return this.maximumInlineDepth;
+	}
+
+	/**
+	 * Gets the value for the operationPlans field.
+	 * 
+	 * @return The value for the operationPlans field.
+	 */
+	OperationPlanCache getOperationPlans() {
+		return this.operationPlans;
+	}
+
+	/**
+	 * Gets the value for the qualifiedDescriptors field.
+	 * 
+	 * @return The value for the qualifiedDescriptors field.
+	 */
+	QualifiedDescriptorCache getQualifiedDescriptors() {
+		return this.qualifiedDescriptors;
+	}
+
+	/**
+	 * Gets the amount of cached plans, including filtered plans.
+	 * 
+	 * @return The amount of cached plans.
+	 */
+	public int size() {
+		int size = CompositionPlanCache.size(this.plans);
+		for (final FilteredPlans filtered : this.filteredPlans.values()) {
+			size += CompositionPlanCache.size(filtered.plans);
+		}
+		return size;
+	}
+
+	/**
+	 * Gets a plan.
+	 * 
+	 * @param descriptor
+	 *            The entity descriptor.
+	 * @param qualifier
+	 *            The qualifier, may be null.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @return The plan, or null if none was cached.
+	 * @param <E>
+	 *            The entity type.
+	 */
+	<E> CompositionPlan<E> getPlan(final EntityDescriptor<E> descriptor, final Class<?> qualifier, final boolean includeOperations) {
+		return this.getPlan(descriptor, qualifier, includeOperations, null);
+	}
+
+	/**
+	 * Gets a plan.
+	 * 
+	 * @param descriptor
+	 *            The entity descriptor.
+	 * @param qualifier
+	 *            The qualifier, may be null.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @param filter
+	 *            The member filter, may be null.
+	 * @return The plan, or null if none was cached.
+	 * @param <E>
+	 *            The entity type.
+	 */
+	@SuppressWarnings("unchecked")
+	// Guaranteed by the key.
+	<E> CompositionPlan<E> getPlan(final EntityDescriptor<E> descriptor, final Class<?> qualifier, final boolean includeOperations,
+			final MemberFilter filter) {
+		CompositionPlan<E> result = null;
+		ConcurrentMap<EntityDescriptor<?>, ConcurrentMap<Object, AtomicReferenceArray<CompositionPlan<?>>>> table = this.plans;
+		if (!CheckUtil.isNull(filter)) {
+			table = null;
+			final FilteredPlans filtered = this.filteredPlans.get(filter);
+			if (!CheckUtil.isNull(filtered)) {
+				filtered.touch(this.tick.get() + 1);
+				table = filtered.plans;
+			}
+		}
+		if (!CheckUtil.isNull(table)) {
+			final ConcurrentMap<Object, AtomicReferenceArray<CompositionPlan<?>>> qualified = table.get(descriptor);
+			if (!CheckUtil.isNull(qualified)) {
+				final AtomicReferenceArray<CompositionPlan<?>> slots = qualified.get(CompositionPlanCache.qualifierKey(qualifier));
+				if (!CheckUtil.isNull(slots)) {
+					result = (CompositionPlan<E>) slots.get(CompositionPlanCache.slot(includeOperations));
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Caches a plan, unless one was cached concurrently.
+	 * 
+	 * @param descriptor
+	 *            The entity descriptor.
+	 * @param qualifier
+	 *            The qualifier, may be null.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @param plan
+	 *            The plan.
+	 * @return The cached plan.
+	 * @param <E>
+	 *            The entity type.
+	 */
+	<E> CompositionPlan<E> putPlan(final EntityDescriptor<E> descriptor, final Class<?> qualifier, final boolean includeOperations,
+			final CompositionPlan<E> plan) {
+		return this.putPlan(descriptor, qualifier, includeOperations, null, plan);
+	}
+
+	/**
+	 * Caches a plan, unless one was cached concurrently.
+	 * 
+	 * @param descriptor
+	 *            The entity descriptor.
+	 * @param qualifier
+	 *            The qualifier, may be null.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @param filter
+	 *            The member filter, may be null.
+	 * @param plan
+	 *            The plan.
+	 * @return The cached plan.
+	 * @param <E>
+	 *            The entity type.
+	 */
+	@SuppressWarnings("unchecked")
+	// Guaranteed by the key.
+	<E> CompositionPlan<E> putPlan(final EntityDescriptor<E> descriptor, final Class<?> qualifier, final boolean includeOperations,
+			final MemberFilter filter, final CompositionPlan<E> plan) {
+		ConcurrentMap<EntityDescriptor<?>, ConcurrentMap<Object, AtomicReferenceArray<CompositionPlan<?>>>> table = this.plans;
+		if (!CheckUtil.isNull(filter)) {
+			table = this.filtered(filter).plans;
+		}
+		ConcurrentMap<Object, AtomicReferenceArray<CompositionPlan<?>>> qualified = table.get(descriptor);
+		if (CheckUtil.isNull(qualified)) {
+			final ConcurrentMap<Object, AtomicReferenceArray<CompositionPlan<?>>> created = new ConcurrentHashMap<Object, AtomicReferenceArray<CompositionPlan<?>>>();
+			qualified = table.putIfAbsent(descriptor, created);
+			if (CheckUtil.isNull(qualified)) {
+				qualified = created;
+			}
+		}
+		final Object qualifierKey = CompositionPlanCache.qualifierKey(qualifier);
+		AtomicReferenceArray<CompositionPlan<?>> slots = qualified.get(qualifierKey);
+		if (CheckUtil.isNull(slots)) {
+			final AtomicReferenceArray<CompositionPlan<?>> created = new AtomicReferenceArray<CompositionPlan<?>>(2);
+			slots = qualified.putIfAbsent(qualifierKey, created);
+			if (CheckUtil.isNull(slots)) {
+				slots = created;
+			}
+		}
+		final int slot = CompositionPlanCache.slot(includeOperations);
+		CompositionPlan<E> result = plan;
+		if (!slots.compareAndSet(slot, null, plan)) {
+			result = (CompositionPlan<E>) slots.get(slot);
+		}
+		return result;
+	}
+
+	/**
+	 * Visits all cached plans, except filtered plans.
+	 * 
+	 * @param visitor
+	 *            The visitor.
+	 */
+	void visitPlans(final PlanVisitor visitor) {
+		for (final Map.Entry<EntityDescriptor<?>, ConcurrentMap<Object, AtomicReferenceArray<CompositionPlan<?>>>> qualified : this.plans
+				.entrySet()) {
+			for (final Map.Entry<Object, AtomicReferenceArray<CompositionPlan<?>>> slots : qualified.getValue().entrySet()) {
+				Class<?> qualifier = null;
+				if (slots.getKey() != CompositionPlanCache.NO_QUALIFIER) {
+					qualifier = (Class<?>) slots.getKey();
+				}
+				final CompositionPlan<?> properties = slots.getValue().get(CompositionPlanCache.PROPERTIES);
+				if (!CheckUtil.isNull(properties)) {
+					visitor.visit(qualified.getKey(), qualifier, false, properties);
+				}
+				final CompositionPlan<?> members = slots.getValue().get(CompositionPlanCache.MEMBERS);
+				if (!CheckUtil.isNull(members)) {
+					visitor.visit(qualified.getKey(), qualifier, true, members);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Evicts the plans of the filters with the oldest stamps until the cache
+	 * is within its maximum amount of filters.
+	 */
+	private void evict() {
+		synchronized (this.evictions) {
+			boolean evicting = true;
+			while (evicting && (this.filteredPlans.size() > this.maximumFilters)) {
+				Map.Entry<MemberFilter, FilteredPlans> oldest = null;
+				for (final Map.Entry<MemberFilter, FilteredPlans> entry : this.filteredPlans.entrySet()) {
+					if (CheckUtil.isNull(oldest) || (entry.getValue().stamp < oldest.getValue().stamp)) {
+						oldest = entry;
+					}
+				}
+				// The filters may have been cleared concurrently.
+				evicting = !CheckUtil.isNull(oldest);
+				if (evicting) {
+					this.filteredPlans.remove(oldest.getKey(), oldest.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets or creates the plans of a filter.
+	 * 
+	 * @param filter
+	 *            The member filter.
+	 * @return The plans of the filter.
+	 */
+	private FilteredPlans filtered(final MemberFilter filter) {
+		FilteredPlans filtered = this.filteredPlans.get(filter);
+		if (CheckUtil.isNull(filtered)) {
+			final FilteredPlans created = new FilteredPlans(this.tick.incrementAndGet());
+			filtered = this.filteredPlans.putIfAbsent(filter, created);
+			if (CheckUtil.isNull(filtered)) {
+				filtered = created;
+				if (this.filteredPlans.size() > this.maximumFilters) {
+					this.evict();
+				}
+			}
+		} else {
+			filtered.touch(this.tick.get() + 1);
+		}
+		return filtered;
+	}
+
+	/**
+	 * Gets the map key for a qualifier.
+	 * 
+	 * @param qualifier
+	 *            The qualifier, may be null.
+	 * @return The key.
+	 */
+	static Object qualifierKey(final Class<?> qualifier) {
+		Object key = qualifier;
+		if (CheckUtil.isNull(qualifier)) {
+			key = CompositionPlanCache.NO_QUALIFIER;
+		}
+		return key;
+	}
+
+	/**
+	 * Gets the amount of plans in a table.
+	 * 
+	 * @param table
+	 *            The table.
+	 * @return The amount of plans.
+	 */
+	private static int size(final ConcurrentMap<EntityDescriptor<?>, ConcurrentMap<Object, AtomicReferenceArray<CompositionPlan<?>>>> table) {
+		int size = 0;
+		for (final ConcurrentMap<Object, AtomicReferenceArray<CompositionPlan<?>>> qualified : table.values()) {
+			for (final AtomicReferenceArray<CompositionPlan<?>> slots : qualified.values()) {
+				for (int i = 0; i < slots.length(); i++) {
+					if (!CheckUtil.isNull(slots.get(i))) {
+						size++;
+					}
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Gets the slot for the operation inclusion.
+	 * 
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @return The slot.
+	 */
+	private static int slot(final boolean includeOperations) {
+		int slot = CompositionPlanCache.PROPERTIES;
+		if (includeOperations) {
+			slot = CompositionPlanCache.MEMBERS;
+		}
+		return slot;
+	}
+
+	/**
+	 * The plans of a filter, with the tick the filter was last used at.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class FilteredPlans {
+
+		/** The plans, by descriptor, by qualifier. */
+		private final ConcurrentMap<EntityDescriptor<?>, ConcurrentMap<Object, AtomicReferenceArray<CompositionPlan<?>>>> plans;
+		/** The tick of the last use. Written racily, it is a hint. */
+		private volatile long stamp;
+
+		/**
+		 * Constructs the plans.
+		 * 
+		 * @param stamp
+		 *            The tick the filter is cached at.
+		 */
+		public FilteredPlans(final long stamp) {
+			this.plans = new ConcurrentHashMap<EntityDescriptor<?>, ConcurrentMap<Object, AtomicReferenceArray<CompositionPlan<?>>>>();
+			this.stamp = stamp;
+		}
+
+		/**
+		 * Stamps the filter as used.
+		 * 
+		 * @param tick
+		 *            The stamp of the use.
+		 */
+		public void touch(final long tick) {
+			// Avoid writing the shared line if no filter was added since.
+			if (this.stamp != tick) {
+				this.stamp = tick;
+			}
+		}
+	}
+
+	/**
+	 * Visits cached plans.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	interface PlanVisitor {
+
+		/**
+		 * Visits a plan.
+		 * 
+		 * @param descriptor
+		 *            The (unqualified) entity descriptor.
+		 * @param qualifier
+		 *            The qualifier, may be null.
+		 * @param includeOperations
+		 *            Whether the plan includes the operations.
+		 * @param plan
+		 *            The plan.
+		 */
+		void visit(EntityDescriptor<?> descriptor, Class<?> qualifier, boolean includeOperations, CompositionPlan<?> plan);
+	}
+}
@@ -0,0 +1,941 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.model.operation.OperationDescriptor;
+import org.lunarray.model.descriptor.model.operation.parameters.CollectionParameterDescriptor;
+import org.lunarray.model.descriptor.model.operation.parameters.ParameterDescriptor;
+import org.lunarray.model.descriptor.model.operation.result.CollectionResultDescriptor;
+import org.lunarray.model.descriptor.model.operation.result.ResultDescriptor;
+import org.lunarray.model.descriptor.model.property.CollectionPropertyDescriptor;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+import org.lunarray.model.descriptor.presentation.PresentationParameterDescriptor;
+import org.lunarray.model.descriptor.presentation.PresentationPropertyDescriptor;
+import org.lunarray.model.descriptor.presentation.PresentationResultDescriptor;
+import org.lunarray.model.descriptor.presentation.RenderType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent store of composition plans. Plans are written to a compact
+ * binary file, keyed by entity type, qualifier and operation inclusion, and
+ * read back through a memory mapped buffer. Steps refer to members by name
+ * and are bound to the descriptors of the model when loaded, so a loaded
+ * plan doesn't need to be resolved. The file holds a model fingerprint and
+ * the plan shaping settings of the cache, the maximum inline depth. A file
+ * written for another model or another maximum inline depth is ignored.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class CompositionPlanStore {
+
+	/** The FNV offset basis. */
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	/** The FNV prime. */
+	private static final long FNV_PRIME = 0x100000001b3L;
+	/** The size of a stored int, in bytes. */
+	private static final int INT_SIZE = 4;
+	/** The logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(CompositionPlanStore.class);
+	/** The file magic. */
+	private static final int MAGIC = 0x4c504c53;
+	/** Absent string index. */
+	private static final int NONE = -1;
+	/** The string encoding. */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	/** The file format version. */
+	private static final short VERSION = 3;
+	/** The file. */
+	private final File file;
+
+	/**
+	 * Constructs the store.
+	 * 
+	 * @param file
+	 *            The file to store the plans in.
+	 */
+	public CompositionPlanStore(final File file) {
+		if (CheckUtil.isNull(file)) {
+			throw new IllegalArgumentException("File may not be null.");
+		}
+		this.file = file;
+	}
+
+	/**
+	 * Computes the fingerprint of a model from its declared structure. The
+	 * fingerprint covers the model and entity descriptor implementations,
+	 * and every entity type with its super types, its fields and methods,
+	 * their types and their annotations, the presentation and qualifier
+	 * hints. No descriptor is adapted or qualified, so computing the
+	 * fingerprint is cheap compared to resolving the plans it guards. A
+	 * change to anything a plan is built from changes the fingerprint.
+	 * 
+	 * @param model
+	 *            The model.
+	 * @return The fingerprint.
+	 */
+	public static long fingerprint(final Model<?> model) {
+		// The entity order isn't defined, describe every entity separately.
+		final List<String> descriptions = new ArrayList<String>();
+		for (final EntityDescriptor<?> entity : model.getEntities()) {
+			final List<String> declarations = new ArrayList<String>();
+			Class<?> type = entity.getEntityType();
+			while (!CheckUtil.isNull(type) && (type != Object.class)) {
+				declarations.add(type.getName() + Arrays.toString(type.getDeclaredAnnotations()));
+				for (final Field field : type.getDeclaredFields()) {
+					declarations.add(type.getName() + '.' + field.getName() + ':' + field.getGenericType()
+							+ Arrays.toString(field.getDeclaredAnnotations()));
+				}
+				for (final Method method : type.getDeclaredMethods()) {
+					declarations.add(method.toGenericString() + Arrays.toString(method.getDeclaredAnnotations())
+							+ Arrays.deepToString(method.getParameterAnnotations()));
+				}
+				type = type.getSuperclass();
+			}
+			// Reflection doesn't define the declaration order either.
+			Collections.sort(declarations);
+			descriptions.add(entity.getEntityType().getName() + ':' + entity.getName() + ':' + entity.getClass().getName() + ':'
+					+ declarations);
+		}
+		Collections.sort(descriptions);
+		long hash = CompositionPlanStore.hash(CompositionPlanStore.FNV_OFFSET, model.getClass().getName());
+		for (final String description : descriptions) {
+			hash = CompositionPlanStore.hash(hash, description);
+		}
+		return hash;
+	}
+
+	/**
+	 * Gets the value for the file field.
+	 * 
+	 * @return The value for the file field.
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * Loads the stored plans into a cache. Plans already in the cache are
+	 * kept. Plans that refer to members the model doesn't have are skipped.
+	 * Nothing is loaded if the plans were saved from a cache with another
+	 * maximum inline depth.
+	 * 
+	 * @param model
+	 *            The model to bind the plans to.
+	 * @param cache
+	 *            The cache.
+	 * @param fingerprint
+	 *            The model fingerprint.
+	 * @return The amount of loaded plans, 0 if the file doesn't exist or was
+	 *         written for another fingerprint or maximum inline depth.
+	 * @throws IOException
+	 *             Thrown if the file could not be read.
+	 * @param <S>
+	 *            The super type.
+	 */
+	public <S> int load(final Model<S> model, final CompositionPlanCache cache, final long fingerprint) throws IOException {
+		int loaded = 0;
+		if (this.file.isFile()) {
+			final RandomAccessFile access = new RandomAccessFile(this.file, "r");
+			try {
+				final MappedByteBuffer buffer = access.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, access.length());
+				if ((buffer.getInt() != CompositionPlanStore.MAGIC) || (buffer.getShort() != CompositionPlanStore.VERSION)) {
+					throw new IOException("Not a composition plan store: " + this.file);
+				} else if (buffer.getLong() != fingerprint) {
+					CompositionPlanStore.LOGGER.info("Ignoring composition plan store for another model: {}", this.file);
+				} else if (buffer.getInt() != cache.getMaximumInlineDepth()) {
+					CompositionPlanStore.LOGGER.info("Ignoring composition plan store for another maximum inline depth: {}", this.file);
+				} else {
+					loaded = this.read(buffer, model, cache);
+				}
+			} catch (final BufferUnderflowException e) {
+				throw new IOException("Truncated composition plan store: " + this.file, e);
+			} catch (final IndexOutOfBoundsException e) {
+				throw new IOException("Corrupt composition plan store: " + this.file, e);
+			} catch (final IllegalArgumentException e) {
+				throw new IOException("Corrupt composition plan store: " + this.file, e);
+			} finally {
+				access.close();
+			}
+		}
+		CompositionPlanStore.LOGGER.debug("Loaded {} plans from: {}", loaded, this.file);
+		return loaded;
+	}
+
+	/**
+	 * Saves all plans of a cache. The file is replaced, through a temporary
+	 * file that is removed if writing fails.
+	 * 
+	 * @param cache
+	 *            The cache.
+	 * @param fingerprint
+	 *            The model fingerprint.
+	 * @return The amount of saved plans.
+	 * @throws IOException
+	 *             Thrown if the file could not be written.
+	 */
+	public int save(final CompositionPlanCache cache, final long fingerprint) throws IOException {
+		final PlanEncoder encoder = new PlanEncoder();
+		cache.visitPlans(encoder);
+		final File temporary = new File(this.file.getPath() + ".tmp");
+		boolean moved = false;
+		try {
+			final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+			try {
+				output.writeInt(CompositionPlanStore.MAGIC);
+				output.writeShort(CompositionPlanStore.VERSION);
+				output.writeLong(fingerprint);
+				output.writeInt(cache.getMaximumInlineDepth());
+				output.writeInt(encoder.strings.size());
+				for (final String string : encoder.strings.keySet()) {
+					final byte[] bytes = string.getBytes(CompositionPlanStore.UTF8);
+					output.writeInt(bytes.length);
+					output.write(bytes);
+				}
+				output.writeInt(encoder.plans.size());
+				for (final StoredPlan plan : encoder.plans) {
+					plan.write(output);
+				}
+			} finally {
+				output.close();
+			}
+			Files.move(temporary.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			moved = true;
+		} finally {
+			if (!moved) {
+				Files.deleteIfExists(temporary.toPath());
+			}
+		}
+		CompositionPlanStore.LOGGER.debug("Saved {} plans to: {}", encoder.plans.size(), this.file);
+		return encoder.plans.size();
+	}
+
+	/**
+	 * Reads the count of a stored array, and checks that the buffer holds
+	 * that many elements.
+	 * 
+	 * @param buffer
+	 *            The buffer.
+	 * @param elementSize
+	 *            The minimal stored size of an element, in bytes.
+	 * @return The count.
+	 */
+	private static int count(final ByteBuffer buffer, final int elementSize) {
+		final int count = buffer.getInt();
+		if ((count < 0) || (((long) count * elementSize) > buffer.remaining())) {
+			throw new IllegalArgumentException(String.format("Invalid count %d, %d bytes remaining.", count, buffer.remaining()));
+		}
+		return count;
+	}
+
+	/**
+	 * Adds a string to a hash.
+	 * 
+	 * @param hash
+	 *            The hash.
+	 * @param value
+	 *            The string.
+	 * @return The new hash.
+	 */
+	private static long hash(final long hash, final String value) {
+		long result = hash;
+		for (int i = 0; i < value.length(); i++) {
+			result = (result ^ value.charAt(i)) * CompositionPlanStore.FNV_PRIME;
+		}
+		return (result ^ '\n') * CompositionPlanStore.FNV_PRIME;
+	}
+
+	/**
+	 * Caches a bound plan.
+	 * 
+	 * @param cache
+	 *            The cache.
+	 * @param descriptor
+	 *            The entity descriptor.
+	 * @param qualifier
+	 *            The qualifier, may be null.
+	 * @param stored
+	 *            The stored plan.
+	 * @param binder
+	 *            The binder.
+	 * @param unresolved
+	 *            The inline descriptors that could not be resolved.
+	 * @return True if and only if the plan could be bound.
+	 * @param <E>
+	 *            The entity type.
+	 */
+	private <E> boolean put(final CompositionPlanCache cache, final EntityDescriptor<E> descriptor, final Class<?> qualifier,
+			final StoredPlan stored, final PlanBinder<?> binder, final List<String> unresolved) {
+		final List<CompositionStep> steps = binder.bind(descriptor, qualifier, stored);
+		final boolean bound = !CheckUtil.isNull(steps);
+		if (bound) {
+			cache.putPlan(descriptor, qualifier, stored.includeOperations, new CompositionPlan<E>(steps, cache.getOperationPlans(),
+					qualifier, unresolved));
+		}
+		return bound;
+	}
+
+	/**
+	 * Reads the plans.
+	 * 
+	 * @param buffer
+	 *            The buffer, positioned after the header.
+	 * @param model
+	 *            The model.
+	 * @param cache
+	 *            The cache.
+	 * @return The amount of loaded plans.
+	 * @param <S>
+	 *            The super type.
+	 */
+	private <S> int read(final ByteBuffer buffer, final Model<S> model, final CompositionPlanCache cache) {
+		final String[] strings = new String[CompositionPlanStore.count(buffer, CompositionPlanStore.INT_SIZE)];
+		for (int i = 0; i < strings.length; i++) {
+			final byte[] bytes = new byte[CompositionPlanStore.count(buffer, 1)];
+			buffer.get(bytes);
+			strings[i] = new String(bytes, CompositionPlanStore.UTF8);
+		}
+		final Map<String, EntityDescriptor<? extends S>> entities = new HashMap<String, EntityDescriptor<? extends S>>();
+		for (final EntityDescriptor<? extends S> entity : model.getEntities()) {
+			entities.put(entity.getEntityType().getName(), entity);
+		}
+		final PlanBinder<S> binder = new PlanBinder<S>(model, cache.getQualifiedDescriptors(), strings);
+		int loaded = 0;
+		final int plans = buffer.getInt();
+		for (int i = 0; i < plans; i++) {
+			final StoredPlan stored = StoredPlan.read(buffer);
+			final EntityDescriptor<? extends S> descriptor = entities.get(strings[stored.entity]);
+			Class<?> qualifier = null;
+			boolean bound = !CheckUtil.isNull(descriptor);
+			if (bound && (stored.qualifier != CompositionPlanStore.NONE)) {
+				try {
+					qualifier = Class.forName(strings[stored.qualifier], false, descriptor.getEntityType().getClassLoader());
+				} catch (final ClassNotFoundException e) {
+					bound = false;
+				}
+			}
+			if (bound) {
+				final List<String> unresolved = new ArrayList<String>(stored.unresolved.length);
+				for (final int index : stored.unresolved) {
+					unresolved.add(strings[index]);
+				}
+				bound = this.put(cache, descriptor, qualifier, stored, binder, unresolved);
+			}
+			if (bound) {
+				loaded++;
+			} else {
+				CompositionPlanStore.LOGGER.warn("Could not bind stored plan for entity '{}'.", strings[stored.entity]);
+			}
+		}
+		return loaded;
+	}
+
+	/**
+	 * Binds stored plans to the descriptors of a model. Tracks the inlined
+	 * entities and the current operation while binding a plan.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 * @param <S>
+	 *            The super type.
+	 */
+	private static final class PlanBinder<S> {
+
+		/** The entities along the prefix path. */
+		private final Deque<EntityDescriptor<?>> entities;
+		/** Whether the pushed properties are inlined. */
+		private final Deque<Boolean> inlines;
+		/** The model. */
+		private final Model<S> model;
+		/** The current operation. */
+		private OperationDescriptor<?> operation;
+		/** The pushed properties. */
+		private final Deque<PropertyDescriptor<?, ?>> properties;
+		/** The qualified descriptors. */
+		private final QualifiedDescriptorCache qualifiedDescriptors;
+		/** The qualifier. */
+		private Class<?> qualifier;
+		/** The string table. */
+		private final String[] strings;
+
+		/**
+		 * Constructs the binder.
+		 * 
+		 * @param model
+		 *            The model.
+		 * @param qualifiedDescriptors
+		 *            The qualified descriptors.
+		 * @param strings
+		 *            The string table.
+		 */
+		public PlanBinder(final Model<S> model, final QualifiedDescriptorCache qualifiedDescriptors, final String[] strings) {
+			this.model = model;
+			this.qualifiedDescriptors = qualifiedDescriptors;
+			this.strings = strings;
+			this.entities = new ArrayDeque<EntityDescriptor<?>>();
+			this.inlines = new ArrayDeque<Boolean>();
+			this.properties = new ArrayDeque<PropertyDescriptor<?, ?>>();
+		}
+
+		/**
+		 * Binds a stored plan.
+		 * 
+		 * @param descriptor
+		 *            The (unqualified) entity descriptor.
+		 * @param planQualifier
+		 *            The qualifier, may be null.
+		 * @param stored
+		 *            The stored plan.
+		 * @return The steps, or null if a member could not be bound.
+		 */
+		public List<CompositionStep> bind(final EntityDescriptor<?> descriptor, final Class<?> planQualifier, final StoredPlan stored) {
+			this.qualifier = planQualifier;
+			this.entities.clear();
+			this.inlines.clear();
+			this.properties.clear();
+			this.operation = null;
+			List<CompositionStep> steps = null;
+			final EntityDescriptor<?> entity = this.qualifiedDescriptors.qualify(descriptor, planQualifier);
+			if (!CheckUtil.isNull(entity)) {
+				this.entities.push(entity);
+				steps = new ArrayList<CompositionStep>(stored.steps.length);
+				for (int i = 0; !CheckUtil.isNull(steps) && (i < stored.steps.length); i++) {
+					final CompositionStep step = this.bindStep(stored.steps[i]);
+					if (CheckUtil.isNull(step)) {
+						steps = null;
+					} else {
+						steps.add(step);
+					}
+				}
+			}
+			return steps;
+		}
+
+		/**
+		 * Binds an operation step.
+		 * 
+		 * @param stored
+		 *            The stored step.
+		 * @param type
+		 *            The step type.
+		 * @param renderType
+		 *            The render type.
+		 * @return The step, or null if it could not be bound.
+		 */
+		private CompositionStep bindOperationStep(final StoredStep stored, final StepType type, final RenderType renderType) {
+			CompositionStep step = null;
+			final OperationDescriptor<?> current = this.operation;
+			if (CheckUtil.isNull(current)) {
+				step = null;
+			} else if ((type == StepType.PARAMETER) || (type == StepType.COLLECTION_PARAMETER)) {
+				final List<ParameterDescriptor<?>> parameters = current.getParameters();
+				if (stored.index < parameters.size()) {
+					final ParameterDescriptor<?> parameter = parameters.get(stored.index);
+					if (type == StepType.COLLECTION_PARAMETER) {
+						final CollectionParameterDescriptor<?, ?> collection = parameter.adapt(CollectionParameterDescriptor.class);
+						if (!CheckUtil.isNull(collection)) {
+							step = CompositionStep.collectionParameter(current, collection, renderType);
+						}
+					} else {
+						final ParameterDescriptor<?> adapted = PlanBinder.view(parameter, stored.view,
+								parameter.adapt(PresentationParameterDescriptor.class));
+						if (!CheckUtil.isNull(adapted)) {
+							step = CompositionStep.parameter(current, adapted, renderType);
+						}
+					}
+				}
+			} else if ((type == StepType.RESULT) || (type == StepType.COLLECTION_RESULT)) {
+				final ResultDescriptor<?> result = current.getResultDescriptor();
+				if (CheckUtil.isNull(result)) {
+					step = null;
+				} else if (type == StepType.COLLECTION_RESULT) {
+					final CollectionResultDescriptor<?, ?> collection = result.adapt(CollectionResultDescriptor.class);
+					if (!CheckUtil.isNull(collection)) {
+						step = CompositionStep.collectionResult(current, collection, renderType);
+					}
+				} else {
+					final ResultDescriptor<?> adapted = PlanBinder.view(result, stored.view, result.adapt(PresentationResultDescriptor.class));
+					if (!CheckUtil.isNull(adapted)) {
+						step = CompositionStep.result(current, adapted, renderType);
+					}
+				}
+			} else {
+				this.operation = null;
+				step = CompositionStep.endOperation(current);
+			}
+			return step;
+		}
+
+		/**
+		 * Binds a step.
+		 * 
+		 * @param stored
+		 *            The stored step.
+		 * @return The step, or null if it could not be bound.
+		 */
+		private CompositionStep bindStep(final StoredStep stored) {
+			final StepType type = StepType.values()[stored.type];
+			RenderType renderType = null;
+			if (stored.renderType != CompositionPlanStore.NONE) {
+				renderType = RenderType.valueOf(this.strings[stored.renderType]);
+			}
+			CompositionStep step = null;
+			switch (type) {
+			case PUSH_PREFIX:
+				step = this.push(this.strings[stored.name], stored.flags == StoredStep.INLINE);
+				break;
+			case POP_PREFIX:
+				if (!this.properties.isEmpty()) {
+					if (this.inlines.pop().booleanValue()) {
+						this.entities.pop();
+					}
+					step = CompositionStep.popPrefix(this.properties.pop());
+				}
+				break;
+			case PROPERTY:
+				if (!this.properties.isEmpty()) {
+					final PropertyDescriptor<?, ?> property = this.properties.peek();
+					final PropertyDescriptor<?, ?> adapted = PlanBinder.view(property, stored.view,
+							property.adapt(PresentationPropertyDescriptor.class));
+					if (!CheckUtil.isNull(adapted)) {
+						step = CompositionStep.property(adapted, renderType);
+					}
+				}
+				break;
+			case COLLECTION_PROPERTY:
+				if (!this.properties.isEmpty()) {
+					final CollectionPropertyDescriptor<?, ?, ?> collection = this.properties.peek().adapt(CollectionPropertyDescriptor.class);
+					if (!CheckUtil.isNull(collection)) {
+						step = CompositionStep.collectionProperty(collection, renderType);
+					}
+				}
+				break;
+			case BEGIN_OPERATION:
+				this.operation = PlanBinder.findOperation(this.entities.peek(), this.strings[stored.name], stored.index);
+				if (!CheckUtil.isNull(this.operation)) {
+					step = CompositionStep.beginOperation(this.operation);
+				}
+				break;
+			default:
+				step = this.bindOperationStep(stored, type, renderType);
+				break;
+			}
+			return step;
+		}
+
+		/**
+		 * Finds the only operation with a name and arity.
+		 * 
+		 * @param entity
+		 *            The entity.
+		 * @param name
+		 *            The operation name.
+		 * @param arity
+		 *            The amount of parameters.
+		 * @return The operation, or null if there isn't exactly one.
+		 */
+		private static OperationDescriptor<?> findOperation(final EntityDescriptor<?> entity, final String name, final int arity) {
+			OperationDescriptor<?> result = null;
+			int found = 0;
+			for (final OperationDescriptor<?> candidate : entity.getOperations()) {
+				if (name.equals(candidate.getName()) && (candidate.getParameters().size() == arity)) {
+					result = candidate;
+					found++;
+				}
+			}
+			if (found != 1) {
+				result = null;
+			}
+			return result;
+		}
+
+		/**
+		 * Finds a property by name.
+		 * 
+		 * @param entity
+		 *            The entity.
+		 * @param name
+		 *            The property name.
+		 * @return The property, or null.
+		 */
+		private static PropertyDescriptor<?, ?> findProperty(final EntityDescriptor<?> entity, final String name) {
+			PropertyDescriptor<?, ?> result = null;
+			for (final PropertyDescriptor<?, ?> candidate : entity.getProperties()) {
+				if (name.equals(candidate.getName())) {
+					result = candidate;
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Resolves the inlined entity of a property.
+		 * 
+		 * @param property
+		 *            The property.
+		 * @return The qualified entity, or null.
+		 * @param <F>
+		 *            The entity type.
+		 */
+		@SuppressWarnings("unchecked")
+		// We are fairly sure.
+		private <F extends S> EntityDescriptor<F> inline(final PropertyDescriptor<?, ?> property) {
+			EntityDescriptor<F> result = this.model.getEntity((Class<F>) property.getPropertyType());
+			if (!CheckUtil.isNull(result)) {
+				result = this.qualifiedDescriptors.qualify(result, this.qualifier);
+			}
+			return result;
+		}
+
+		/**
+		 * Binds a push step.
+		 * 
+		 * @param name
+		 *            The property name.
+		 * @param inline
+		 *            Whether the push starts an inline expansion.
+		 * @return The step, or null if it could not be bound.
+		 */
+		private CompositionStep push(final String name, final boolean inline) {
+			CompositionStep step = null;
+			final PropertyDescriptor<?, ?> property = PlanBinder.findProperty(this.entities.peek(), name);
+			if (!CheckUtil.isNull(property)) {
+				boolean bound = true;
+				if (inline) {
+					final EntityDescriptor<?> inner = this.inline(property);
+					bound = !CheckUtil.isNull(inner);
+					if (bound) {
+						this.entities.push(inner);
+					}
+				}
+				if (bound) {
+					this.properties.push(property);
+					this.inlines.push(Boolean.valueOf(inline));
+					step = CompositionStep.pushPrefix(property);
+				}
+			}
+			return step;
+		}
+
+		/**
+		 * Selects the stored view of a descriptor.
+		 * 
+		 * @param raw
+		 *            The raw descriptor.
+		 * @param view
+		 *            The stored view.
+		 * @param presentation
+		 *            The presentation descriptor, may be null.
+		 * @return The descriptor in the stored view, or null if it isn't
+		 *         available.
+		 * @param <D>
+		 *            The descriptor type.
+		 */
+		private static <D> D view(final D raw, final byte view, final D presentation) {
+			D result = raw;
+			if (view == StoredStep.PRESENTATION) {
+				result = presentation;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Encodes the plans of a cache, building the string table.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class PlanEncoder
+			implements CompositionPlanCache.PlanVisitor {
+
+		/** The encoded plans. */
+		private final List<StoredPlan> plans;
+		/** The string table, by string. */
+		private final Map<String, Integer> strings;
+
+		/**
+		 * Default constructor.
+		 */
+		public PlanEncoder() {
+			this.plans = new ArrayList<StoredPlan>();
+			this.strings = new LinkedHashMap<String, Integer>();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final EntityDescriptor<?> descriptor, final Class<?> qualifier, final boolean includeOperations,
+				final CompositionPlan<?> plan) {
+			int qualifierIndex = CompositionPlanStore.NONE;
+			if (!CheckUtil.isNull(qualifier)) {
+				qualifierIndex = this.string(qualifier.getName());
+			}
+			final StoredStep[] steps = new StoredStep[plan.size()];
+			final Deque<PropertyDescriptor<?, ?>> pushed = new ArrayDeque<PropertyDescriptor<?, ?>>();
+			OperationDescriptor<?> operation = null;
+			int parameter = 0;
+			int index = 0;
+			for (final CompositionStep step : plan) {
+				int name = CompositionPlanStore.NONE;
+				byte view = StoredStep.RAW;
+				byte flags = 0;
+				int position = 0;
+				switch (step.getType()) {
+				case PUSH_PREFIX:
+					final PropertyDescriptor<?, ?> property = (PropertyDescriptor<?, ?>) step.getDescriptor();
+					// The inline expansion pushes its property again.
+					if (!pushed.isEmpty() && (pushed.peek() == property)) {
+						flags = StoredStep.INLINE;
+					}
+					pushed.push(property);
+					name = this.string(property.getName());
+					break;
+				case POP_PREFIX:
+					pushed.pop();
+					break;
+				case PROPERTY:
+					if (step.getDescriptor() != pushed.peek()) {
+						view = StoredStep.PRESENTATION;
+					}
+					break;
+				case BEGIN_OPERATION:
+					operation = step.getOperation();
+					parameter = 0;
+					name = this.string(operation.getName());
+					position = operation.getParameters().size();
+					break;
+				case PARAMETER:
+					if (step.getDescriptor() != operation.getParameters().get(parameter)) {
+						view = StoredStep.PRESENTATION;
+					}
+					position = parameter++;
+					break;
+				case COLLECTION_PARAMETER:
+					position = parameter++;
+					break;
+				case RESULT:
+					if (step.getDescriptor() != operation.getResultDescriptor()) {
+						view = StoredStep.PRESENTATION;
+					}
+					break;
+				default:
+					break;
+				}
+				int renderType = CompositionPlanStore.NONE;
+				if (!CheckUtil.isNull(step.getRenderType())) {
+					renderType = this.string(step.getRenderType().name());
+				}
+				steps[index++] = new StoredStep((byte) step.getType().ordinal(), view, flags, renderType, name, (short) position);
+			}
+			final int[] unresolved = new int[plan.getUnresolved().size()];
+			for (int i = 0; i < unresolved.length; i++) {
+				unresolved[i] = this.string(plan.getUnresolved().get(i));
+			}
+			this.plans.add(new StoredPlan(this.string(descriptor.getEntityType().getName()), qualifierIndex, includeOperations, steps,
+					unresolved));
+		}
+
+		/**
+		 * Gets the index of a string in the string table.
+		 * 
+		 * @param string
+		 *            The string.
+		 * @return The index.
+		 */
+		private int string(final String string) {
+			Integer index = this.strings.get(string);
+			if (CheckUtil.isNull(index)) {
+				index = Integer.valueOf(this.strings.size());
+				this.strings.put(string, index);
+			}
+			return index.intValue();
+		}
+	}
+
+	/**
+	 * A stored plan.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class StoredPlan {
+
+		/** The entity type name index. */
+		private final int entity;
+		/** Whether the plan includes the operations. */
+		private final boolean includeOperations;
+		/** The qualifier name index. */
+		private final int qualifier;
+		/** The steps. */
+		private final StoredStep[] steps;
+		/** The unresolved inline descriptor description indices. */
+		private final int[] unresolved;
+
+		/**
+		 * Constructs the plan.
+		 * 
+		 * @param entity
+		 *            The entity type name index.
+		 * @param qualifier
+		 *            The qualifier name index.
+		 * @param includeOperations
+		 *            Whether the plan includes the operations.
+		 * @param steps
+		 *            The steps.
+		 * @param unresolved
+		 *            The unresolved inline descriptor description indices.
+		 */
+		public StoredPlan(final int entity, final int qualifier, final boolean includeOperations, final StoredStep[] steps,
+				final int[] unresolved) {
+			this.entity = entity;
+			this.qualifier = qualifier;
+			this.includeOperations = includeOperations;
+			this.steps = steps;
+			this.unresolved = unresolved;
+		}
+
+		/**
+		 * Reads a plan.
+		 * 
+		 * @param buffer
+		 *            The buffer.
+		 * @return The plan.
+		 */
+		public static StoredPlan read(final ByteBuffer buffer) {
+			final int entity = buffer.getInt();
+			final int qualifier = buffer.getInt();
+			final boolean includeOperations = buffer.get() != 0;
+			final StoredStep[] steps = new StoredStep[CompositionPlanStore.count(buffer, StoredStep.SIZE)];
+			for (int i = 0; i < steps.length; i++) {
+				steps[i] = new StoredStep(buffer.get(), buffer.get(), buffer.get(), buffer.getInt(), buffer.getInt(), buffer.getShort());
+			}
+			final int[] unresolved = new int[CompositionPlanStore.count(buffer, CompositionPlanStore.INT_SIZE)];
+			for (int i = 0; i < unresolved.length; i++) {
+				unresolved[i] = buffer.getInt();
+			}
+			return new StoredPlan(entity, qualifier, includeOperations, steps, unresolved);
+		}
+
+		/**
+		 * Writes the plan.
+		 * 
+		 * @param output
+		 *            The output.
+		 * @throws IOException
+		 *             Thrown if the plan could not be written.
+		 */
+		public void write(final DataOutputStream output) throws IOException {
+			output.writeInt(this.entity);
+			output.writeInt(this.qualifier);
+			output.writeBoolean(this.includeOperations);
+			output.writeInt(this.steps.length);
+			for (final StoredStep step : this.steps) {
+				output.writeByte(step.type);
+				output.writeByte(step.view);
+				output.writeByte(step.flags);
+				output.writeInt(step.renderType);
+				output.writeInt(step.name);
+				output.writeShort(step.index);
+			}
+			output.writeInt(this.unresolved.length);
+			for (final int index : this.unresolved) {
+				output.writeInt(index);
+			}
+		}
+	}
+
+	/**
+	 * A stored step. Members are stored by name, the properties and
+	 * parameters of a step follow from the enclosing push and operation.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class StoredStep {
+
+		/** Flag for a push that starts an inline expansion. */
+		static final byte INLINE = 1;
+		/** View of the presentation descriptor. */
+		static final byte PRESENTATION = 1;
+		/** View of the raw descriptor. */
+		static final byte RAW = 0;
+		/** The stored size of a step, in bytes. */
+		static final int SIZE = 13;
+		/** The flags. */
+		private final byte flags;
+		/** The parameter index, or operation arity. */
+		private final short index;
+		/** The member name index. */
+		private final int name;
+		/** The render type name index. */
+		private final int renderType;
+		/** The step type ordinal. */
+		private final byte type;
+		/** The descriptor view. */
+		private final byte view;
+
+		/**
+		 * Constructs the step.
+		 * 
+		 * @param type
+		 *            The step type ordinal.
+		 * @param view
+		 *            The descriptor view.
+		 * @param flags
+		 *            The flags.
+		 * @param renderType
+		 *            The render type name index.
+		 * @param name
+		 *            The member name index.
+		 * @param index
+		 *            The parameter index, or operation arity.
+		 */
+		public StoredStep(final byte type, final byte view, final byte flags, final int renderType, final int name, final short index) {
+			this.type = type;
+			this.view = view;
+			this.flags = flags;
+			this.renderType = renderType;
+			this.name = name;
+			this.index = index;
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.presentation.RenderType;
+
+/**
+ * The statistics of a composition plan. Computed once, when the plan is
+ * built, so reporting them costs nothing per composition.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class CompositionStatistics {
+
+	/** The maximum prefix depth. */
+	private final int depth;
+	/** The step counts, by render type ordinal. */
+	private final int[] renderTypeCounts;
+	/** The amount of steps. */
+	private final int steps;
+	/** The step counts, by step type ordinal. */
+	private final int[] stepTypeCounts;
+
+	/**
+	 * Constructs the statistics.
+	 * 
+	 * @param steps
+	 *            The plan steps.
+	 */
+	CompositionStatistics(final CompositionStep[] steps) {
+		this.steps = steps.length;
+		this.stepTypeCounts = new int[StepType.values().length];
+		this.renderTypeCounts = new int[RenderType.values().length];
+		int currentDepth = 0;
+		int maximumDepth = 0;
+		for (final CompositionStep step : steps) {
+			this.stepTypeCounts[step.getType().ordinal()]++;
+			if (!CheckUtil.isNull(step.getRenderType())) {
+				this.renderTypeCounts[step.getRenderType().ordinal()]++;
+			}
+			if (step.getType() == StepType.PUSH_PREFIX) {
+				currentDepth++;
+				maximumDepth = Math.max(maximumDepth, currentDepth);
+			} else if (step.getType() == StepType.POP_PREFIX) {
+				currentDepth--;
+			}
+		}
+		this.depth = maximumDepth;
+	}
+
+	/**
+	 * Gets the amount of steps with a render type.
+	 * 
+	 * @param renderType
+	 *            The render type.
+	 * @return The amount of steps.
+	 */
+	public int getCount(final RenderType renderType) {
+		return this.renderTypeCounts[renderType.ordinal()];
+	}
+
+	/**
+	 * Gets the amount of steps of a type. Apart from prefix steps, every step
+	 * type corresponds with a render factory method.
+	 * 
+	 * @param type
+	 *            The step type.
+	 * @return The amount of steps.
+	 */
+	public int getCount(final StepType type) {
+		return this.stepTypeCounts[type.ordinal()];
+	}
+
+	/**
+	 * Gets the value for the depth field. This is the maximum amount of
+	 * prefixes pushed at once, so the inline depth reached.
+	 * 
+	 * @return The value for the depth field.
+	 */
+	public int getDepth() {
+		return this.depth;
+	}
+
+	/**
+	 * Gets the amount of members visited, the properties and operations.
+	 * 
+	 * @return The amount of members.
+	 */
+	public int getMembers() {
+		return this.getCount(StepType.PROPERTY) + this.getCount(StepType.COLLECTION_PROPERTY) + this.getCount(StepType.BEGIN_OPERATION);
+	}
+
+	/**
+	 * Gets the value for the steps field.
+	 * 
+	 * @return The value for the steps field.
+	 */
+	public int getSteps() {
+		return this.steps;
+	}
+}
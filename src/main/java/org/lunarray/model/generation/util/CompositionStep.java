@@ -0,0 +1,398 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.concurrent.Future;
+
+import org.lunarray.model.descriptor.model.operation.OperationDescriptor;
+import org.lunarray.model.descriptor.model.operation.parameters.CollectionParameterDescriptor;
+import org.lunarray.model.descriptor.model.operation.parameters.ParameterDescriptor;
+import org.lunarray.model.descriptor.model.operation.result.CollectionResultDescriptor;
+import org.lunarray.model.descriptor.model.operation.result.ResultDescriptor;
+import org.lunarray.model.descriptor.model.property.CollectionPropertyDescriptor;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+import org.lunarray.model.descriptor.presentation.RenderType;
+
+/**
+ * A single, resolved step of a composition plan. Steps are the events of a
+ * composition: the step type determines whether the descriptor is a
+ * property, parameter, result or operation, and whether the operation and
+ * render type are set.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class CompositionStep {
+
+	/** The descriptor the step applies to. */
+	private final Object descriptor;
+	/** The operation, if any. */
+	private final OperationDescriptor<?> operation;
+	/** The render type, if any. */
+	private final RenderType renderType;
+	/** The step type. */
+	private final StepType type;
+
+	/**
+	 * Constructs the step.
+	 * 
+	 * @param type
+	 *            The step type.
+	 * @param descriptor
+	 *            The descriptor.
+	 * @param operation
+	 *            The operation.
+	 * @param renderType
+	 *            The render type.
+	 */
+	private CompositionStep(final StepType type, final Object descriptor, final OperationDescriptor<?> operation,
+			final RenderType renderType) {
+		this.type = type;
+		this.descriptor = descriptor;
+		this.operation = operation;
+		this.renderType = renderType;
+	}
+
+	/**
+	 * Creates a begin operation step.
+	 * 
+	 * @param operation
+	 *            The operation.
+	 * @return The step.
+	 */
+	static CompositionStep beginOperation(final OperationDescriptor<?> operation) {
+		return new CompositionStep(StepType.BEGIN_OPERATION, operation, operation, null);
+	}
+
+	/**
+	 * Creates a collection parameter step.
+	 * 
+	 * @param operation
+	 *            The operation.
+	 * @param parameter
+	 *            The parameter.
+	 * @param renderType
+	 *            The render type.
+	 * @return The step.
+	 */
+	static CompositionStep collectionParameter(final OperationDescriptor<?> operation,
+			final CollectionParameterDescriptor<?, ?> parameter, final RenderType renderType) {
+		return new CompositionStep(StepType.COLLECTION_PARAMETER, parameter, operation, renderType);
+	}
+
+	/**
+	 * Creates a collection property step.
+	 * 
+	 * @param property
+	 *            The property.
+	 * @param renderType
+	 *            The render type.
+	 * @return The step.
+	 */
+	static CompositionStep collectionProperty(final CollectionPropertyDescriptor<?, ?, ?> property, final RenderType renderType) {
+		return new CompositionStep(StepType.COLLECTION_PROPERTY, property, null, renderType);
+	}
+
+	/**
+	 * Creates a collection result step.
+	 * 
+	 * @param operation
+	 *            The operation.
+	 * @param result
+	 *            The result.
+	 * @param renderType
+	 *            The render type.
+	 * @return The step.
+	 */
+	static CompositionStep collectionResult(final OperationDescriptor<?> operation, final CollectionResultDescriptor<?, ?> result,
+			final RenderType renderType) {
+		return new CompositionStep(StepType.COLLECTION_RESULT, result, operation, renderType);
+	}
+
+	/**
+	 * Creates an end operation step.
+	 * 
+	 * @param operation
+	 *            The operation.
+	 * @return The step.
+	 */
+	static CompositionStep endOperation(final OperationDescriptor<?> operation) {
+		return new CompositionStep(StepType.END_OPERATION, operation, operation, null);
+	}
+
+	/**
+	 * Creates a parameter step.
+	 * 
+	 * @param operation
+	 *            The operation.
+	 * @param parameter
+	 *            The parameter.
+	 * @param renderType
+	 *            The render type.
+	 * @return The step.
+	 */
+	static CompositionStep parameter(final OperationDescriptor<?> operation, final ParameterDescriptor<?> parameter,
+			final RenderType renderType) {
+		return new CompositionStep(StepType.PARAMETER, parameter, operation, renderType);
+	}
+
+	/**
+	 * Creates a pop prefix step.
+	 * 
+	 * @param property
+	 *            The property that was pushed.
+	 * @return The step.
+	 */
+	static CompositionStep popPrefix(final PropertyDescriptor<?, ?> property) {
+		return new CompositionStep(StepType.POP_PREFIX, property, null, null);
+	}
+
+	/**
+	 * Creates a property step.
+	 * 
+	 * @param property
+	 *            The property.
+	 * @param renderType
+	 *            The render type.
+	 * @return The step.
+	 */
+	static CompositionStep property(final PropertyDescriptor<?, ?> property, final RenderType renderType) {
+		return new CompositionStep(StepType.PROPERTY, property, null, renderType);
+	}
+
+	/**
+	 * Creates a push prefix step.
+	 * 
+	 * @param property
+	 *            The property to push.
+	 * @return The step.
+	 */
+	static CompositionStep pushPrefix(final PropertyDescriptor<?, ?> property) {
+		return new CompositionStep(StepType.PUSH_PREFIX, property, null, null);
+	}
+
+	/**
+	 * Creates a result step.
+	 * 
+	 * @param operation
+	 *            The operation.
+	 * @param result
+	 *            The result.
+	 * @param renderType
+	 *            The render type.
+	 * @return The step.
+	 */
+	static CompositionStep result(final OperationDescriptor<?> operation, final ResultDescriptor<?> result,
+			final RenderType renderType) {
+		return new CompositionStep(StepType.RESULT, result, operation, renderType);
+	}
+
+	/**
+	 * Gets the value for the descriptor field.
+	 * 
+	 * @return The value for the descriptor field.
+	 */
+	public Object getDescriptor() {
+		return this.descriptor;
+	}
+
+	/**
+	 * Gets the value for the operation field.
+	 * 
+	 * @return The value for the operation field.
+	 */
+	public OperationDescriptor<?> getOperation() {
+		return this.operation;
+	}
+
+	/**
+	 * Gets the value for the renderType field.
+	 * 
+	 * @return The value for the renderType field.
+	 */
+	public RenderType getRenderType() {
+		return this.renderType;
+	}
+
+	/**
+	 * Gets the value for the type field.
+	 * 
+	 * @return The value for the type field.
+	 */
+	public StepType getType() {
+		return this.type;
+	}
+
+	/**
+	 * Replays this step, pushing or popping a prefix or making the render
+	 * call.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param factory
+	 *            The render factory.
+	 * @param <C>
+	 *            The context type.
+	 * @param <E>
+	 *            The entity type.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	// Types were checked when the step was resolved.
+	public <C extends Context, E> void replay(final C context, final RenderFactory<C, E> factory) {
+		final OperationDescriptor<E> typedOperation = (OperationDescriptor<E>) this.operation;
+		switch (this.type) {
+		case PUSH_PREFIX:
+			context.pushPrefix((PropertyDescriptor<?, ?>) this.descriptor);
+			break;
+		case POP_PREFIX:
+			context.popPrefix();
+			break;
+		case PROPERTY:
+			factory.renderProperty(context, (PropertyDescriptor) this.descriptor, this.renderType);
+			break;
+		case COLLECTION_PROPERTY:
+			factory.renderCollectionProperty(context, (CollectionPropertyDescriptor) this.descriptor, this.renderType);
+			break;
+		case BEGIN_OPERATION:
+			factory.beginOperation(context, typedOperation);
+			break;
+		case PARAMETER:
+			factory.renderParameter(context, (ParameterDescriptor) this.descriptor, typedOperation, this.renderType);
+			break;
+		case COLLECTION_PARAMETER:
+			factory.renderCollectionParameter(context, typedOperation, (CollectionParameterDescriptor) this.descriptor, this.renderType);
+			break;
+		case RESULT:
+			factory.renderResultType(context, typedOperation, (ResultDescriptor) this.descriptor, this.renderType);
+			break;
+		case COLLECTION_RESULT:
+			factory.renderCollectionResultType(context, typedOperation, (CollectionResultDescriptor) this.descriptor, this.renderType);
+			break;
+		case END_OPERATION:
+			factory.endOperation(context, typedOperation);
+			break;
+		default:
+			throw new IllegalStateException("Unknown step type: " + this.type);
+		}
+	}
+
+	/**
+	 * Replays this begin operation step, deferring the parameters and result.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param factory
+	 *            The lazy operation render factory.
+	 * @param handle
+	 *            The operation plan.
+	 * @param <C>
+	 *            The context type.
+	 * @param <E>
+	 *            The entity type.
+	 */
+	@SuppressWarnings("unchecked")
+	// Types were checked when the step was resolved.
+	public <C extends Context, E> void replay(final C context, final LazyOperationRenderFactory<C, E> factory, final OperationPlan handle) {
+		factory.beginOperation(context, (OperationDescriptor<E>) this.operation, handle);
+	}
+
+	/**
+	 * Replays this step, passing the path to property render calls.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param factory
+	 *            The path render factory.
+	 * @param path
+	 *            The property path, for property steps.
+	 * @param <C>
+	 *            The context type.
+	 * @param <E>
+	 *            The entity type.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	// Types were checked when the step was resolved.
+	public <C extends Context, E> void replay(final C context, final PathRenderFactory<C, E> factory, final PropertyPath path) {
+		if (this.type == StepType.PROPERTY) {
+			factory.renderProperty(context, (PropertyDescriptor) this.descriptor, this.renderType, path);
+		} else if (this.type == StepType.COLLECTION_PROPERTY) {
+			factory.renderCollectionProperty(context, (CollectionPropertyDescriptor) this.descriptor, this.renderType, path);
+		} else {
+			this.replay(context, factory);
+		}
+	}
+
+	/**
+	 * Replays this step asynchronously, pushing or popping a prefix or
+	 * starting the render call.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param factory
+	 *            The asynchronous render factory.
+	 * @return The pending result, or null for prefix steps.
+	 * @param <C>
+	 *            The context type.
+	 * @param <E>
+	 *            The entity type.
+	 * @param <T>
+	 *            The render result type.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	// Types were checked when the step was resolved.
+	public <C extends Context, E, T> Future<T> replay(final C context, final AsyncRenderFactory<C, E, T> factory) {
+		final OperationDescriptor<E> typedOperation = (OperationDescriptor<E>) this.operation;
+		Future<T> result = null;
+		switch (this.type) {
+		case PUSH_PREFIX:
+			context.pushPrefix((PropertyDescriptor<?, ?>) this.descriptor);
+			break;
+		case POP_PREFIX:
+			context.popPrefix();
+			break;
+		case PROPERTY:
+			result = factory.renderProperty(context, (PropertyDescriptor) this.descriptor, this.renderType);
+			break;
+		case COLLECTION_PROPERTY:
+			result = factory.renderCollectionProperty(context, (CollectionPropertyDescriptor) this.descriptor, this.renderType);
+			break;
+		case BEGIN_OPERATION:
+			result = factory.beginOperation(context, typedOperation);
+			break;
+		case PARAMETER:
+			result = factory.renderParameter(context, (ParameterDescriptor) this.descriptor, typedOperation, this.renderType);
+			break;
+		case COLLECTION_PARAMETER:
+			result = factory.renderCollectionParameter(context, typedOperation, (CollectionParameterDescriptor) this.descriptor,
+					this.renderType);
+			break;
+		case RESULT:
+			result = factory.renderResultType(context, typedOperation, (ResultDescriptor) this.descriptor, this.renderType);
+			break;
+		case COLLECTION_RESULT:
+			result = factory.renderCollectionResultType(context, typedOperation, (CollectionResultDescriptor) this.descriptor,
+					this.renderType);
+			break;
+		case END_OPERATION:
+			result = factory.endOperation(context, typedOperation);
+			break;
+		default:
+			throw new IllegalStateException("Unknown step type: " + this.type);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,41 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+
+/**
+ * Creates contexts for compositions that run apart from the calling context.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <C>
+ *            The context type.
+ */
+public interface ContextFactory<C extends Context> {
+
+	/**
+	 * Creates a context.
+	 * 
+	 * @param parent
+	 *            The calling context.
+	 * @param descriptor
+	 *            The entity descriptor the context is for.
+	 * @return A new context.
+	 */
+	C createContext(C parent, EntityDescriptor<?> descriptor);
+}
@@ -0,0 +1,134 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+
+/**
+ * A concurrent cache of member decision tables, by qualified entity
+ * descriptor and operation inclusion. Tables are shared between all plans
+ * that render the entity, either directly or inline.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+final class DecisionTableCache {
+
+	/** Slot for tables including operations. */
+	private static final int MEMBERS = 1;
+	/** Slot for tables excluding operations. */
+	private static final int PROPERTIES = 0;
+	/** The tables, by descriptor. */
+	private final ConcurrentMap<EntityDescriptor<?>, AtomicReferenceArray<MemberDecision[]>> tables;
+
+	/**
+	 * Default constructor.
+	 */
+	DecisionTableCache() {
+		this.tables = new ConcurrentHashMap<EntityDescriptor<?>, AtomicReferenceArray<MemberDecision[]>>();
+	}
+
+	/**
+	 * Clears the cache.
+	 */
+	public void clear() {
+		this.tables.clear();
+	}
+
+	/**
+	 * Gets a table.
+	 * 
+	 * @param descriptor
+	 *            The qualified entity descriptor.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @return The table, or null if none was cached.
+	 */
+	public MemberDecision[] getTable(final EntityDescriptor<?> descriptor, final boolean includeOperations) {
+		MemberDecision[] result = null;
+		final AtomicReferenceArray<MemberDecision[]> slots = this.tables.get(descriptor);
+		if (!CheckUtil.isNull(slots)) {
+			result = slots.get(DecisionTableCache.slot(includeOperations));
+		}
+		return result;
+	}
+
+	/**
+	 * Caches a table, unless one was cached concurrently.
+	 * 
+	 * @param descriptor
+	 *            The qualified entity descriptor.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @param table
+	 *            The table.
+	 * @return The cached table.
+	 */
+	public MemberDecision[] putTable(final EntityDescriptor<?> descriptor, final boolean includeOperations, final MemberDecision[] table) {
+		AtomicReferenceArray<MemberDecision[]> slots = this.tables.get(descriptor);
+		if (CheckUtil.isNull(slots)) {
+			final AtomicReferenceArray<MemberDecision[]> created = new AtomicReferenceArray<MemberDecision[]>(2);
+			slots = this.tables.putIfAbsent(descriptor, created);
+			if (CheckUtil.isNull(slots)) {
+				slots = created;
+			}
+		}
+		final int slot = DecisionTableCache.slot(includeOperations);
+		MemberDecision[] result = table;
+		if (!slots.compareAndSet(slot, null, table)) {
+			result = slots.get(slot);
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the amount of cached tables.
+	 * 
+	 * @return The amount of cached tables.
+	 */
+	public int size() {
+		int size = 0;
+		for (final AtomicReferenceArray<MemberDecision[]> slots : this.tables.values()) {
+			for (int i = 0; i < slots.length(); i++) {
+				if (!CheckUtil.isNull(slots.get(i))) {
+					size++;
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Gets the slot for the operation inclusion.
+	 * 
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @return The slot.
+	 */
+	private static int slot(final boolean includeOperations) {
+		int slot = DecisionTableCache.PROPERTIES;
+		if (includeOperations) {
+			slot = DecisionTableCache.MEMBERS;
+		}
+		return slot;
+	}
+}
@@ -0,0 +1,82 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+/**
+ * A render factory that can apply changes to an earlier rendering. Members
+ * are keyed by kind and name: <code>property:</code> and the property name,
+ * or <code>operation:</code> and the operation name with its parameter
+ * types, for example <code>operation:echo(java.lang.String)</code>. Inserted
+ * and updated members are rendered with the regular render calls, between a
+ * begin and an end call.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <C>
+ *            The context type.
+ * @param <E>
+ *            The entity type.
+ * @see Composer#recompose(Context, CompositionPlan, boolean,
+ *      DeltaRenderFactory)
+ */
+public interface DeltaRenderFactory<C extends Context, E>
+		extends RenderFactory<C, E> {
+
+	/**
+	 * Begin inserting a member.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param member
+	 *            The member key.
+	 * @param index
+	 *            The member index in the new rendering.
+	 */
+	void beginInsert(C context, String member, int index);
+
+	/**
+	 * Begin updating a member. The member is rendered anew.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param member
+	 *            The member key.
+	 * @param index
+	 *            The member index in the new rendering.
+	 */
+	void beginUpdate(C context, String member, int index);
+
+	/**
+	 * End inserting or updating a member.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param member
+	 *            The member key.
+	 */
+	void endMember(C context, String member);
+
+	/**
+	 * Remove a member.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param member
+	 *            The member key.
+	 */
+	void remove(C context, String member);
+}
@@ -0,0 +1,295 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.presentation.RenderType;
+
+/**
+ * An in memory monitor. Keeps counters and a histogram of composition
+ * durations, with power of two buckets.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class HistogramCompositionMonitor
+		implements CompositionMonitor {
+
+	/** The amount of duration buckets. */
+	private static final int BUCKETS = 64;
+	/** The amount of compositions. */
+	private final AtomicLong compositions;
+	/** The maximum depth. */
+	private final AtomicInteger depth;
+	/** The duration histogram. */
+	private final AtomicLongArray durations;
+	/** The label cache hits. */
+	private final AtomicLong labelHits;
+	/** The label cache misses. */
+	private final AtomicLong labelMisses;
+	/** The amount of members visited. */
+	private final AtomicLong members;
+	/** The plan cache hits. */
+	private final AtomicLong planHits;
+	/** The plan cache misses. */
+	private final AtomicLong planMisses;
+	/** The step counts, by render type ordinal. */
+	private final AtomicLongArray renderTypeCounts;
+	/** The resolver calls, by method. */
+	private final ConcurrentMap<String, AtomicLong> resolverCalls;
+	/** The step counts, by step type ordinal. */
+	private final AtomicLongArray stepTypeCounts;
+	/** The total duration. */
+	private final AtomicLong totalDuration;
+
+	/**
+	 * Default constructor.
+	 */
+	public HistogramCompositionMonitor() {
+		this.compositions = new AtomicLong();
+		this.depth = new AtomicInteger();
+		this.durations = new AtomicLongArray(HistogramCompositionMonitor.BUCKETS);
+		this.labelHits = new AtomicLong();
+		this.labelMisses = new AtomicLong();
+		this.members = new AtomicLong();
+		this.planHits = new AtomicLong();
+		this.planMisses = new AtomicLong();
+		this.renderTypeCounts = new AtomicLongArray(RenderType.values().length);
+		this.resolverCalls = new ConcurrentHashMap<String, AtomicLong>();
+		this.stepTypeCounts = new AtomicLongArray(StepType.values().length);
+		this.totalDuration = new AtomicLong();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void composed(final CompositionStatistics statistics, final long duration) {
+		this.compositions.incrementAndGet();
+		this.totalDuration.addAndGet(duration);
+		this.durations.incrementAndGet(HistogramCompositionMonitor.bucket(duration));
+		this.members.addAndGet(statistics.getMembers());
+		for (final StepType type : StepType.values()) {
+			final int count = statistics.getCount(type);
+			if (count > 0) {
+				this.stepTypeCounts.addAndGet(type.ordinal(), count);
+			}
+		}
+		for (final RenderType renderType : RenderType.values()) {
+			final int count = statistics.getCount(renderType);
+			if (count > 0) {
+				this.renderTypeCounts.addAndGet(renderType.ordinal(), count);
+			}
+		}
+		int current = this.depth.get();
+		while ((statistics.getDepth() > current) && !this.depth.compareAndSet(current, statistics.getDepth())) {
+			current = this.depth.get();
+		}
+	}
+
+	/**
+	 * Gets the amount of compositions.
+	 * 
+	 * @return The amount of compositions.
+	 */
+	public long getCompositions() {
+		return this.compositions.get();
+	}
+
+	/**
+	 * Gets the amount of rendered steps with a render type.
+	 * 
+	 * @param renderType
+	 *            The render type.
+	 * @return The amount of steps.
+	 */
+	public long getCount(final RenderType renderType) {
+		return this.renderTypeCounts.get(renderType.ordinal());
+	}
+
+	/**
+	 * Gets the amount of replayed steps of a type.
+	 * 
+	 * @param type
+	 *            The step type.
+	 * @return The amount of steps.
+	 */
+	public long getCount(final StepType type) {
+		return this.stepTypeCounts.get(type.ordinal());
+	}
+
+	/**
+	 * Gets the maximum inline depth reached.
+	 * 
+	 * @return The depth.
+	 */
+	public int getDepth() {
+		return this.depth.get();
+	}
+
+	/**
+	 * Gets a duration percentile. The result is the upper bound of the bucket
+	 * holding the percentile.
+	 * 
+	 * @param percentile
+	 *            The percentile, between 0 and 1.
+	 * @return The duration, in nanoseconds, or 0 if nothing was composed.
+	 */
+	public long getDurationPercentile(final double percentile) {
+		final long threshold = (long) Math.ceil(percentile * this.compositions.get());
+		long result = 0;
+		long seen = 0;
+		for (int i = 0; (i < HistogramCompositionMonitor.BUCKETS) && (seen < threshold); i++) {
+			seen += this.durations.get(i);
+			result = HistogramCompositionMonitor.upperBound(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the label cache hit rate.
+	 * 
+	 * @return The hit rate, between 0 and 1.
+	 */
+	public double getLabelHitRate() {
+		return HistogramCompositionMonitor.rate(this.labelHits.get(), this.labelMisses.get());
+	}
+
+	/**
+	 * Gets the amount of members visited.
+	 * 
+	 * @return The amount of members.
+	 */
+	public long getMembers() {
+		return this.members.get();
+	}
+
+	/**
+	 * Gets the plan cache hit rate.
+	 * 
+	 * @return The hit rate, between 0 and 1.
+	 */
+	public double getPlanHitRate() {
+		return HistogramCompositionMonitor.rate(this.planHits.get(), this.planMisses.get());
+	}
+
+	/**
+	 * Gets the amount of calls to a resolver method.
+	 * 
+	 * @param method
+	 *            The method name.
+	 * @return The amount of calls.
+	 */
+	public long getResolverCalls(final String method) {
+		final AtomicLong calls = this.resolverCalls.get(method);
+		long result = 0;
+		if (!CheckUtil.isNull(calls)) {
+			result = calls.get();
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the total duration.
+	 * 
+	 * @return The total duration, in nanoseconds.
+	 */
+	public long getTotalDuration() {
+		return this.totalDuration.get();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void labelLookup(final boolean hit) {
+		if (hit) {
+			this.labelHits.incrementAndGet();
+		} else {
+			this.labelMisses.incrementAndGet();
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void planLookup(final boolean hit) {
+		if (hit) {
+			this.planHits.incrementAndGet();
+		} else {
+			this.planMisses.incrementAndGet();
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void resolverCall(final String method) {
+		AtomicLong calls = this.resolverCalls.get(method);
+		if (CheckUtil.isNull(calls)) {
+			final AtomicLong created = new AtomicLong();
+			calls = this.resolverCalls.putIfAbsent(method, created);
+			if (CheckUtil.isNull(calls)) {
+				calls = created;
+			}
+		}
+		calls.incrementAndGet();
+	}
+
+	/**
+	 * Gets the bucket of a duration.
+	 * 
+	 * @param duration
+	 *            The duration.
+	 * @return The bucket, the amount of significant bits.
+	 */
+	private static int bucket(final long duration) {
+		return Math.min(HistogramCompositionMonitor.BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(Math.max(0, duration)));
+	}
+
+	/**
+	 * Calculates a hit rate.
+	 * 
+	 * @param hits
+	 *            The hits.
+	 * @param misses
+	 *            The misses.
+	 * @return The hit rate.
+	 */
+	private static double rate(final long hits, final long misses) {
+		double rate = 0;
+		if (hits + misses > 0) {
+			rate = (double) hits / (hits + misses);
+		}
+		return rate;
+	}
+
+	/**
+	 * Gets the upper bound of a bucket.
+	 * 
+	 * @param bucket
+	 *            The bucket.
+	 * @return The largest duration in the bucket.
+	 */
+	private static long upperBound(final int bucket) {
+		long bound = Long.MAX_VALUE;
+		if (bucket < HistogramCompositionMonitor.BUCKETS - 1) {
+			bound = (1L << bucket) - 1;
+		}
+		return bound;
+	}
+}
@@ -0,0 +1,323 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+
+/**
+ * A bounded, thread safe cache of resolved labels. Labels are keyed by
+ * entity descriptor, qualifier and locale, in nested concurrent maps, so
+ * looking up a label neither locks nor allocates. Every label is stamped
+ * past the tick of the last put when it is read, so it ranks after the
+ * labels put before. Once the maximum size is exceeded the labels with the
+ * oldest stamps are evicted, which approximates evicting the least recently
+ * used labels. Should be
+ * invalidated whenever resource bundles are reloaded.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class LabelCache {
+
+	/** The default maximum size. */
+	public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+	/** Key for the absent qualifier or locale. */
+	private static final Object NONE = new Object();
+	/** The eviction lock, evictions are serialized, lookups are not. */
+	private final Object evictions;
+	/** The labels, by descriptor, by qualifier, by locale. */
+	private final ConcurrentMap<EntityDescriptor<?>, ConcurrentMap<Object, ConcurrentMap<Object, Label>>> labels;
+	/** The maximum size. */
+	private final int maximumSize;
+	/** The amount of cached labels. */
+	private final AtomicInteger size;
+	/** The tick, advanced by every put. */
+	private final AtomicLong tick;
+
+	/**
+	 * Constructs a cache of the default maximum size.
+	 */
+	public LabelCache() {
+		this(LabelCache.DEFAULT_MAXIMUM_SIZE);
+	}
+
+	/**
+	 * Constructs the cache.
+	 * 
+	 * @param maximumSize
+	 *            The maximum amount of labels to hold.
+	 */
+	public LabelCache(final int maximumSize) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("Maximum size must be positive.");
+		}
+		this.maximumSize = maximumSize;
+		this.labels = new ConcurrentHashMap<EntityDescriptor<?>, ConcurrentMap<Object, ConcurrentMap<Object, Label>>>();
+		this.evictions = new Object();
+		this.size = new AtomicInteger();
+		this.tick = new AtomicLong();
+	}
+
+	/**
+	 * Invalidates all labels, for example after reloading resource bundles.
+	 */
+	public void invalidate() {
+		for (final EntityDescriptor<?> descriptor : this.labels.keySet()) {
+			this.invalidate(descriptor);
+		}
+	}
+
+	/**
+	 * Invalidates all labels of an entity.
+	 * 
+	 * @param descriptor
+	 *            The (unqualified) entity descriptor.
+	 */
+	public void invalidate(final EntityDescriptor<?> descriptor) {
+		final ConcurrentMap<Object, ConcurrentMap<Object, Label>> qualified = this.labels.remove(descriptor);
+		if (!CheckUtil.isNull(qualified)) {
+			for (final ConcurrentMap<Object, Label> localized : qualified.values()) {
+				for (final Map.Entry<Object, Label> entry : localized.entrySet()) {
+					this.remove(localized, entry.getKey(), entry.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the amount of cached labels.
+	 * 
+	 * @return The amount of cached labels.
+	 */
+	public int size() {
+		return this.size.get();
+	}
+
+	/**
+	 * Gets a label.
+	 * 
+	 * @param descriptor
+	 *            The (unqualified) entity descriptor.
+	 * @param qualifier
+	 *            The qualifier, may be null.
+	 * @param locale
+	 *            The locale, may be null.
+	 * @return The label, or null if none was cached.
+	 */
+	String getLabel(final EntityDescriptor<?> descriptor, final Class<?> qualifier, final Locale locale) {
+		String result = null;
+		final ConcurrentMap<Object, ConcurrentMap<Object, Label>> qualified = this.labels.get(descriptor);
+		if (!CheckUtil.isNull(qualified)) {
+			final ConcurrentMap<Object, Label> localized = qualified.get(LabelCache.key(qualifier));
+			if (!CheckUtil.isNull(localized)) {
+				final Label label = localized.get(LabelCache.key(locale));
+				if (!CheckUtil.isNull(label)) {
+					label.touch(this.tick.get() + 1);
+					result = label.value;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Caches a label.
+	 * 
+	 * @param descriptor
+	 *            The (unqualified) entity descriptor.
+	 * @param qualifier
+	 *            The qualifier, may be null.
+	 * @param locale
+	 *            The locale, may be null.
+	 * @param label
+	 *            The label, null labels are not cached.
+	 * @return True if and only if the label was cached by this call, rather
+	 *         than concurrently.
+	 */
+	boolean putLabel(final EntityDescriptor<?> descriptor, final Class<?> qualifier, final Locale locale, final String label) {
+		boolean put = false;
+		if (!CheckUtil.isNull(label)) {
+			final ConcurrentMap<Object, ConcurrentMap<Object, Label>> qualified = this.qualified(descriptor);
+			final ConcurrentMap<Object, Label> localized = LabelCache.localized(qualified, LabelCache.key(qualifier));
+			final Object localeKey = LabelCache.key(locale);
+			final Label entry = new Label(label, this.tick.incrementAndGet());
+			if (CheckUtil.isNull(localized.putIfAbsent(localeKey, entry))) {
+				this.size.incrementAndGet();
+				put = true;
+				// An entity invalidated concurrently may have detached the maps.
+				if ((this.labels.get(descriptor) != qualified) || (qualified.get(LabelCache.key(qualifier)) != localized)) {
+					this.remove(localized, localeKey, entry);
+					put = false;
+				}
+			}
+			if (this.size.get() > this.maximumSize) {
+				this.evict();
+			}
+		}
+		return put;
+	}
+
+	/**
+	 * Evicts the labels with the oldest stamps until the cache is within its
+	 * maximum size.
+	 */
+	private void evict() {
+		synchronized (this.evictions) {
+			boolean evicting = true;
+			while (evicting && (this.size.get() > this.maximumSize)) {
+				ConcurrentMap<Object, Label> oldestMap = null;
+				Object oldestKey = null;
+				Label oldest = null;
+				for (final ConcurrentMap<Object, ConcurrentMap<Object, Label>> qualified : this.labels.values()) {
+					for (final ConcurrentMap<Object, Label> localized : qualified.values()) {
+						for (final Map.Entry<Object, Label> entry : localized.entrySet()) {
+							if (CheckUtil.isNull(oldest) || (entry.getValue().stamp < oldest.stamp)) {
+								oldestMap = localized;
+								oldestKey = entry.getKey();
+								oldest = entry.getValue();
+							}
+						}
+					}
+				}
+				// Only detached labels may be left, their removal is pending.
+				evicting = !CheckUtil.isNull(oldest);
+				if (evicting) {
+					this.remove(oldestMap, oldestKey, oldest);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the key of a qualifier or locale.
+	 * 
+	 * @param value
+	 *            The qualifier or locale, may be null.
+	 * @return The key.
+	 */
+	private static Object key(final Object value) {
+		Object key = value;
+		if (CheckUtil.isNull(key)) {
+			key = LabelCache.NONE;
+		}
+		return key;
+	}
+
+	/**
+	 * Gets or creates the labels of a qualifier.
+	 * 
+	 * @param qualified
+	 *            The labels of an entity.
+	 * @param qualifierKey
+	 *            The qualifier key.
+	 * @return The labels of the qualifier, by locale.
+	 */
+	private static ConcurrentMap<Object, Label> localized(final ConcurrentMap<Object, ConcurrentMap<Object, Label>> qualified,
+			final Object qualifierKey) {
+		ConcurrentMap<Object, Label> localized = qualified.get(qualifierKey);
+		if (CheckUtil.isNull(localized)) {
+			final ConcurrentMap<Object, Label> created = new ConcurrentHashMap<Object, Label>();
+			localized = qualified.putIfAbsent(qualifierKey, created);
+			if (CheckUtil.isNull(localized)) {
+				localized = created;
+			}
+		}
+		return localized;
+	}
+
+	/**
+	 * Gets or creates the labels of an entity.
+	 * 
+	 * @param descriptor
+	 *            The entity descriptor.
+	 * @return The labels of the entity, by qualifier.
+	 */
+	private ConcurrentMap<Object, ConcurrentMap<Object, Label>> qualified(final EntityDescriptor<?> descriptor) {
+		ConcurrentMap<Object, ConcurrentMap<Object, Label>> qualified = this.labels.get(descriptor);
+		if (CheckUtil.isNull(qualified)) {
+			final ConcurrentMap<Object, ConcurrentMap<Object, Label>> created = new ConcurrentHashMap<Object, ConcurrentMap<Object, Label>>();
+			qualified = this.labels.putIfAbsent(descriptor, created);
+			if (CheckUtil.isNull(qualified)) {
+				qualified = created;
+			}
+		}
+		return qualified;
+	}
+
+	/**
+	 * Removes a label, and counts it removed if it was still cached.
+	 * 
+	 * @param localized
+	 *            The labels of a qualifier.
+	 * @param localeKey
+	 *            The locale key.
+	 * @param label
+	 *            The label.
+	 */
+	private void remove(final ConcurrentMap<Object, Label> localized, final Object localeKey, final Label label) {
+		if (localized.remove(localeKey, label)) {
+			this.size.decrementAndGet();
+		}
+	}
+
+	/**
+	 * A cached label, with the tick it was last used at.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class Label {
+
+		/** The tick of the last use. Written racily, it is a hint. */
+		private volatile long stamp;
+		/** The label. */
+		private final String value;
+
+		/**
+		 * Constructs the label.
+		 * 
+		 * @param value
+		 *            The label.
+		 * @param stamp
+		 *            The tick it is cached at.
+		 */
+		public Label(final String value, final long stamp) {
+			this.value = value;
+			this.stamp = stamp;
+		}
+
+		/**
+		 * Stamps the label as used.
+		 * 
+		 * @param tick
+		 *            The stamp of the use.
+		 */
+		public void touch(final long tick) {
+			// Avoid writing the shared line if nothing was put since.
+			if (this.stamp != tick) {
+				this.stamp = tick;
+			}
+		}
+	}
+}
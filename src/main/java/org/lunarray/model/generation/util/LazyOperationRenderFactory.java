@@ -0,0 +1,55 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import org.lunarray.model.descriptor.model.operation.OperationDescriptor;
+
+/**
+ * A render factory that composes operation parameters and results on
+ * demand. Operations are begun with a handle and ended immediately, the
+ * parameters and result are rendered only once the handle is replayed, for
+ * instance when the operation dialog is opened. Handles are shared by every
+ * plan with the operation, so they don't hold a prefix. An operation of an
+ * inline member is begun with the inline prefixes pushed, and its handle
+ * should be replayed under the same prefixes, for example those taken from
+ * a {@link PrefixStackContext} when the operation is begun.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <C>
+ *            The context type.
+ * @param <E>
+ *            The entity type.
+ * @see OperationPlan#replayParameters(Context, RenderFactory)
+ * @see OperationPlan#replayParameters(Context, RenderFactory, java.util.List)
+ */
+public interface LazyOperationRenderFactory<C extends Context, E>
+		extends RenderFactory<C, E> {
+
+	/**
+	 * Begin an operation, deferring its parameters and result.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param descriptor
+	 *            The descriptor.
+	 * @param handle
+	 *            The shared operation plan, to compose the parameters and
+	 *            result with later, under the current prefixes.
+	 */
+	void beginOperation(C context, OperationDescriptor<E> descriptor, OperationPlan handle);
+}
@@ -0,0 +1,191 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+import org.lunarray.model.descriptor.presentation.RenderType;
+
+/**
+ * The precomputed render decision for a member. Holds everything the plan
+ * builder needs, so descriptors are adapted once per member rather than once
+ * per plan.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+final class MemberDecision {
+
+	/** Empty steps. */
+	private static final CompositionStep[] NO_STEPS = new CompositionStep[0];
+	/** Whether the property is rendered inline. */
+	private final boolean inline;
+	/** The member kind. */
+	private final Kind kind;
+	/** The property, if any. */
+	private final PropertyDescriptor<?, ?> property;
+	/** The related name, for inline properties. */
+	private final String relatedName;
+	/** The render step of a visible property, if any. */
+	private final CompositionStep renderStep;
+	/** The steps of an operation. */
+	private final CompositionStep[] steps;
+
+	/**
+	 * Constructs the decision.
+	 * 
+	 * @param kind
+	 *            The kind.
+	 * @param property
+	 *            The property.
+	 * @param renderStep
+	 *            The render step.
+	 * @param inline
+	 *            Whether the property is rendered inline.
+	 * @param relatedName
+	 *            The related name.
+	 * @param steps
+	 *            The operation steps.
+	 */
+	private MemberDecision(final Kind kind, final PropertyDescriptor<?, ?> property, final CompositionStep renderStep,
+			final boolean inline, final String relatedName, final CompositionStep[] steps) {
+		this.kind = kind;
+		this.property = property;
+		this.renderStep = renderStep;
+		this.inline = inline;
+		this.relatedName = relatedName;
+		this.steps = steps;
+	}
+
+	/**
+	 * Creates an operation decision.
+	 * 
+	 * @param plan
+	 *            The operation plan.
+	 * @return The decision.
+	 */
+	public static MemberDecision operation(final OperationPlan plan) {
+		return new MemberDecision(Kind.OPERATION, null, null, false, null, plan.getSteps());
+	}
+
+	/**
+	 * Creates a property decision.
+	 * 
+	 * @param property
+	 *            The property.
+	 * @param renderStep
+	 *            The render step, null if the property isn't visible.
+	 * @param inline
+	 *            Whether the property is rendered inline.
+	 * @param relatedName
+	 *            The related name, may be null.
+	 * @return The decision.
+	 */
+	public static MemberDecision property(final PropertyDescriptor<?, ?> property, final CompositionStep renderStep,
+			final boolean inline, final String relatedName) {
+		return new MemberDecision(Kind.PROPERTY, property, renderStep, inline, relatedName, MemberDecision.NO_STEPS);
+	}
+
+	/**
+	 * Gets the value for the kind field.
+	 * 
+	 * @return The value for the kind field.
+	 */
+	public Kind getKind() {
+		return this.kind;
+	}
+
+	/**
+	 * Gets the value for the property field.
+	 * 
+	 * @return The value for the property field.
+	 */
+	public PropertyDescriptor<?, ?> getProperty() {
+		return this.property;
+	}
+
+	/**
+	 * Gets the value for the relatedName field.
+	 * 
+	 * @return The value for the relatedName field.
+	 */
+	public String getRelatedName() {
+		return this.relatedName;
+	}
+
+	/**
+	 * Gets the render step.
+	 * 
+	 * @return The render step, null if the property isn't visible.
+	 */
+	public CompositionStep getRenderStep() {
+		return this.renderStep;
+	}
+
+	/**
+	 * Gets the render type.
+	 * 
+	 * @return The render type, null if the property isn't visible.
+	 */
+	public RenderType getRenderType() {
+		RenderType renderType = null;
+		if (this.isVisible()) {
+			renderType = this.renderStep.getRenderType();
+		}
+		return renderType;
+	}
+
+	/**
+	 * Gets the value for the steps field.
+	 * 
+	 * @return The value for the steps field.
+	 */
+	public CompositionStep[] getSteps() {
+		return this.steps;
+	}
+
+	/**
+	 * Gets the value for the inline field.
+	 * 
+	 * @return The value for the inline field.
+	 */
+	public boolean isInline() {
+		return this.inline;
+	}
+
+	/**
+	 * Tests if the property is visible.
+	 * 
+	 * @return True if and only if the property is rendered.
+	 */
+	public boolean isVisible() {
+		return !CheckUtil.isNull(this.renderStep);
+	}
+
+	/**
+	 * The member kinds.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	enum Kind {
+
+		/** An operation. */
+		OPERATION,
+		/** A property. */
+		PROPERTY;
+	}
+}
@@ -0,0 +1,54 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import org.lunarray.model.descriptor.model.member.MemberDescriptor;
+import org.lunarray.model.descriptor.presentation.RenderType;
+
+/**
+ * Selects the members to compose. A filter is tested while a plan is built,
+ * for the members at every inline level; a rejected property is not
+ * expanded. Filtered plans are cached by filter, so an implementation must
+ * have value equality, through equals and hash code, or be reused as a
+ * single instance. The hash code is computed on every filtered composition,
+ * so it should be cheap, for example computed once. A filter created per composition without value equality
+ * builds a plan per composition, and evicts the plans of other filters from
+ * the bounded filter cache.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see MemberFilters
+ */
+public interface MemberFilter {
+
+	/**
+	 * Tests if a member is composed.
+	 * 
+	 * @param path
+	 *            The dotted path of the member, as rendered with a
+	 *            {@link PropertyPath}.
+	 * @param member
+	 *            The member, a property or an operation.
+	 * @param renderType
+	 *            The render type, null for operations and properties that
+	 *            aren't visible.
+	 * @param key
+	 *            Whether the member is the key property of its entity.
+	 * @return True if and only if the member is composed.
+	 */
+	boolean accept(String path, MemberDescriptor<?> member, RenderType renderType, boolean key);
+}
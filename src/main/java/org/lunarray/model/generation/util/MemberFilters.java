@@ -0,0 +1,304 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.model.member.MemberDescriptor;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+import org.lunarray.model.descriptor.presentation.RenderType;
+
+/**
+ * Common member filters. The filters are values, equal filters share their
+ * cached plans. Hash codes are computed once, since a filter is hashed on
+ * every filtered composition.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class MemberFilters {
+
+	/** The key filter. */
+	private static final MemberFilter KEYS = new KeyFilter();
+	/** The visibility filter. */
+	private static final MemberFilter VISIBLE = new VisibleFilter();
+
+	/**
+	 * Utility class.
+	 */
+	private MemberFilters() {
+		// Utility class.
+	}
+
+	/**
+	 * Creates a filter accepting members all given filters accept.
+	 * 
+	 * @param filters
+	 *            The filters.
+	 * @return The filter.
+	 */
+	public static MemberFilter all(final MemberFilter... filters) {
+		return new AllFilter(filters);
+	}
+
+	/**
+	 * Gets a filter accepting key properties only.
+	 * 
+	 * @return The filter.
+	 */
+	public static MemberFilter keys() {
+		return MemberFilters.KEYS;
+	}
+
+	/**
+	 * Creates a filter accepting members by path. A path selects the member
+	 * with all of its inline members, and the properties enclosing it.
+	 * 
+	 * @param paths
+	 *            The dotted paths, for example
+	 *            <code>inlineValue2.testValue</code>.
+	 * @return The filter.
+	 */
+	public static MemberFilter names(final String... paths) {
+		return new NameFilter(paths);
+	}
+
+	/**
+	 * Creates a filter accepting properties with one of the given render
+	 * types.
+	 * 
+	 * @param renderTypes
+	 *            The render types.
+	 * @return The filter.
+	 */
+	public static MemberFilter renderTypes(final RenderType... renderTypes) {
+		return new RenderTypeFilter(renderTypes);
+	}
+
+	/**
+	 * Gets a filter accepting operations and visible properties.
+	 * 
+	 * @return The filter.
+	 */
+	public static MemberFilter visible() {
+		return MemberFilters.VISIBLE;
+	}
+
+	/**
+	 * Tests if a path encloses another.
+	 * 
+	 * @param outer
+	 *            The outer path.
+	 * @param inner
+	 *            The inner path.
+	 * @return True if and only if the inner path is below the outer path.
+	 */
+	private static boolean encloses(final String outer, final String inner) {
+		return (inner.length() > outer.length()) && inner.startsWith(outer) && (inner.charAt(outer.length()) == '.');
+	}
+
+	/**
+	 * Accepts members all filters accept.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class AllFilter
+			implements MemberFilter {
+
+		/** The filters. */
+		private final List<MemberFilter> filters;
+		/** The hash code. */
+		private final int hash;
+
+		/**
+		 * Constructs the filter.
+		 * 
+		 * @param filters
+		 *            The filters.
+		 */
+		public AllFilter(final MemberFilter[] filters) {
+			this.filters = Collections.unmodifiableList(Arrays.asList(filters.clone()));
+			this.hash = this.filters.hashCode();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean accept(final String path, final MemberDescriptor<?> member, final RenderType renderType, final boolean key) {
+			boolean result = true;
+			for (int i = 0; result && (i < this.filters.size()); i++) {
+				result = this.filters.get(i).accept(path, member, renderType, key);
+			}
+			return result;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean equals(final Object obj) {
+			return (obj instanceof AllFilter) && this.filters.equals(((AllFilter) obj).filters);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+	}
+
+	/**
+	 * Accepts key properties.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class KeyFilter
+			implements MemberFilter {
+
+		/**
+		 * Default constructor.
+		 */
+		public KeyFilter() {
+			// Default constructor.
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean accept(final String path, final MemberDescriptor<?> member, final RenderType renderType, final boolean key) {
+			return key;
+		}
+	}
+
+	/**
+	 * Accepts members by path.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class NameFilter
+			implements MemberFilter {
+
+		/** The hash code. */
+		private final int hash;
+		/** The paths. */
+		private final Set<String> paths;
+
+		/**
+		 * Constructs the filter.
+		 * 
+		 * @param paths
+		 *            The paths.
+		 */
+		public NameFilter(final String[] paths) {
+			this.paths = new HashSet<String>(Arrays.asList(paths));
+			this.hash = this.paths.hashCode();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean accept(final String path, final MemberDescriptor<?> member, final RenderType renderType, final boolean key) {
+			boolean result = this.paths.contains(path);
+			for (final String selected : this.paths) {
+				if (!result) {
+					// An enclosing property, or a member of a selected property.
+					result = MemberFilters.encloses(path, selected) || MemberFilters.encloses(selected, path);
+				}
+			}
+			return result;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean equals(final Object obj) {
+			return (obj instanceof NameFilter) && this.paths.equals(((NameFilter) obj).paths);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+	}
+
+	/**
+	 * Accepts properties by render type.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class RenderTypeFilter
+			implements MemberFilter {
+
+		/** The hash code. */
+		private final int hash;
+		/** The render types. */
+		private final Set<RenderType> renderTypes;
+
+		/**
+		 * Constructs the filter.
+		 * 
+		 * @param renderTypes
+		 *            The render types.
+		 */
+		public RenderTypeFilter(final RenderType[] renderTypes) {
+			this.renderTypes = EnumSet.noneOf(RenderType.class);
+			this.renderTypes.addAll(Arrays.asList(renderTypes));
+			this.hash = this.renderTypes.hashCode();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean accept(final String path, final MemberDescriptor<?> member, final RenderType renderType, final boolean key) {
+			return !CheckUtil.isNull(renderType) && this.renderTypes.contains(renderType);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean equals(final Object obj) {
+			return (obj instanceof RenderTypeFilter) && this.renderTypes.equals(((RenderTypeFilter) obj).renderTypes);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+	}
+
+	/**
+	 * Accepts operations and visible properties.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class VisibleFilter
+			implements MemberFilter {
+
+		/**
+		 * Default constructor.
+		 */
+		public VisibleFilter() {
+			// Default constructor.
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean accept(final String path, final MemberDescriptor<?> member, final RenderType renderType, final boolean key) {
+			return !(member instanceof PropertyDescriptor) || !CheckUtil.isNull(renderType);
+		}
+	}
+}
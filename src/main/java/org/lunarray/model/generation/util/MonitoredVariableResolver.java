@@ -0,0 +1,91 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.Locale;
+
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+
+/**
+ * A variable resolver that reports its calls to a monitor.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <C>
+ *            The context type.
+ * @param <S>
+ *            The super type.
+ * @param <E>
+ *            The entity type.
+ */
+final class MonitoredVariableResolver<C extends Context, S, E extends S>
+		implements VariableResolver<C, S, E> {
+
+	/** The monitor. */
+	private final CompositionMonitor monitor;
+	/** The resolver. */
+	private final VariableResolver<C, S, E> resolver;
+
+	/**
+	 * Constructs the resolver.
+	 * 
+	 * @param resolver
+	 *            The monitored resolver.
+	 * @param monitor
+	 *            The monitor.
+	 */
+	MonitoredVariableResolver(final VariableResolver<C, S, E> resolver, final CompositionMonitor monitor) {
+		this.resolver = resolver;
+		this.monitor = monitor;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public EntityDescriptor<E> getDescriptor(final C context) {
+		this.monitor.resolverCall("getDescriptor");
+		return this.resolver.getDescriptor(context);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Locale getLocale(final C context) {
+		this.monitor.resolverCall("getLocale");
+		return this.resolver.getLocale(context);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Model<S> getModel(final C context) {
+		this.monitor.resolverCall("getModel");
+		return this.resolver.getModel(context);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Class<?> getQualifier(final C context) {
+		this.monitor.resolverCall("getQualifier");
+		return this.resolver.getQualifier(context);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean hasQualifier(final C context) {
+		this.monitor.resolverCall("hasQualifier");
+		return this.resolver.hasQualifier(context);
+	}
+}
@@ -0,0 +1,195 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.List;
+
+import org.lunarray.model.descriptor.model.operation.OperationDescriptor;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+import org.lunarray.model.descriptor.presentation.RenderType;
+
+/**
+ * A precompiled, immutable composition of an operation. Holds the resolved
+ * render calls from the begin to the end of the operation, with the render
+ * types of the parameters and the result. Operation plans are cached by
+ * operation and qualifier, and are shared by all plans of entities with the
+ * operation. An operation plan is also the handle to compose the parameters
+ * and result of a lazily composed operation; being shared, it doesn't hold
+ * the prefixes of an inline member the operation belongs to.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class OperationPlan {
+
+	/** The operation. */
+	private final OperationDescriptor<?> operation;
+	/** The render types of the parameters. */
+	private final RenderType[] parameterRenderTypes;
+	/** The render type of the result, if any. */
+	private final RenderType resultRenderType;
+	/** The steps. */
+	private final CompositionStep[] steps;
+
+	/**
+	 * Constructs the plan.
+	 * 
+	 * @param operation
+	 *            The operation.
+	 * @param steps
+	 *            The steps, from begin to end.
+	 */
+	OperationPlan(final OperationDescriptor<?> operation, final List<CompositionStep> steps) {
+		this.operation = operation;
+		this.steps = steps.toArray(new CompositionStep[steps.size()]);
+		// Begin, parameters, result and end.
+		RenderType result = null;
+		int parameters = this.steps.length - 2;
+		final CompositionStep last = this.steps[this.steps.length - 2];
+		if ((last.getType() == StepType.RESULT) || (last.getType() == StepType.COLLECTION_RESULT)) {
+			result = last.getRenderType();
+			parameters--;
+		}
+		this.resultRenderType = result;
+		this.parameterRenderTypes = new RenderType[parameters];
+		for (int i = 0; i < parameters; i++) {
+			this.parameterRenderTypes[i] = this.steps[i + 1].getRenderType();
+		}
+	}
+
+	/**
+	 * Gets the value for the operation field.
+	 * 
+	 * @return The value for the operation field.
+	 */
+	public OperationDescriptor<?> getOperation() {
+		return this.operation;
+	}
+
+	/**
+	 * Gets the amount of parameters.
+	 * 
+	 * @return The amount of parameters.
+	 */
+	public int getParameterCount() {
+		return this.parameterRenderTypes.length;
+	}
+
+	/**
+	 * Gets the render type of a parameter.
+	 * 
+	 * @param index
+	 *            The parameter index.
+	 * @return The render type.
+	 */
+	public RenderType getParameterRenderType(final int index) {
+		return this.parameterRenderTypes[index];
+	}
+
+	/**
+	 * Gets the value for the resultRenderType field.
+	 * 
+	 * @return The value for the resultRenderType field, null if the operation
+	 *         has no result.
+	 */
+	public RenderType getResultRenderType() {
+		return this.resultRenderType;
+	}
+
+	/**
+	 * Gets the value for the steps field.
+	 * 
+	 * @return The value for the steps field.
+	 */
+	CompositionStep[] getSteps() {
+		return this.steps;
+	}
+
+	/**
+	 * Replays the operation.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param factory
+	 *            The render factory.
+	 * @param <C>
+	 *            The context type.
+	 * @param <E>
+	 *            The entity type.
+	 */
+	public <C extends Context, E> void replay(final C context, final RenderFactory<C, E> factory) {
+		for (final CompositionStep step : this.steps) {
+			step.replay(context, factory);
+		}
+	}
+
+	/**
+	 * Replays the parameters and the result, without beginning or ending the
+	 * operation.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param factory
+	 *            The render factory.
+	 * @param <C>
+	 *            The context type.
+	 * @param <E>
+	 *            The entity type.
+	 */
+	public <C extends Context, E> void replayParameters(final C context, final RenderFactory<C, E> factory) {
+		for (int i = 1; i < (this.steps.length - 1); i++) {
+			this.steps[i].replay(context, factory);
+		}
+	}
+
+	/**
+	 * Replays the parameters and the result under prefixes, such as those
+	 * the operation was begun under when it is a member of an inline
+	 * property. The prefixes are pushed before and popped after the replay.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param factory
+	 *            The render factory.
+	 * @param prefixes
+	 *            The prefixes, outermost first.
+	 * @param <C>
+	 *            The context type.
+	 * @param <E>
+	 *            The entity type.
+	 * @see PrefixStackContext#getPrefixes()
+	 */
+	public <C extends Context, E> void replayParameters(final C context, final RenderFactory<C, E> factory,
+			final List<? extends PropertyDescriptor<?, ?>> prefixes) {
+		for (final PropertyDescriptor<?, ?> prefix : prefixes) {
+			context.pushPrefix(prefix);
+		}
+		this.replayParameters(context, factory);
+		for (int i = 0; i < prefixes.size(); i++) {
+			context.popPrefix();
+		}
+	}
+
+	/**
+	 * Gets the amount of steps.
+	 * 
+	 * @return The amount of steps.
+	 */
+	public int size() {
+		return this.steps.length;
+	}
+}
@@ -0,0 +1,109 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.model.operation.OperationDescriptor;
+
+/**
+ * A concurrent cache of operation plans, by operation and qualifier.
+ * Parameters and results are adapted once per operation and qualifier,
+ * however many entity plans render the operation.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+final class OperationPlanCache {
+
+	/** The plans, by operation, by qualifier. */
+	private final ConcurrentMap<OperationDescriptor<?>, ConcurrentMap<Object, OperationPlan>> plans;
+
+	/**
+	 * Default constructor.
+	 */
+	OperationPlanCache() {
+		this.plans = new ConcurrentHashMap<OperationDescriptor<?>, ConcurrentMap<Object, OperationPlan>>();
+	}
+
+	/**
+	 * Clears the cache.
+	 */
+	public void clear() {
+		this.plans.clear();
+	}
+
+	/**
+	 * Gets a plan.
+	 * 
+	 * @param operation
+	 *            The operation.
+	 * @param qualifier
+	 *            The qualifier, may be null.
+	 * @return The plan, or null if none was cached.
+	 */
+	public OperationPlan getPlan(final OperationDescriptor<?> operation, final Class<?> qualifier) {
+		OperationPlan result = null;
+		final ConcurrentMap<Object, OperationPlan> qualified = this.plans.get(operation);
+		if (!CheckUtil.isNull(qualified)) {
+			result = qualified.get(CompositionPlanCache.qualifierKey(qualifier));
+		}
+		return result;
+	}
+
+	/**
+	 * Caches a plan, unless one was cached concurrently.
+	 * 
+	 * @param operation
+	 *            The operation.
+	 * @param qualifier
+	 *            The qualifier, may be null.
+	 * @param plan
+	 *            The plan.
+	 * @return The cached plan.
+	 */
+	public OperationPlan putPlan(final OperationDescriptor<?> operation, final Class<?> qualifier, final OperationPlan plan) {
+		ConcurrentMap<Object, OperationPlan> qualified = this.plans.get(operation);
+		if (CheckUtil.isNull(qualified)) {
+			final ConcurrentMap<Object, OperationPlan> created = new ConcurrentHashMap<Object, OperationPlan>();
+			qualified = this.plans.putIfAbsent(operation, created);
+			if (CheckUtil.isNull(qualified)) {
+				qualified = created;
+			}
+		}
+		OperationPlan result = qualified.putIfAbsent(CompositionPlanCache.qualifierKey(qualifier), plan);
+		if (CheckUtil.isNull(result)) {
+			result = plan;
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the amount of cached plans.
+	 * 
+	 * @return The amount of cached plans.
+	 */
+	public int size() {
+		int size = 0;
+		for (final ConcurrentMap<Object, OperationPlan> qualified : this.plans.values()) {
+			size += qualified.size();
+		}
+		return size;
+	}
+}
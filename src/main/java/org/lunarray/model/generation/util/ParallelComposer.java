@@ -0,0 +1,372 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Composes independent entities in parallel. Every entity is composed in its
+ * own context, on a configurable executor, for example a fork/join pool or a
+ * thread per task executor. The resulting contexts are returned in entity
+ * order. A failing composition cancels the others. The plan and label caches
+ * of a whole model can be warmed in parallel as well, for example at
+ * startup.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <C>
+ *            The context type.
+ * @param <S>
+ *            The super type.
+ * @param <E>
+ *            The entity type.
+ */
+public final class ParallelComposer<C extends Context, S, E extends S> {
+
+	/** The logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(ParallelComposer.class);
+	/** The composer. */
+	private final Composer<C, S, E> composer;
+	/** The context factory. */
+	private final ContextFactory<C> contextFactory;
+	/** The executor. */
+	private final ExecutorService executor;
+
+	/**
+	 * Constructs the parallel composer.
+	 * 
+	 * @param composer
+	 *            The composer, shared by all tasks.
+	 * @param contextFactory
+	 *            The context factory, creates a context per entity. May be null
+	 *            if only independent contexts are composed.
+	 * @param executor
+	 *            The executor.
+	 */
+	public ParallelComposer(final Composer<C, S, E> composer, final ContextFactory<C> contextFactory, final ExecutorService executor) {
+		this.composer = composer;
+		this.contextFactory = contextFactory;
+		this.executor = executor;
+	}
+
+	/**
+	 * Composes entities in parallel. The model, locale and qualifier are
+	 * resolved once from the calling context.
+	 * 
+	 * @param context
+	 *            The calling context.
+	 * @param descriptors
+	 *            The (unqualified) entity descriptors.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @param listener
+	 *            The listener, called in the entity context, may be null.
+	 * @return The entity contexts, in entity order.
+	 */
+	public List<C> composeAll(final C context, final Collection<? extends EntityDescriptor<? extends E>> descriptors,
+			final boolean includeOperations, final CompositionListener<C, E> listener) {
+		final VariableResolver<C, S, E> resolver = this.composer.getResolver();
+		return this.composeAll(context, descriptors, resolver.getModel(context), includeOperations, listener);
+	}
+
+	/**
+	 * Composes independent contexts in parallel, each with its own resolved
+	 * entity. Variables are resolved in the task, so blocking resolvers only
+	 * block their own task. Suited to a thread per task executor.
+	 * 
+	 * @param contexts
+	 *            The contexts.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @return The contexts, in the given order.
+	 */
+	public List<C> composeContexts(final Collection<? extends C> contexts, final boolean includeOperations) {
+		ParallelComposer.LOGGER.debug("Started parallel composition of {} contexts, include operations: {}", contexts.size(),
+				includeOperations);
+		final List<Callable<C>> tasks = new ArrayList<Callable<C>>(contexts.size());
+		for (final C context : contexts) {
+			tasks.add(new Callable<C>() {
+				@Override
+				public C call() {
+					ParallelComposer.this.composer.compose(context, includeOperations);
+					return context;
+				}
+			});
+		}
+		return this.join(tasks);
+	}
+
+	/**
+	 * Composes all entities of the resolved model in parallel. Only sensible
+	 * for a composer whose entity type is the model super type.
+	 * 
+	 * @param context
+	 *            The calling context.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @param listener
+	 *            The listener, called in the entity context, may be null.
+	 * @return The entity contexts, in model order.
+	 */
+	@SuppressWarnings("unchecked")
+	// The composer is typed on the super type.
+	public List<C> composeModel(final C context, final boolean includeOperations, final CompositionListener<C, E> listener) {
+		final Model<S> model = this.composer.getResolver().getModel(context);
+		final Collection<?> entities = model.getEntities();
+		return this.composeAll(context, (Collection<? extends EntityDescriptor<? extends E>>) entities, model, includeOperations, listener);
+	}
+
+	/**
+	 * Gets the value for the composer field.
+	 * 
+	 * @return The value for the composer field.
+	 */
+	public Composer<C, S, E> getComposer() {
+		return this.composer;
+	}
+
+	/**
+	 * Warms the plan and label caches for the resolved model, before the
+	 * first composition. Every entity is warmed unqualified and for every
+	 * qualifier named in a qualifier presentation hint of an entity type,
+	 * with and without operations. The locale is resolved once from the
+	 * calling context. A failing entity doesn't stop the warm-up, it is
+	 * reported. The report counts the plans and labels cached by this
+	 * warm-up, with the footprint of these plans, and the unresolved inline
+	 * descriptors of every warmed plan, cached before or not.
+	 * 
+	 * @param context
+	 *            The calling context.
+	 * @return The warm-up report.
+	 */
+	@SuppressWarnings("unchecked")
+	// The composer is typed on the super type.
+	public WarmUpReport warmUp(final C context) {
+		final long start = System.nanoTime();
+		final VariableResolver<C, S, E> resolver = this.composer.getResolver();
+		final Model<S> model = resolver.getModel(context);
+		final Locale locale = resolver.getLocale(context);
+		final Collection<?> entities = model.getEntities();
+		final Set<Class<?>> qualifiers = QualifiedDescriptorCache.qualifiers(model);
+		ParallelComposer.LOGGER.debug("Started warm-up of {} entities and {} qualifiers.", entities.size(), qualifiers.size());
+		final List<Callable<Composer.WarmUp>> tasks = new ArrayList<Callable<Composer.WarmUp>>();
+		for (final EntityDescriptor<? extends E> descriptor : (Collection<? extends EntityDescriptor<? extends E>>) entities) {
+			for (final boolean includeOperations : new boolean[] { false, true }) {
+				tasks.add(this.createWarmUpTask(descriptor, null, model, locale, includeOperations));
+				for (final Class<?> qualifier : qualifiers) {
+					tasks.add(this.createWarmUpTask(descriptor, qualifier, model, locale, includeOperations));
+				}
+			}
+		}
+		final Set<String> failures = new LinkedHashSet<String>();
+		int plans = 0;
+		int labels = 0;
+		long footprint = 0;
+		for (final Composer.WarmUp warmUp : this.join(tasks)) {
+			failures.addAll(warmUp.getUnresolved());
+			if (warmUp.isPlan()) {
+				plans++;
+				footprint += warmUp.getPlan().getFootprint();
+			}
+			if (warmUp.isLabel()) {
+				labels++;
+			}
+		}
+		final WarmUpReport report = new WarmUpReport(entities.size(), qualifiers.size(), plans, labels, failures, footprint,
+				System.nanoTime() - start);
+		ParallelComposer.LOGGER.info("{}", report);
+		return report;
+	}
+
+	/**
+	 * Composes entities in parallel.
+	 * 
+	 * @param context
+	 *            The calling context.
+	 * @param descriptors
+	 *            The (unqualified) entity descriptors.
+	 * @param model
+	 *            The model.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @param listener
+	 *            The listener, may be null.
+	 * @return The entity contexts, in entity order.
+	 */
+	private List<C> composeAll(final C context, final Collection<? extends EntityDescriptor<? extends E>> descriptors,
+			final Model<S> model, final boolean includeOperations, final CompositionListener<C, E> listener) {
+		ParallelComposer.LOGGER.debug("Started parallel composition of {} entities, include operations: {}", descriptors.size(),
+				includeOperations);
+		final Class<?> qualifier = this.composer.getQualifier(context);
+		final Locale locale = this.composer.getResolver().getLocale(context);
+		final List<Callable<C>> tasks = new ArrayList<Callable<C>>(descriptors.size());
+		for (final EntityDescriptor<? extends E> descriptor : descriptors) {
+			tasks.add(this.createTask(context, descriptor, qualifier, model, locale, includeOperations, listener));
+		}
+		return this.join(tasks);
+	}
+
+	/**
+	 * Creates a composition task.
+	 * 
+	 * @param parent
+	 *            The calling context.
+	 * @param descriptor
+	 *            The (unqualified) entity descriptor.
+	 * @param qualifier
+	 *            The qualifier, may be null.
+	 * @param model
+	 *            The model.
+	 * @param locale
+	 *            The locale, may be null.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @param listener
+	 *            The listener, may be null.
+	 * @return The task.
+	 * @param <F>
+	 *            The entity type.
+	 */
+	private <F extends E> Callable<C> createTask(final C parent, final EntityDescriptor<F> descriptor, final Class<?> qualifier,
+			final Model<S> model, final Locale locale, final boolean includeOperations, final CompositionListener<C, E> listener) {
+		return new Callable<C>() {
+			@Override
+			public C call() {
+				final C context = ParallelComposer.this.contextFactory.createContext(parent, descriptor);
+				ParallelComposer.this.composer.composeEntity(context, descriptor, qualifier, model, locale, includeOperations, listener);
+				return context;
+			}
+		};
+	}
+
+	/**
+	 * Creates a warm-up task. A failure is reported as the result of the
+	 * task, rather than thrown.
+	 * 
+	 * @param descriptor
+	 *            The (unqualified) entity descriptor.
+	 * @param qualifier
+	 *            The qualifier, may be null.
+	 * @param model
+	 *            The model.
+	 * @param locale
+	 *            The locale, may be null.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @return The task, resulting in what was warmed and the failures.
+	 * @param <F>
+	 *            The entity type.
+	 */
+	private <F extends E> Callable<Composer.WarmUp> createWarmUpTask(final EntityDescriptor<F> descriptor, final Class<?> qualifier,
+			final Model<S> model, final Locale locale, final boolean includeOperations) {
+		return new Callable<Composer.WarmUp>() {
+			@Override
+			public Composer.WarmUp call() {
+				Composer.WarmUp warmUp;
+				try {
+					warmUp = ParallelComposer.this.composer.warmUp(descriptor, qualifier, model, locale, includeOperations);
+				} catch (final RuntimeException e) {
+					ParallelComposer.LOGGER.warn("Could not warm up descriptor '{}' for qualifier '{}'.", descriptor, qualifier, e);
+					final List<String> failures = new ArrayList<String>(1);
+					failures.add(String.format("Could not warm up '%s' for qualifier '%s', include operations: %s. %s", descriptor.getName(),
+							qualifier, includeOperations, e));
+					warmUp = new Composer.WarmUp(null, false, failures);
+				}
+				return warmUp;
+			}
+		};
+	}
+
+	/**
+	 * Runs tasks and joins them. The first failure cancels the remaining
+	 * tasks and is rethrown, as is an interruption of the joining thread.
+	 * 
+	 * @param tasks
+	 *            The tasks.
+	 * @return The results, in task order.
+	 * @param <T>
+	 *            The result type.
+	 */
+	private <T> List<T> join(final List<Callable<T>> tasks) {
+		final CompletionService<T> completion = new ExecutorCompletionService<T>(this.executor);
+		final List<Future<T>> pending = new ArrayList<Future<T>>(tasks.size());
+		final List<T> results = new ArrayList<T>(tasks.size());
+		boolean done = false;
+		try {
+			for (final Callable<T> task : tasks) {
+				pending.add(completion.submit(task));
+			}
+			// Await in completion order, to fail on the first failure.
+			for (int i = 0; i < pending.size(); i++) {
+				completion.take().get();
+			}
+			for (final Future<T> result : pending) {
+				results.add(result.get());
+			}
+			done = true;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted during parallel composition.", e);
+		} catch (final ExecutionException e) {
+			throw ParallelComposer.unwrap(e);
+		} finally {
+			if (!done) {
+				for (final Future<T> result : pending) {
+					result.cancel(true);
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Unwraps a task failure.
+	 * 
+	 * @param exception
+	 *            The execution exception.
+	 * @return The runtime exception to throw.
+	 */
+	static RuntimeException unwrap(final ExecutionException exception) {
+		final Throwable cause = exception.getCause();
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		RuntimeException result;
+		if (cause instanceof RuntimeException) {
+			result = (RuntimeException) cause;
+		} else {
+			result = new IllegalStateException("Composition failed.", cause);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,74 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.Collection;
+
+import org.lunarray.model.descriptor.model.property.CollectionPropertyDescriptor;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+import org.lunarray.model.descriptor.presentation.RenderType;
+
+/**
+ * A render factory that receives the precomputed path of every rendered
+ * property. Properties are rendered with the path overloads only, all other
+ * calls are made as for a regular render factory.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <C>
+ *            The context type.
+ * @param <E>
+ *            The entity type.
+ */
+public interface PathRenderFactory<C extends Context, E>
+		extends RenderFactory<C, E> {
+
+	/**
+	 * Render a collection property.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param descriptor
+	 *            The descriptor.
+	 * @param renderType
+	 *            The render type.
+	 * @param path
+	 *            The property path.
+	 * @param <D>
+	 *            The collection type.
+	 * @param <P>
+	 *            The property type.
+	 */
+	<D, P extends Collection<D>> void renderCollectionProperty(C context, CollectionPropertyDescriptor<D, P, E> descriptor,
+			RenderType renderType, PropertyPath path);
+
+	/**
+	 * Render property.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param descriptor
+	 *            The descriptor.
+	 * @param renderType
+	 *            The render type.
+	 * @param path
+	 *            The property path.
+	 * @param <P>
+	 *            The property type.
+	 */
+	<P> void renderProperty(C context, PropertyDescriptor<P, E> descriptor, RenderType renderType, PropertyPath path);
+}
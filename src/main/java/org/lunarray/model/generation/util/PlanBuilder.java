@@ -0,0 +1,763 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.model.member.MemberDescriptor;
+import org.lunarray.model.descriptor.model.operation.OperationDescriptor;
+import org.lunarray.model.descriptor.model.operation.parameters.CollectionParameterDescriptor;
+import org.lunarray.model.descriptor.model.operation.parameters.ParameterDescriptor;
+import org.lunarray.model.descriptor.model.operation.result.CollectionResultDescriptor;
+import org.lunarray.model.descriptor.model.operation.result.ResultDescriptor;
+import org.lunarray.model.descriptor.model.property.CollectionPropertyDescriptor;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+import org.lunarray.model.descriptor.presentation.PresentationEntityDescriptor;
+import org.lunarray.model.descriptor.presentation.PresentationParameterDescriptor;
+import org.lunarray.model.descriptor.presentation.PresentationPropertyDescriptor;
+import org.lunarray.model.descriptor.presentation.PresentationResultDescriptor;
+import org.lunarray.model.descriptor.presentation.RelationPresentationDescriptor;
+import org.lunarray.model.descriptor.presentation.RenderType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves a composition plan by walking an entity descriptor. The render
+ * decisions for the members of an entity are computed once and cached in a
+ * decision table, shared by all plans. Inline expansion stops at cycles and
+ * at a maximum depth, and complete inline expansions are reused within the
+ * plan. An optional member filter is tested for the members at every level,
+ * in which case expansions aren't reused since the filter may depend on the
+ * path. Without a cached decision table the filter is tested while deciding,
+ * so rejected members aren't adapted. Not thread safe, a builder should be
+ * used for a single plan.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <S>
+ *            The super type.
+ */
+final class PlanBuilder<S> {
+
+	/** The logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(PlanBuilder.class);
+	/** The decision tables. */
+	private final DecisionTableCache decisionTables;
+	/** The deepest path size reached by the current expansion. */
+	private int deepest;
+	/** The member filter, may be null. */
+	private final MemberFilter filter;
+	/** The descriptors inlined by the current expansion. */
+	private Set<EntityDescriptor<?>> inlined;
+	/** The maximum inline depth. */
+	private final int maximumInlineDepth;
+	/** The model. */
+	private final Model<S> model;
+	/** The operation plans. */
+	private final OperationPlanCache operationPlans;
+	/** The inlined descriptors along the current prefix path. */
+	private final List<EntityDescriptor<?>> path;
+	/** The dotted path of the current inline expansion, null at the root. */
+	private String prefix;
+	/** The qualified descriptors. */
+	private final QualifiedDescriptorCache qualifiedDescriptors;
+	/** The qualifier. */
+	private final Class<?> qualifier;
+	/** The resolved steps. */
+	private final List<CompositionStep> steps;
+	/** The complete inline expansions, by qualified descriptor. */
+	private final Map<EntityDescriptor<?>, SubPlan> subPlans;
+	/** Whether the current expansion was cut short. */
+	private boolean truncated;
+	/** The inline descriptors that could not be resolved. */
+	private final List<String> unresolved;
+
+	/**
+	 * Constructs the builder.
+	 * 
+	 * @param model
+	 *            The model, used to resolve inline descriptors.
+	 * @param qualifier
+	 *            The qualifier, may be null.
+	 * @param planCache
+	 *            The plan cache, for the maximum inline depth, qualified
+	 *            descriptors, decision tables and operation plans.
+	 */
+	PlanBuilder(final Model<S> model, final Class<?> qualifier, final CompositionPlanCache planCache) {
+		this(model, qualifier, null, planCache);
+	}
+
+	/**
+	 * Constructs the builder.
+	 * 
+	 * @param model
+	 *            The model, used to resolve inline descriptors.
+	 * @param qualifier
+	 *            The qualifier, may be null.
+	 * @param filter
+	 *            The member filter, may be null.
+	 * @param planCache
+	 *            The plan cache, for the maximum inline depth, qualified
+	 *            descriptors, decision tables and operation plans.
+	 */
+	PlanBuilder(final Model<S> model, final Class<?> qualifier, final MemberFilter filter, final CompositionPlanCache planCache) {
+		this.model = model;
+		this.qualifier = qualifier;
+		this.filter = filter;
+		this.qualifiedDescriptors = planCache.getQualifiedDescriptors();
+		this.decisionTables = planCache.getDecisionTables();
+		this.operationPlans = planCache.getOperationPlans();
+		this.maximumInlineDepth = planCache.getMaximumInlineDepth();
+		this.steps = new ArrayList<CompositionStep>();
+		this.path = new ArrayList<EntityDescriptor<?>>();
+		this.subPlans = new HashMap<EntityDescriptor<?>, SubPlan>();
+		this.inlined = new HashSet<EntityDescriptor<?>>();
+		this.unresolved = new ArrayList<String>();
+	}
+
+	/**
+	 * Builds the plan.
+	 * 
+	 * @param descriptor
+	 *            The (unqualified) entity descriptor.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @return The plan.
+	 * @param <E>
+	 *            The entity type.
+	 */
+	public <E extends S> CompositionPlan<E> build(final EntityDescriptor<E> descriptor, final boolean includeOperations) {
+		final EntityDescriptor<E> entityDescriptor = this.qualify(descriptor);
+		PlanBuilder.LOGGER.debug("Resolved entity descriptor: {}", entityDescriptor);
+		this.path.add(entityDescriptor);
+		this.inlined.clear();
+		this.deepest = this.path.size();
+		this.resolveMembers(entityDescriptor, includeOperations);
+		this.path.clear();
+		return new CompositionPlan<E>(this.steps, this.operationPlans, this.qualifier, this.unresolved);
+	}
+
+	/**
+	 * Tests a member decision against the filter.
+	 * 
+	 * @param decision
+	 *            The decision.
+	 * @return True if and only if the member is composed.
+	 */
+	private boolean accept(final MemberDecision decision) {
+		boolean accept = true;
+		if (!CheckUtil.isNull(this.filter)) {
+			if (decision.getKind() == MemberDecision.Kind.OPERATION) {
+				final OperationDescriptor<?> operation = decision.getSteps()[0].getOperation();
+				accept = this.filter.accept(this.memberPath(operation.getName()), operation, null, false);
+			} else {
+				final PropertyDescriptor<?, ?> property = decision.getProperty();
+				RenderType renderType = null;
+				if (decision.isVisible()) {
+					renderType = decision.getRenderStep().getRenderType();
+				}
+				accept = this.filter.accept(this.memberPath(property.getName()), property, renderType, this.isKey(property));
+			}
+		}
+		return accept;
+	}
+
+	/**
+	 * Decides how to render the members of an entity, and the filter accepts.
+	 * 
+	 * @param entityDescriptor
+	 *            The qualified entity descriptor.
+	 * @param includeOperations
+	 *            Include the operations.
+	 * @return The decision table.
+	 * @param <E>
+	 *            The entity type.
+	 */
+	@SuppressWarnings("unchecked")
+	// Can't be more sure.
+	private <E> MemberDecision[] decide(final EntityDescriptor<E> entityDescriptor, final boolean includeOperations) {
+		// Get presentation descriptor.
+		final PresentationEntityDescriptor<E> presentationDescriptor = entityDescriptor.adapt(PresentationEntityDescriptor.class);
+		// Get strategies.
+		Collection<? extends MemberDescriptor<E>> memberDescriptors;
+		if (CheckUtil.isNull(presentationDescriptor)) {
+			PlanBuilder.LOGGER.debug("Processing non-presentation descriptor.");
+			if (includeOperations) {
+				memberDescriptors = entityDescriptor.getMembers();
+			} else {
+				memberDescriptors = entityDescriptor.getProperties();
+			}
+		} else {
+			PlanBuilder.LOGGER.debug("Processing presentation descriptor.");
+			if (includeOperations) {
+				memberDescriptors = presentationDescriptor.getOrderedMembers();
+			} else {
+				memberDescriptors = presentationDescriptor.getOrderedProperties();
+			}
+		}
+		PlanBuilder.LOGGER.debug("Deciding {} members of descriptor: {}", memberDescriptors.size(), entityDescriptor);
+		final List<MemberDecision> decisions = new ArrayList<MemberDecision>(memberDescriptors.size());
+		for (final MemberDescriptor<E> member : memberDescriptors) {
+			MemberDecision decision = null;
+			if (member instanceof PropertyDescriptor) {
+				decision = this.decideProperty((PropertyDescriptor<?, E>) member);
+			} else if (member instanceof OperationDescriptor) {
+				decision = this.decideOperation((OperationDescriptor<E>) member);
+			}
+			if (!CheckUtil.isNull(decision)) {
+				decisions.add(decision);
+			}
+		}
+		return decisions.toArray(new MemberDecision[decisions.size()]);
+	}
+
+	/**
+	 * Decides how to render an operation, from the operation plans if
+	 * possible.
+	 * 
+	 * @param operationDescriptor
+	 *            The operation.
+	 * @return The decision, or null if the filter rejects the operation.
+	 */
+	private MemberDecision decideOperation(final OperationDescriptor<?> operationDescriptor) {
+		MemberDecision decision = null;
+		if (CheckUtil.isNull(this.filter)
+				|| this.filter.accept(this.memberPath(operationDescriptor.getName()), operationDescriptor, null, false)) {
+			OperationPlan plan = this.operationPlans.getPlan(operationDescriptor, this.qualifier);
+			if (CheckUtil.isNull(plan)) {
+				plan = this.operationPlans.putPlan(operationDescriptor, this.qualifier, this.resolveOperation(operationDescriptor));
+			}
+			decision = MemberDecision.operation(plan);
+		}
+		return decision;
+	}
+
+	/**
+	 * Decides how to render a property.
+	 * 
+	 * @param property
+	 *            The property.
+	 * @return The decision, or null if the filter rejects the property.
+	 * @param <P>
+	 *            The property type.
+	 * @param <G>
+	 *            The entity type.
+	 */
+	@SuppressWarnings("unchecked")
+	// We are fairly sure.
+	private <P, G> MemberDecision decideProperty(final PropertyDescriptor<P, G> property) {
+		final PresentationPropertyDescriptor<P, G> presentationProperty = property.adapt(PresentationPropertyDescriptor.class);
+		boolean visible;
+		if (CheckUtil.isNull(presentationProperty)) {
+			visible = true;
+		} else {
+			visible = presentationProperty.isVisible();
+		}
+		PlanBuilder.LOGGER.debug("Property is visible {}: {}", visible, property);
+		MemberDecision decision = null;
+		if (CheckUtil.isNull(this.filter)
+				|| this.filter.accept(this.memberPath(property.getName()), property, this.renderType(property, presentationProperty, visible),
+						this.isKey(property))) {
+			CompositionStep renderStep = null;
+			if (visible) {
+				if (property.isImmutable()) {
+					renderStep = CompositionStep.property(property, RenderType.UNDEFINED);
+				} else {
+					renderStep = this.processPresentationDescriptor(property, presentationProperty);
+				}
+			}
+			final RelationPresentationDescriptor relationPresentation = property.adapt(RelationPresentationDescriptor.class);
+			boolean inline = false;
+			String relatedName = null;
+			if (!CheckUtil.isNull(relationPresentation)) {
+				inline = relationPresentation.isInLineIndication();
+				relatedName = relationPresentation.getRelatedName();
+			}
+			decision = MemberDecision.property(property, renderStep, inline, relatedName);
+		}
+		return decision;
+	}
+
+	/**
+	 * Expands an inline descriptor. The expansion is remembered if it
+	 * wasn't cut short, with the descriptors it inlines and its depth, so it
+	 * can be reused where it would expand the same way.
+	 * 
+	 * @param innerDescriptor
+	 *            The qualified inner descriptor.
+	 */
+	private void expandInline(final EntityDescriptor<?> innerDescriptor) {
+		final boolean outerTruncated = this.truncated;
+		final Set<EntityDescriptor<?>> outerInlined = this.inlined;
+		final int outerDeepest = this.deepest;
+		final int start = this.steps.size();
+		this.truncated = false;
+		this.inlined = new HashSet<EntityDescriptor<?>>();
+		this.inlined.add(innerDescriptor);
+		this.path.add(innerDescriptor);
+		final int level = this.path.size();
+		this.deepest = level;
+		// Render members.
+		this.resolveMembers(innerDescriptor, true);
+		this.path.remove(this.path.size() - 1);
+		if (!this.truncated) {
+			final List<CompositionStep> subPlan = this.steps.subList(start, this.steps.size());
+			this.subPlans.put(innerDescriptor, new SubPlan(subPlan.toArray(new CompositionStep[subPlan.size()]), this.deepest - level,
+					this.inlined));
+		}
+		this.truncated |= outerTruncated;
+		outerInlined.addAll(this.inlined);
+		this.inlined = outerInlined;
+		this.deepest = Math.max(this.deepest, outerDeepest);
+	}
+
+	/**
+	 * Tests whether a property is the key property of the entity along the
+	 * path.
+	 * 
+	 * @param property
+	 *            The property.
+	 * @return True if and only if the property is the key property.
+	 */
+	private boolean isKey(final PropertyDescriptor<?, ?> property) {
+		return property.equals(this.path.get(this.path.size() - 1).getKeyProperty());
+	}
+
+	/**
+	 * Tests whether a complete expansion can be reused at the current path.
+	 * It can if it stays within the maximum depth and inlines no descriptor
+	 * along the path, so expanding it again would give the same steps.
+	 * 
+	 * @param subPlan
+	 *            The expansion.
+	 * @return True if and only if the expansion can be reused.
+	 */
+	private boolean isReusable(final SubPlan subPlan) {
+		boolean reusable = (this.path.size() + subPlan.depth) <= this.maximumInlineDepth;
+		for (final EntityDescriptor<?> descriptor : this.path) {
+			reusable &= !subPlan.descriptors.contains(descriptor);
+		}
+		return reusable;
+	}
+
+	/**
+	 * Gets the dotted path of a member of the current expansion.
+	 * 
+	 * @param name
+	 *            The member name.
+	 * @return The path.
+	 */
+	private String memberPath(final String name) {
+		String memberPath = name;
+		if (!CheckUtil.isNull(this.prefix)) {
+			memberPath = this.prefix + '.' + name;
+		}
+		return memberPath;
+	}
+
+	/**
+	 * Process an inline property. Inlines that would recurse into a
+	 * descriptor along the path, or exceed the maximum depth, are skipped.
+	 * 
+	 * @param property
+	 *            The property.
+	 * @param innerDescriptorArgument
+	 *            The descriptor.
+	 * @param <F>
+	 *            The entity type.
+	 */
+	private <F> void processInline(final PropertyDescriptor<?, ?> property, final EntityDescriptor<F> innerDescriptorArgument) {
+		PlanBuilder.LOGGER.debug("Processing inline descriptor '{}' for property: {}", innerDescriptorArgument, property);
+		// Get qualifier descriptor.
+		final EntityDescriptor<F> innerDescriptor = this.qualify(innerDescriptorArgument);
+		if (this.path.contains(innerDescriptor)) {
+			PlanBuilder.LOGGER.warn("Not inlining '{}' for property '{}', it is already inlined along the path.", innerDescriptor, property);
+			this.truncated = true;
+		} else if (this.path.size() > this.maximumInlineDepth) {
+			PlanBuilder.LOGGER.warn("Not inlining '{}' for property '{}', the maximum depth {} is reached.", innerDescriptor, property,
+					this.maximumInlineDepth);
+			this.truncated = true;
+		} else {
+			// Push variable.
+			this.steps.add(CompositionStep.pushPrefix(property));
+			final SubPlan subPlan = this.subPlans.get(innerDescriptor);
+			if (!CheckUtil.isNull(this.filter)) {
+				final String outerPrefix = this.prefix;
+				this.prefix = this.memberPath(property.getName());
+				this.expandInline(innerDescriptor);
+				this.prefix = outerPrefix;
+			} else if (CheckUtil.isNull(subPlan) || !this.isReusable(subPlan)) {
+				this.expandInline(innerDescriptor);
+			} else {
+				PlanBuilder.LOGGER.debug("Reusing expansion of inner descriptor: {}", innerDescriptor);
+				for (final CompositionStep step : subPlan.steps) {
+					this.steps.add(step);
+				}
+				this.inlined.addAll(subPlan.descriptors);
+				this.deepest = Math.max(this.deepest, this.path.size() + 1 + subPlan.depth);
+			}
+			// Pop variable.
+			this.steps.add(CompositionStep.popPrefix(property));
+		}
+	}
+
+	/**
+	 * Process presentation descriptor.
+	 * 
+	 * @param parameter
+	 *            The parameter.
+	 * @param presentationParameter
+	 *            The presentation parameter.
+	 * @param operation
+	 *            The operation.
+	 * @return The step.
+	 * @param <P>
+	 *            The parameter type.
+	 */
+	private <P> CompositionStep processPresentationDescriptor(final ParameterDescriptor<P> parameter,
+			final PresentationParameterDescriptor<P> presentationParameter, final OperationDescriptor<?> operation) {
+		CompositionStep step;
+		final CollectionParameterDescriptor<?, ?> descriptor = parameter.adapt(CollectionParameterDescriptor.class);
+		if (CheckUtil.isNull(presentationParameter)) {
+			step = this.processPresentationParameter(parameter, operation, descriptor);
+		} else {
+			if (CheckUtil.isNull(descriptor)) {
+				step = CompositionStep.parameter(operation, presentationParameter, presentationParameter.getRenderType());
+			} else {
+				step = CompositionStep.collectionParameter(operation, descriptor, presentationParameter.getRenderType());
+			}
+		}
+		return step;
+	}
+
+	/**
+	 * Process presentation descriptor.
+	 * 
+	 * @param property
+	 *            The property.
+	 * @param presentationProperty
+	 *            The descriptor.
+	 * @return The step.
+	 * @param <P>
+	 *            The property type.
+	 * @param <F>
+	 *            The entity type.
+	 */
+	private <P, F> CompositionStep processPresentationDescriptor(final PropertyDescriptor<P, F> property,
+			final PresentationPropertyDescriptor<P, F> presentationProperty) {
+		CompositionStep step;
+		final CollectionPropertyDescriptor<?, ?, ?> descriptor = property.adapt(CollectionPropertyDescriptor.class);
+		if (CheckUtil.isNull(presentationProperty)) {
+			step = this.processPresentationProperty(property, descriptor);
+		} else {
+			if (CheckUtil.isNull(descriptor)) {
+				step = CompositionStep.property(presentationProperty, presentationProperty.getRenderType());
+			} else {
+				step = CompositionStep.collectionProperty(descriptor, presentationProperty.getRenderType());
+			}
+		}
+		return step;
+	}
+
+	/**
+	 * Process the presentation descriptor.
+	 * 
+	 * @param parameter
+	 *            The result type.
+	 * @param presentationParameter
+	 *            The presentation result type.
+	 * @param operation
+	 *            The operation.
+	 * @return The step.
+	 * @param <R>
+	 *            The result type.
+	 */
+	private <R> CompositionStep processPresentationDescriptor(final ResultDescriptor<R> parameter,
+			final PresentationResultDescriptor<R> presentationParameter, final OperationDescriptor<?> operation) {
+		CompositionStep step;
+		final CollectionResultDescriptor<?, ?> descriptor = parameter.adapt(CollectionResultDescriptor.class);
+		if (CheckUtil.isNull(presentationParameter)) {
+			step = this.processPresentationResult(parameter, operation, descriptor);
+		} else {
+			if (CheckUtil.isNull(descriptor)) {
+				step = CompositionStep.result(operation, presentationParameter, presentationParameter.getRenderType());
+			} else {
+				step = CompositionStep.collectionResult(operation, descriptor, presentationParameter.getRenderType());
+			}
+		}
+		return step;
+	}
+
+	/**
+	 * Process presentation descriptor.
+	 * 
+	 * @param parameter
+	 *            The parameter.
+	 * @param operation
+	 *            The operation.
+	 * @param descriptor
+	 *            The collection descriptor.
+	 * @return The step.
+	 */
+	private CompositionStep processPresentationParameter(final ParameterDescriptor<?> parameter, final OperationDescriptor<?> operation,
+			final CollectionParameterDescriptor<?, ?> descriptor) {
+		CompositionStep step;
+		if (parameter.isRelation()) {
+			if (CheckUtil.isNull(descriptor)) {
+				step = CompositionStep.parameter(operation, parameter, RenderType.PICKLIST);
+			} else {
+				step = CompositionStep.collectionParameter(operation, descriptor, RenderType.DROPDOWN);
+			}
+		} else {
+			step = CompositionStep.parameter(operation, parameter, RenderType.TEXT);
+		}
+		return step;
+	}
+
+	/**
+	 * Process presentation property.
+	 * 
+	 * @param property
+	 *            The property.
+	 * @param descriptor
+	 *            The descriptor.
+	 * @return The step.
+	 */
+	private CompositionStep processPresentationProperty(final PropertyDescriptor<?, ?> property, final CollectionPropertyDescriptor<?, ?, ?> descriptor) {
+		CompositionStep step;
+		if (property.isRelation()) {
+			if (CheckUtil.isNull(descriptor)) {
+				step = CompositionStep.property(property, RenderType.PICKLIST);
+			} else {
+				step = CompositionStep.collectionProperty(descriptor, RenderType.DROPDOWN);
+			}
+		} else {
+			step = CompositionStep.property(property, RenderType.TEXT);
+		}
+		return step;
+	}
+
+	/**
+	 * Process a presentation result type.
+	 * 
+	 * @param parameter
+	 *            The result type.
+	 * @param operation
+	 *            The operation.
+	 * @param descriptor
+	 *            The descriptor.
+	 * @return The step.
+	 */
+	private CompositionStep processPresentationResult(final ResultDescriptor<?> parameter, final OperationDescriptor<?> operation,
+			final CollectionResultDescriptor<?, ?> descriptor) {
+		CompositionStep step;
+		if (parameter.isRelation()) {
+			if (CheckUtil.isNull(descriptor)) {
+				step = CompositionStep.result(operation, parameter, RenderType.PICKLIST);
+			} else {
+				step = CompositionStep.collectionResult(operation, descriptor, RenderType.DROPDOWN);
+			}
+		} else {
+			step = CompositionStep.result(operation, parameter, RenderType.TEXT);
+		}
+		return step;
+	}
+
+	/**
+	 * Resolves the qualifier descriptor, if applicable.
+	 * 
+	 * @param descriptor
+	 *            The descriptor.
+	 * @return The qualified descriptor, or the descriptor itself.
+	 * @param <F>
+	 *            The entity type.
+	 */
+	private <F> EntityDescriptor<F> qualify(final EntityDescriptor<F> descriptor) {
+		return this.qualifiedDescriptors.qualify(descriptor, this.qualifier);
+	}
+
+	/**
+	 * Renders a property.
+	 * 
+	 * @param decision
+	 *            The property decision.
+	 * @param <F>
+	 *            The property type.
+	 */
+	@SuppressWarnings("unchecked")
+	// We are fairly sure.
+	private <F extends S> void renderProperty(final MemberDecision decision) {
+		final PropertyDescriptor<F, ?> property = (PropertyDescriptor<F, ?>) decision.getProperty();
+		// Push variable.
+		this.steps.add(CompositionStep.pushPrefix(property));
+		if (decision.isVisible()) {
+			this.steps.add(decision.getRenderStep());
+		}
+		if (decision.isInline()) {
+			final EntityDescriptor<F> innerDescriptor = this.model.getEntity(property.getPropertyType());
+			if (CheckUtil.isNull(innerDescriptor)) {
+				PlanBuilder.LOGGER.warn("Could not process inner descriptor '{}'.", decision.getRelatedName());
+				this.unresolved.add(String.format("Could not process inner descriptor '%s' for property '%s' of '%s'.",
+						decision.getRelatedName(), property.getName(), this.path.get(this.path.size() - 1).getName()));
+			} else {
+				this.processInline(property, innerDescriptor);
+			}
+		}
+		// Pop variable.
+		this.steps.add(CompositionStep.popPrefix(property));
+	}
+
+	/**
+	 * Gets the render type to test a property against the filter with,
+	 * without adapting more than the render type depends on.
+	 * 
+	 * @param property
+	 *            The property.
+	 * @param presentationProperty
+	 *            The presentation property, may be null.
+	 * @param visible
+	 *            Whether the property is visible.
+	 * @return The render type, null if the property isn't visible.
+	 */
+	private RenderType renderType(final PropertyDescriptor<?, ?> property, final PresentationPropertyDescriptor<?, ?> presentationProperty,
+			final boolean visible) {
+		RenderType renderType = null;
+		if (visible) {
+			if (property.isImmutable()) {
+				renderType = RenderType.UNDEFINED;
+			} else if (CheckUtil.isNull(presentationProperty)) {
+				renderType = this.processPresentationProperty(property, property.adapt(CollectionPropertyDescriptor.class)).getRenderType();
+			} else {
+				renderType = presentationProperty.getRenderType();
+			}
+		}
+		return renderType;
+	}
+
+	/**
+	 * Resolve the members of the entity along the path, from its cached
+	 * decision table if possible. Without one, a filtered plan decides the
+	 * accepted members only, and doesn't cache the partial table.
+	 * 
+	 * @param entityDescriptor
+	 *            The qualified entity descriptor.
+	 * @param includeOperations
+	 *            Include the operations.
+	 */
+	private void resolveMembers(final EntityDescriptor<?> entityDescriptor, final boolean includeOperations) {
+		MemberDecision[] decisions = this.decisionTables.getTable(entityDescriptor, includeOperations);
+		boolean filtered = false;
+		if (CheckUtil.isNull(decisions)) {
+			decisions = this.decide(entityDescriptor, includeOperations);
+			filtered = !CheckUtil.isNull(this.filter);
+			if (!filtered) {
+				decisions = this.decisionTables.putTable(entityDescriptor, includeOperations, decisions);
+			}
+		}
+		PlanBuilder.LOGGER.debug("Resolved {} members for descriptor: {}", decisions.length, entityDescriptor);
+		this.resolveMembers(decisions, filtered);
+	}
+
+	/**
+	 * Resolve the members of a decision table.
+	 * 
+	 * @param decisions
+	 *            The decision table.
+	 * @param filtered
+	 *            Whether the filter was already tested while deciding.
+	 */
+	private void resolveMembers(final MemberDecision[] decisions, final boolean filtered) {
+		for (final MemberDecision decision : decisions) {
+			if (!filtered && !this.accept(decision)) {
+				PlanBuilder.LOGGER.debug("Member filtered: {}", decision.getProperty());
+			} else if (decision.getKind() == MemberDecision.Kind.OPERATION) {
+				for (final CompositionStep step : decision.getSteps()) {
+					this.steps.add(step);
+				}
+			} else {
+				this.renderProperty(decision);
+			}
+		}
+	}
+
+	/**
+	 * Resolves the plan of an operation.
+	 * 
+	 * @param operationDescriptor
+	 *            The operation.
+	 * @return The plan.
+	 * @param <G>
+	 *            The entity type.
+	 */
+	@SuppressWarnings("unchecked")
+	// Can't be more sure.
+	private <G> OperationPlan resolveOperation(final OperationDescriptor<G> operationDescriptor) {
+		final List<CompositionStep> operationSteps = new ArrayList<CompositionStep>();
+		operationSteps.add(CompositionStep.beginOperation(operationDescriptor));
+		for (final ParameterDescriptor<?> parameter : operationDescriptor.getParameters()) {
+			operationSteps.add(this.processPresentationDescriptor(parameter, parameter.adapt(PresentationParameterDescriptor.class),
+					operationDescriptor));
+		}
+		final ResultDescriptor<?> resultDescriptor = operationDescriptor.getResultDescriptor();
+		if (!CheckUtil.isNull(resultDescriptor)) {
+			operationSteps.add(this.processPresentationDescriptor(resultDescriptor, resultDescriptor.adapt(PresentationResultDescriptor.class),
+					operationDescriptor));
+		}
+		operationSteps.add(CompositionStep.endOperation(operationDescriptor));
+		return new OperationPlan(operationDescriptor, operationSteps);
+	}
+
+	/**
+	 * A complete inline expansion.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class SubPlan {
+
+		/** The inline depth below the expanded descriptor. */
+		private final int depth;
+		/** The expanded descriptor and the descriptors it inlines. */
+		private final Set<EntityDescriptor<?>> descriptors;
+		/** The steps. */
+		private final CompositionStep[] steps;
+
+		/**
+		 * Constructs the expansion.
+		 * 
+		 * @param steps
+		 *            The steps.
+		 * @param depth
+		 *            The inline depth below the expanded descriptor.
+		 * @param descriptors
+		 *            The expanded descriptor and the descriptors it inlines.
+		 */
+		public SubPlan(final CompositionStep[] steps, final int depth, final Set<EntityDescriptor<?>> descriptors) {
+			this.steps = steps;
+			this.depth = depth;
+			this.descriptors = descriptors;
+		}
+	}
+}
@@ -0,0 +1,323 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.model.operation.OperationDescriptor;
+import org.lunarray.model.descriptor.model.operation.parameters.ParameterDescriptor;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Differences two composition plans by top level member. A member spans the
+ * steps from its prefix push up to its pop, or from the begin up to the end
+ * of an operation, including any inline members. Members are keyed by kind,
+ * so a property and an operation may share a name, and operations by their
+ * parameter types, so overloads keep their keys when reordered.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+final class PlanDiff {
+
+	/** The logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(PlanDiff.class);
+	/** The key prefix of operations. */
+	private static final String OPERATION = "operation:";
+	/** The key prefix of properties. */
+	private static final String PROPERTY = "property:";
+
+	/**
+	 * Utility class.
+	 */
+	private PlanDiff() {
+		// Utility class.
+	}
+
+	/**
+	 * Replays the difference between two plans. Removed members are removed
+	 * first, then inserted, changed and moved members are rendered in member
+	 * order. Kept members have moved if they fall outside the longest common
+	 * subsequence of the previous and current member order, so an insertion
+	 * moves nothing and a single move updates a single member.
+	 * 
+	 * @param previous
+	 *            The previous plan, may be null to insert all members.
+	 * @param current
+	 *            The current plan.
+	 * @param context
+	 *            The context.
+	 * @param factory
+	 *            The delta render factory.
+	 * @param <C>
+	 *            The context type.
+	 * @param <E>
+	 *            The entity type.
+	 */
+	public static <C extends Context, E> void replay(final CompositionPlan<?> previous, final CompositionPlan<?> current, final C context,
+			final DeltaRenderFactory<C, E> factory) {
+		final List<Member> previousMembers = PlanDiff.members(previous);
+		final List<Member> currentMembers = PlanDiff.members(current);
+		final Map<String, Member> previousByKey = new HashMap<String, Member>();
+		for (final Member member : previousMembers) {
+			previousByKey.put(member.key, member);
+		}
+		final Set<String> currentKeys = new HashSet<String>();
+		for (final Member member : currentMembers) {
+			currentKeys.add(member.key);
+		}
+		final List<String> previousKept = new ArrayList<String>();
+		for (final Member member : previousMembers) {
+			if (currentKeys.contains(member.key)) {
+				previousKept.add(member.key);
+			} else {
+				PlanDiff.LOGGER.debug("Removing member: {}", member.key);
+				factory.remove(context, member.key);
+			}
+		}
+		final List<String> currentKept = new ArrayList<String>();
+		for (final Member member : currentMembers) {
+			if (previousByKey.containsKey(member.key)) {
+				currentKept.add(member.key);
+			}
+		}
+		// Kept members outside the longest run kept in order have moved.
+		final Set<String> moved = new HashSet<String>(currentKept);
+		moved.removeAll(PlanDiff.commonSubsequence(previousKept, currentKept));
+		for (int index = 0; index < currentMembers.size(); index++) {
+			final Member member = currentMembers.get(index);
+			final Member previousMember = previousByKey.get(member.key);
+			if (CheckUtil.isNull(previousMember)) {
+				PlanDiff.LOGGER.debug("Inserting member: {}", member.key);
+				factory.beginInsert(context, member.key, index);
+				member.replay(context, factory);
+				factory.endMember(context, member.key);
+			} else if (moved.contains(member.key) || !member.isEquivalent(previousMember)) {
+				PlanDiff.LOGGER.debug("Updating member: {}", member.key);
+				factory.beginUpdate(context, member.key, index);
+				member.replay(context, factory);
+				factory.endMember(context, member.key);
+			}
+		}
+	}
+
+	/**
+	 * Gets the key of a member, its kind and name, with the parameter types
+	 * of an operation.
+	 * 
+	 * @param first
+	 *            The first step of the member.
+	 * @return The key.
+	 */
+	static String key(final CompositionStep first) {
+		final StringBuilder key = new StringBuilder();
+		if (first.getDescriptor() instanceof PropertyDescriptor) {
+			key.append(PlanDiff.PROPERTY).append(((PropertyDescriptor<?, ?>) first.getDescriptor()).getName());
+		} else {
+			final OperationDescriptor<?> operation = first.getOperation();
+			key.append(PlanDiff.OPERATION).append(operation.getName()).append('(');
+			final List<ParameterDescriptor<?>> parameters = operation.getParameters();
+			for (int i = 0; i < parameters.size(); i++) {
+				if (i > 0) {
+					key.append(',');
+				}
+				key.append(parameters.get(i).getParameterType().getName());
+			}
+			key.append(')');
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Computes the longest common subsequence of two key sequences. The
+	 * common prefix and suffix are taken as is, only the keys between these
+	 * are compared pairwise.
+	 * 
+	 * @param previous
+	 *            The previous keys.
+	 * @param current
+	 *            The current keys.
+	 * @return The keys in the longest common subsequence.
+	 */
+	private static Set<String> commonSubsequence(final List<String> previous, final List<String> current) {
+		final Set<String> common = new HashSet<String>();
+		int start = 0;
+		while ((start < previous.size()) && (start < current.size()) && previous.get(start).equals(current.get(start))) {
+			common.add(previous.get(start));
+			start++;
+		}
+		int previousEnd = previous.size();
+		int currentEnd = current.size();
+		while ((previousEnd > start) && (currentEnd > start) && previous.get(previousEnd - 1).equals(current.get(currentEnd - 1))) {
+			previousEnd--;
+			currentEnd--;
+			common.add(previous.get(previousEnd));
+		}
+		final List<String> previousMiddle = previous.subList(start, previousEnd);
+		final List<String> currentMiddle = current.subList(start, currentEnd);
+		final int[][] lengths = new int[previousMiddle.size() + 1][currentMiddle.size() + 1];
+		for (int i = previousMiddle.size() - 1; i >= 0; i--) {
+			for (int j = currentMiddle.size() - 1; j >= 0; j--) {
+				if (previousMiddle.get(i).equals(currentMiddle.get(j))) {
+					lengths[i][j] = lengths[i + 1][j + 1] + 1;
+				} else {
+					lengths[i][j] = Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+				}
+			}
+		}
+		int i = 0;
+		int j = 0;
+		while ((i < previousMiddle.size()) && (j < currentMiddle.size())) {
+			if (previousMiddle.get(i).equals(currentMiddle.get(j))) {
+				common.add(previousMiddle.get(i));
+				i++;
+				j++;
+			} else if (lengths[i + 1][j] >= lengths[i][j + 1]) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return common;
+	}
+
+	/**
+	 * Splits a plan in its top level members.
+	 * 
+	 * @param plan
+	 *            The plan, may be null.
+	 * @return The members.
+	 */
+	private static List<Member> members(final CompositionPlan<?> plan) {
+		final List<Member> members = new ArrayList<Member>();
+		List<CompositionStep> steps = null;
+		int depth = 0;
+		final Iterable<CompositionStep> planSteps;
+		if (CheckUtil.isNull(plan)) {
+			planSteps = Collections.<CompositionStep> emptyList();
+		} else {
+			planSteps = plan;
+		}
+		for (final CompositionStep step : planSteps) {
+			if (CheckUtil.isNull(steps)) {
+				steps = new ArrayList<CompositionStep>();
+			}
+			steps.add(step);
+			if ((step.getType() == StepType.PUSH_PREFIX) || (step.getType() == StepType.BEGIN_OPERATION)) {
+				depth++;
+			} else if ((step.getType() == StepType.POP_PREFIX) || (step.getType() == StepType.END_OPERATION)) {
+				depth--;
+			}
+			if (depth == 0) {
+				members.add(new Member(PlanDiff.key(steps.get(0)), steps));
+				steps = null;
+			}
+		}
+		return members;
+	}
+
+	/**
+	 * Tests if two objects are equal.
+	 * 
+	 * @param left
+	 *            The left object, may be null.
+	 * @param right
+	 *            The right object, may be null.
+	 * @return True if and only if both are null or equal.
+	 */
+	private static boolean nullSafeEquals(final Object left, final Object right) {
+		boolean result;
+		if (CheckUtil.isNull(left)) {
+			result = CheckUtil.isNull(right);
+		} else {
+			result = left.equals(right);
+		}
+		return result;
+	}
+
+	/**
+	 * A top level member of a plan.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class Member {
+
+		/** The key. */
+		private final String key;
+		/** The steps. */
+		private final List<CompositionStep> steps;
+
+		/**
+		 * Constructs the member.
+		 * 
+		 * @param key
+		 *            The key.
+		 * @param steps
+		 *            The steps.
+		 */
+		public Member(final String key, final List<CompositionStep> steps) {
+			this.key = key;
+			this.steps = steps;
+		}
+
+		/**
+		 * Tests if the member renders the same as another.
+		 * 
+		 * @param other
+		 *            The other member.
+		 * @return True if and only if all steps are equivalent.
+		 */
+		public boolean isEquivalent(final Member other) {
+			boolean result = this.steps.size() == other.steps.size();
+			for (int i = 0; result && (i < this.steps.size()); i++) {
+				final CompositionStep step = this.steps.get(i);
+				final CompositionStep otherStep = other.steps.get(i);
+				result = (step.getType() == otherStep.getType()) && (step.getRenderType() == otherStep.getRenderType())
+						&& PlanDiff.nullSafeEquals(step.getDescriptor(), otherStep.getDescriptor())
+						&& PlanDiff.nullSafeEquals(step.getOperation(), otherStep.getOperation());
+			}
+			return result;
+		}
+
+		/**
+		 * Replays the member.
+		 * 
+		 * @param context
+		 *            The context.
+		 * @param factory
+		 *            The render factory.
+		 * @param <C>
+		 *            The context type.
+		 * @param <E>
+		 *            The entity type.
+		 */
+		public <C extends Context, E> void replay(final C context, final RenderFactory<C, E> factory) {
+			for (final CompositionStep step : this.steps) {
+				step.replay(context, factory);
+			}
+		}
+	}
+}
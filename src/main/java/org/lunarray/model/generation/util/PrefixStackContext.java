@@ -0,0 +1,155 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+
+/**
+ * A context with an array backed prefix stack. Pushing and popping don't
+ * allocate once the stack has grown to the deepest path, and the context
+ * can be reset and reused for another composition. The current path is
+ * available as a dotted name, which is cached per level for as long as the
+ * same prefixes are pushed. A prefix pushed again directly on top of
+ * itself, as an inline expansion does, doesn't add to the path.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public class PrefixStackContext
+		implements Context {
+
+	/** The default capacity. */
+	private static final int DEFAULT_CAPACITY = 8;
+	/** The amount of pushed prefixes. */
+	private int depth;
+	/** The cached paths, by depth minus one. */
+	private String[] paths;
+	/** The pushed prefixes. */
+	private PropertyDescriptor<?, ?>[] prefixes;
+	/** The amount of levels for which the cached path is valid. */
+	private int validDepth;
+
+	/**
+	 * Default constructor.
+	 */
+	public PrefixStackContext() {
+		this(PrefixStackContext.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs the context.
+	 * 
+	 * @param capacity
+	 *            The initial stack capacity.
+	 */
+	public PrefixStackContext(final int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		this.prefixes = new PropertyDescriptor<?, ?>[capacity];
+		this.paths = new String[capacity];
+	}
+
+	/**
+	 * Gets the value for the depth field.
+	 * 
+	 * @return The value for the depth field.
+	 */
+	public final int getDepth() {
+		return this.depth;
+	}
+
+	/**
+	 * Gets the current path, the dotted names of the pushed prefixes.
+	 * 
+	 * @return The interned path, or the empty string if no prefix is pushed.
+	 */
+	public final String getPath() {
+		String path = "";
+		if (this.depth > 0) {
+			for (int i = this.validDepth; i < this.depth; i++) {
+				if (i == 0) {
+					this.paths[i] = this.prefixes[i].getName().intern();
+				} else if (this.prefixes[i] == this.prefixes[i - 1]) {
+					this.paths[i] = this.paths[i - 1];
+				} else {
+					this.paths[i] = (this.paths[i - 1] + '.' + this.prefixes[i].getName()).intern();
+				}
+			}
+			this.validDepth = Math.max(this.validDepth, this.depth);
+			path = this.paths[this.depth - 1];
+		}
+		return path;
+	}
+
+	/**
+	 * Gets the current prefix.
+	 * 
+	 * @return The top prefix, or null if no prefix is pushed.
+	 */
+	public final PropertyDescriptor<?, ?> getPrefix() {
+		PropertyDescriptor<?, ?> prefix = null;
+		if (this.depth > 0) {
+			prefix = this.prefixes[this.depth - 1];
+		}
+		return prefix;
+	}
+
+	/**
+	 * Gets the pushed prefixes.
+	 * 
+	 * @return A copy of the pushed prefixes, outermost first.
+	 */
+	public final List<PropertyDescriptor<?, ?>> getPrefixes() {
+		return new ArrayList<PropertyDescriptor<?, ?>>(Arrays.asList(this.prefixes).subList(0, this.depth));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public final PropertyDescriptor<?, ?> popPrefix() {
+		if (this.depth == 0) {
+			throw new IllegalStateException("No prefix to pop.");
+		}
+		this.depth--;
+		return this.prefixes[this.depth];
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public final void pushPrefix(final PropertyDescriptor<?, ?> prefix) {
+		if (this.depth == this.prefixes.length) {
+			this.prefixes = Arrays.copyOf(this.prefixes, this.depth * 2);
+			this.paths = Arrays.copyOf(this.paths, this.depth * 2);
+		}
+		if (this.prefixes[this.depth] != prefix) {
+			this.prefixes[this.depth] = prefix;
+			this.validDepth = Math.min(this.validDepth, this.depth);
+		}
+		this.depth++;
+	}
+
+	/**
+	 * Resets the context for another composition. The cached paths are kept.
+	 */
+	public void reset() {
+		this.depth = 0;
+	}
+}
@@ -0,0 +1,110 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import org.lunarray.common.check.CheckUtil;
+
+/**
+ * The path of a property position in a composition, the dotted names of
+ * the enclosing properties and the property itself. Paths are computed once
+ * per plan and their strings are interned, so renderers can use them as
+ * binding keys without building strings.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @see PathRenderFactory
+ */
+public final class PropertyPath {
+
+	/** The hash code. */
+	private final int hash;
+	/** The property name. */
+	private final String name;
+	/** The enclosing path, may be null. */
+	private final PropertyPath parent;
+	/** The interned dotted path. */
+	private final String path;
+
+	/**
+	 * Constructs the path.
+	 * 
+	 * @param parent
+	 *            The enclosing path, may be null.
+	 * @param name
+	 *            The property name.
+	 */
+	PropertyPath(final PropertyPath parent, final String name) {
+		this.parent = parent;
+		this.name = name;
+		if (CheckUtil.isNull(parent)) {
+			this.path = name.intern();
+		} else {
+			this.path = (parent.path + '.' + name).intern();
+		}
+		this.hash = this.path.hashCode();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean equals(final Object obj) {
+		boolean result = false;
+		if (obj instanceof PropertyPath) {
+			// Paths are interned.
+			result = this.path == ((PropertyPath) obj).path;
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the value for the name field.
+	 * 
+	 * @return The value for the name field.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Gets the value for the parent field.
+	 * 
+	 * @return The value for the parent field.
+	 */
+	public PropertyPath getParent() {
+		return this.parent;
+	}
+
+	/**
+	 * Gets the value for the path field.
+	 * 
+	 * @return The value for the path field.
+	 */
+	public String getPath() {
+		return this.path;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int hashCode() {
+		return this.hash;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return this.path;
+	}
+}
@@ -0,0 +1,182 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.presentation.annotations.QualifierPresentationHint;
+import org.lunarray.model.descriptor.presentation.annotations.QualifierPresentationHints;
+import org.lunarray.model.descriptor.qualifier.QualifierEntityDescriptor;
+
+/**
+ * A concurrent memo of qualified entity descriptors, by descriptor and
+ * qualifier. Descriptors are adapted and qualified once, however often they
+ * are inlined.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+final class QualifiedDescriptorCache {
+
+	/** The qualified descriptors, by descriptor, by qualifier. */
+	private final ConcurrentMap<EntityDescriptor<?>, ConcurrentMap<Class<?>, EntityDescriptor<?>>> descriptors;
+
+	/**
+	 * Default constructor.
+	 */
+	QualifiedDescriptorCache() {
+		this.descriptors = new ConcurrentHashMap<EntityDescriptor<?>, ConcurrentMap<Class<?>, EntityDescriptor<?>>>();
+	}
+
+	/**
+	 * Clears the memo.
+	 */
+	public void clear() {
+		this.descriptors.clear();
+	}
+
+	/**
+	 * Qualifies a descriptor.
+	 * 
+	 * @param descriptor
+	 *            The (unqualified) entity descriptor.
+	 * @param qualifier
+	 *            The qualifier, may be null.
+	 * @return The qualified descriptor, or the descriptor itself if it isn't
+	 *         qualified.
+	 * @param <F>
+	 *            The entity type.
+	 */
+	@SuppressWarnings("unchecked")
+	// Guaranteed by the key.
+	public <F> EntityDescriptor<F> qualify(final EntityDescriptor<F> descriptor, final Class<?> qualifier) {
+		EntityDescriptor<F> result = descriptor;
+		if (!CheckUtil.isNull(qualifier)) {
+			ConcurrentMap<Class<?>, EntityDescriptor<?>> qualified = this.descriptors.get(descriptor);
+			if (CheckUtil.isNull(qualified)) {
+				final ConcurrentMap<Class<?>, EntityDescriptor<?>> created = new ConcurrentHashMap<Class<?>, EntityDescriptor<?>>();
+				qualified = this.descriptors.putIfAbsent(descriptor, created);
+				if (CheckUtil.isNull(qualified)) {
+					qualified = created;
+				}
+			}
+			result = (EntityDescriptor<F>) qualified.get(qualifier);
+			if (CheckUtil.isNull(result)) {
+				result = QualifiedDescriptorCache.resolve(descriptor, qualifier);
+				if (!CheckUtil.isNull(result)) {
+					final EntityDescriptor<?> previous = qualified.putIfAbsent(qualifier, result);
+					if (!CheckUtil.isNull(previous)) {
+						result = (EntityDescriptor<F>) previous;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the amount of memoized descriptors.
+	 * 
+	 * @return The amount of memoized descriptors.
+	 */
+	public int size() {
+		int size = 0;
+		for (final ConcurrentMap<Class<?>, EntityDescriptor<?>> qualified : this.descriptors.values()) {
+			size += qualified.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Finds the qualifiers named in qualifier presentation hints on the
+	 * entity types, their fields and methods, including their super types.
+	 * 
+	 * @param model
+	 *            The model.
+	 * @return The qualifiers.
+	 */
+	static Set<Class<?>> qualifiers(final Model<?> model) {
+		final Set<Class<?>> qualifiers = new LinkedHashSet<Class<?>>();
+		for (final EntityDescriptor<?> entity : model.getEntities()) {
+			Class<?> type = entity.getEntityType();
+			while (!CheckUtil.isNull(type) && (type != Object.class)) {
+				QualifiedDescriptorCache.addQualifiers(qualifiers, type);
+				for (final Field field : type.getDeclaredFields()) {
+					QualifiedDescriptorCache.addQualifiers(qualifiers, field);
+				}
+				for (final Method method : type.getDeclaredMethods()) {
+					QualifiedDescriptorCache.addQualifiers(qualifiers, method);
+				}
+				type = type.getSuperclass();
+			}
+		}
+		return qualifiers;
+	}
+
+	/**
+	 * Adds the qualifiers named in the qualifier presentation hints of an
+	 * element.
+	 * 
+	 * @param qualifiers
+	 *            The qualifiers to add to.
+	 * @param element
+	 *            The annotated element.
+	 */
+	private static void addQualifiers(final Set<Class<?>> qualifiers, final AnnotatedElement element) {
+		final QualifierPresentationHints hints = element.getAnnotation(QualifierPresentationHints.class);
+		if (!CheckUtil.isNull(hints)) {
+			for (final QualifierPresentationHint hint : hints.value()) {
+				qualifiers.add(hint.name());
+			}
+		}
+		final QualifierPresentationHint hint = element.getAnnotation(QualifierPresentationHint.class);
+		if (!CheckUtil.isNull(hint)) {
+			qualifiers.add(hint.name());
+		}
+	}
+
+	/**
+	 * Resolves a qualified descriptor.
+	 * 
+	 * @param descriptor
+	 *            The (unqualified) entity descriptor.
+	 * @param qualifier
+	 *            The qualifier.
+	 * @return The qualified descriptor.
+	 * @param <F>
+	 *            The entity type.
+	 */
+	private static <F> EntityDescriptor<F> resolve(final EntityDescriptor<F> descriptor, final Class<?> qualifier) {
+		EntityDescriptor<F> result = descriptor;
+		@SuppressWarnings("unchecked")
+		// Can't be more sure.
+		final QualifierEntityDescriptor<F> qualifierDescriptor = descriptor.adapt(QualifierEntityDescriptor.class);
+		if (!CheckUtil.isNull(qualifierDescriptor)) {
+			result = qualifierDescriptor.getQualifierEntity(qualifier);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,48 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+/**
+ * The type of a composition step. The type determines which descriptors a
+ * step holds.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public enum StepType {
+
+	/** Begin an operation. */
+	BEGIN_OPERATION,
+	/** Render a collection parameter. */
+	COLLECTION_PARAMETER,
+	/** Render a collection property. */
+	COLLECTION_PROPERTY,
+	/** Render a collection result type. */
+	COLLECTION_RESULT,
+	/** End an operation. */
+	END_OPERATION,
+	/** Render a parameter. */
+	PARAMETER,
+	/** Pop a variable prefix. */
+	POP_PREFIX,
+	/** Render a property. */
+	PROPERTY,
+	/** Push a variable prefix. */
+	PUSH_PREFIX,
+	/** Render a result type. */
+	RESULT;
+}
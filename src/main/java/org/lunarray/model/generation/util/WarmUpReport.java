@@ -0,0 +1,161 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The report of a model warm-up. Holds what was cached, how long it took and
+ * what could not be warmed.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class WarmUpReport {
+
+	/** The elapsed time, in nanoseconds. */
+	private final long elapsed;
+	/** The amount of entities. */
+	private final int entities;
+	/** The failures. */
+	private final List<String> failures;
+	/** The estimated footprint of the plans cached by the warm-up, in bytes. */
+	private final long footprint;
+	/** The amount of labels cached by the warm-up. */
+	private final int labels;
+	/** The amount of plans cached by the warm-up. */
+	private final int plans;
+	/** The amount of qualifiers. */
+	private final int qualifiers;
+
+	/**
+	 * Constructs the report.
+	 * 
+	 * @param entities
+	 *            The amount of entities.
+	 * @param qualifiers
+	 *            The amount of qualifiers.
+	 * @param plans
+	 *            The amount of plans cached by the warm-up.
+	 * @param labels
+	 *            The amount of labels cached by the warm-up.
+	 * @param failures
+	 *            The failures.
+	 * @param footprint
+	 *            The estimated footprint of the plans cached by the
+	 *            warm-up, in bytes.
+	 * @param elapsed
+	 *            The elapsed time, in nanoseconds.
+	 */
+	WarmUpReport(final int entities, final int qualifiers, final int plans, final int labels, final Collection<String> failures,
+			final long footprint, final long elapsed) {
+		this.entities = entities;
+		this.qualifiers = qualifiers;
+		this.plans = plans;
+		this.labels = labels;
+		this.failures = Collections.unmodifiableList(new ArrayList<String>(failures));
+		this.footprint = footprint;
+		this.elapsed = elapsed;
+	}
+
+	/**
+	 * Gets the value for the elapsed field.
+	 * 
+	 * @return The value for the elapsed field, in nanoseconds.
+	 */
+	public long getElapsed() {
+		return this.elapsed;
+	}
+
+	/**
+	 * Gets the value for the entities field.
+	 * 
+	 * @return The value for the entities field.
+	 */
+	public int getEntities() {
+		return this.entities;
+	}
+
+	/**
+	 * Gets the failures, the compositions that failed and the inline
+	 * descriptors that could not be resolved.
+	 * 
+	 * @return The failures, empty if the warm-up succeeded.
+	 */
+	public List<String> getFailures() {
+		return this.failures;
+	}
+
+	/**
+	 * Gets the estimated memory retained by the plans cached by the warm-up,
+	 * not counting plans cached before.
+	 * 
+	 * @return The estimated footprint, in bytes.
+	 */
+	public long getFootprint() {
+		return this.footprint;
+	}
+
+	/**
+	 * Gets the amount of labels cached by the warm-up, not counting labels
+	 * that were cached before.
+	 * 
+	 * @return The amount of labels.
+	 */
+	public int getLabels() {
+		return this.labels;
+	}
+
+	/**
+	 * Gets the amount of plans cached by the warm-up, not counting plans that
+	 * were cached before.
+	 * 
+	 * @return The amount of plans.
+	 */
+	public int getPlans() {
+		return this.plans;
+	}
+
+	/**
+	 * Gets the amount of qualifiers, not counting the unqualified
+	 * composition.
+	 * 
+	 * @return The amount of qualifiers.
+	 */
+	public int getQualifiers() {
+		return this.qualifiers;
+	}
+
+	/**
+	 * Tests whether the warm-up succeeded.
+	 * 
+	 * @return True if and only if there are no failures.
+	 */
+	public boolean isSuccessful() {
+		return this.failures.isEmpty();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return String.format("Warmed %d plans and %d labels for %d entities and %d qualifiers in %d ms, %d bytes, %d failures.", this.plans,
+				this.labels, this.entities, this.qualifiers, this.elapsed / 1000000L, this.footprint, this.failures.size());
+	}
+}
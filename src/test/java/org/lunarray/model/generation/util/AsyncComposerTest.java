@@ -0,0 +1,420 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.lunarray.model.descriptor.builder.annotation.presentation.builder.PresQualBuilder;
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.model.operation.OperationDescriptor;
+import org.lunarray.model.descriptor.model.operation.parameters.CollectionParameterDescriptor;
+import org.lunarray.model.descriptor.model.operation.parameters.ParameterDescriptor;
+import org.lunarray.model.descriptor.model.operation.result.CollectionResultDescriptor;
+import org.lunarray.model.descriptor.model.operation.result.ResultDescriptor;
+import org.lunarray.model.descriptor.model.property.CollectionPropertyDescriptor;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+import org.lunarray.model.descriptor.presentation.RenderType;
+import org.lunarray.model.descriptor.resource.simpleresource.SimpleClazzResource;
+import org.lunarray.model.generation.util.model.Sample01;
+import org.lunarray.model.generation.util.model.Sample02;
+import org.lunarray.model.generation.util.model.SampleEnum;
+
+/**
+ * Test the asynchronous composer.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public class AsyncComposerTest {
+
+	/** The composer. */
+	private Composer<MockContext, Object, Sample01> composer;
+	/** The context. */
+	private MockContext context;
+	/** The executor. */
+	private ExecutorService executor;
+
+	/** Sets up the test. */
+	@Before
+	public void setup() {
+		final SimpleClazzResource<Object> resource = new SimpleClazzResource<Object>(Sample01.class, Sample02.class, SampleEnum.class);
+		final Model<Object> model = PresQualBuilder.createBuilder().resources(resource).build();
+		this.composer = new Composer<MockContext, Object, Sample01>(new NoopRenderFactory<MockContext, Sample01>(),
+				new FixedVariableResolver<MockContext, Object, Sample01>(model, model.getEntity(Sample01.class), null, Locale.getDefault()));
+		this.context = new MockContext();
+		this.executor = Executors.newCachedThreadPool();
+	}
+
+	/** Tears down the test. */
+	@After
+	public void tearDown() {
+		this.executor.shutdownNow();
+	}
+
+	/**
+	 * Test that all render calls are started before any is awaited, and that
+	 * results are in composition order.
+	 * 
+	 * @see AsyncComposer#compose(Context, boolean)
+	 */
+	@Test
+	public void testConcurrentCalls() {
+		int calls = 0;
+		final Iterator<CompositionStep> events = this.composer.events(this.context, true);
+		while (events.hasNext()) {
+			final StepType type = events.next().getType();
+			if ((type != StepType.PUSH_PREFIX) && (type != StepType.POP_PREFIX)) {
+				calls++;
+			}
+		}
+		// Every call blocks until all calls are started.
+		final LatchedRenderFactory factory = new LatchedRenderFactory(this.executor, calls);
+		final List<Integer> results = new AsyncComposer<MockContext, Object, Sample01, Integer>(this.composer, factory).compose(
+				this.context, true);
+		Assert.assertEquals(calls, results.size());
+		for (int i = 0; i < calls; i++) {
+			Assert.assertEquals(Integer.valueOf(i), results.get(i));
+		}
+	}
+
+	/**
+	 * Test that a render call failing when started cancels the started
+	 * calls.
+	 * 
+	 * @see AsyncComposer#compose(Context, boolean)
+	 */
+	@Test
+	public void testFailedStart() {
+		final LatchedRenderFactory factory = new LatchedRenderFactory(this.executor, Integer.MAX_VALUE, 3, false);
+		try {
+			new AsyncComposer<MockContext, Object, Sample01, Integer>(this.composer, factory).compose(this.context, true);
+			Assert.fail("The failing call wasn't thrown.");
+		} catch (final IllegalArgumentException e) {
+			AsyncComposerTest.assertCancelled(factory);
+		}
+	}
+
+	/**
+	 * Test that a render call without a pending result is rejected, and
+	 * cancels the started calls.
+	 * 
+	 * @see AsyncComposer#compose(Context, boolean)
+	 */
+	@Test
+	public void testNullResult() {
+		final LatchedRenderFactory factory = new LatchedRenderFactory(this.executor, Integer.MAX_VALUE, 3, true);
+		try {
+			new AsyncComposer<MockContext, Object, Sample01, Integer>(this.composer, factory).compose(this.context, true);
+			Assert.fail("The missing result wasn't rejected.");
+		} catch (final IllegalStateException e) {
+			AsyncComposerTest.assertCancelled(factory);
+		}
+	}
+
+	/**
+	 * Test that a factory reading the prefixes asynchronously sees the
+	 * prefixes of its call, as copied during the call, while the context
+	 * has moved on.
+	 * 
+	 * @see AsyncRenderFactory
+	 */
+	@Test
+	public void testPrefixesCopied() {
+		final RecordingRenderFactory<MockContext, Sample01> recording = new RecordingRenderFactory<MockContext, Sample01>();
+		new Composer<MockContext, Object, Sample01>(recording, this.composer.getVariableResolver()).compose(new MockContext(), true);
+		final List<Object> expected = new ArrayList<Object>();
+		for (final List<Object> call : recording.getCalls()) {
+			expected.add(call.get(4));
+		}
+		final PathCopyingFactory factory = new PathCopyingFactory(this.executor, expected.size());
+		final List<String> results = new AsyncComposer<MockContext, Object, Sample01, String>(this.composer, factory).compose(
+				this.context, true);
+		Assert.assertEquals(0, this.context.getDepth());
+		Assert.assertEquals(expected, results);
+	}
+
+	/**
+	 * Asserts that the started calls of a factory are cancelled.
+	 * 
+	 * @param factory
+	 *            The factory.
+	 */
+	private static void assertCancelled(final LatchedRenderFactory factory) {
+		Assert.assertEquals(3, factory.started.size());
+		for (final Future<Integer> call : factory.started) {
+			Assert.assertTrue(call.isCancelled());
+		}
+	}
+
+	/**
+	 * A factory whose calls only complete once all calls are started.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class LatchedRenderFactory
+			implements AsyncRenderFactory<MockContext, Sample01, Integer> {
+
+		/** The call counter. */
+		private final AtomicInteger counter;
+		/** The executor. */
+		private final ExecutorService executor;
+		/** The index of the failing call, or -1. */
+		private final int failAt;
+		/** Whether the failing call returns null, rather than throws. */
+		private final boolean failWithNull;
+		/** The latch. */
+		private final CountDownLatch latch;
+		/** The started calls. */
+		private final List<Future<Integer>> started;
+
+		/**
+		 * Constructs the factory.
+		 * 
+		 * @param executor
+		 *            The executor.
+		 * @param calls
+		 *            The amount of calls to expect.
+		 */
+		public LatchedRenderFactory(final ExecutorService executor, final int calls) {
+			this(executor, calls, -1, false);
+		}
+
+		/**
+		 * Constructs a failing factory.
+		 * 
+		 * @param executor
+		 *            The executor.
+		 * @param calls
+		 *            The amount of calls to expect.
+		 * @param failAt
+		 *            The index of the failing call, or -1.
+		 * @param failWithNull
+		 *            Whether the failing call returns null, rather than
+		 *            throws.
+		 */
+		public LatchedRenderFactory(final ExecutorService executor, final int calls, final int failAt, final boolean failWithNull) {
+			this.executor = executor;
+			this.latch = new CountDownLatch(calls);
+			this.counter = new AtomicInteger();
+			this.failAt = failAt;
+			this.failWithNull = failWithNull;
+			this.started = new CopyOnWriteArrayList<Future<Integer>>();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Future<Integer> beginOperation(final MockContext context, final OperationDescriptor<Sample01> descriptor) {
+			return this.submit();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Future<Integer> endOperation(final MockContext context, final OperationDescriptor<Sample01> operation) {
+			return this.submit();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public <D, P extends Collection<D>> Future<Integer> renderCollectionParameter(final MockContext context,
+				final OperationDescriptor<Sample01> operation, final CollectionParameterDescriptor<D, P> descriptor,
+				final RenderType renderType) {
+			return this.submit();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public <D, P extends Collection<D>> Future<Integer> renderCollectionProperty(final MockContext context,
+				final CollectionPropertyDescriptor<D, P, Sample01> descriptor, final RenderType renderType) {
+			return this.submit();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public <D, R extends Collection<D>> Future<Integer> renderCollectionResultType(final MockContext context,
+				final OperationDescriptor<Sample01> operation, final CollectionResultDescriptor<D, R> resultDescriptor,
+				final RenderType renderType) {
+			return this.submit();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public <P> Future<Integer> renderParameter(final MockContext context, final ParameterDescriptor<P> descriptor,
+				final OperationDescriptor<Sample01> operation, final RenderType renderType) {
+			return this.submit();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public <P> Future<Integer> renderProperty(final MockContext context, final PropertyDescriptor<P, Sample01> descriptor,
+				final RenderType renderType) {
+			return this.submit();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public <R> Future<Integer> renderResultType(final MockContext context, final OperationDescriptor<Sample01> operation,
+				final ResultDescriptor<R> resultDescriptor, final RenderType renderType) {
+			return this.submit();
+		}
+
+		/**
+		 * Submits a call.
+		 * 
+		 * @return The pending call index.
+		 */
+		private Future<Integer> submit() {
+			final Integer index = Integer.valueOf(this.counter.getAndIncrement());
+			Future<Integer> result = null;
+			if (index.intValue() == this.failAt) {
+				if (!this.failWithNull) {
+					throw new IllegalArgumentException("Failing call.");
+				}
+			} else {
+				this.latch.countDown();
+				result = this.executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						Assert.assertTrue(LatchedRenderFactory.this.latch.await(10, TimeUnit.SECONDS));
+						return index;
+					}
+				});
+				this.started.add(result);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * A factory that copies the context path during every call, and reads
+	 * it once all calls are started.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class PathCopyingFactory
+			implements AsyncRenderFactory<MockContext, Sample01, String> {
+
+		/** The executor. */
+		private final ExecutorService executor;
+		/** The latch. */
+		private final CountDownLatch latch;
+
+		/**
+		 * Constructs the factory.
+		 * 
+		 * @param executor
+		 *            The executor.
+		 * @param calls
+		 *            The amount of calls to expect.
+		 */
+		public PathCopyingFactory(final ExecutorService executor, final int calls) {
+			this.executor = executor;
+			this.latch = new CountDownLatch(calls);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Future<String> beginOperation(final MockContext context, final OperationDescriptor<Sample01> descriptor) {
+			return this.submit(context);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Future<String> endOperation(final MockContext context, final OperationDescriptor<Sample01> operation) {
+			return this.submit(context);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public <D, P extends Collection<D>> Future<String> renderCollectionParameter(final MockContext context,
+				final OperationDescriptor<Sample01> operation, final CollectionParameterDescriptor<D, P> descriptor,
+				final RenderType renderType) {
+			return this.submit(context);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public <D, P extends Collection<D>> Future<String> renderCollectionProperty(final MockContext context,
+				final CollectionPropertyDescriptor<D, P, Sample01> descriptor, final RenderType renderType) {
+			return this.submit(context);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public <D, R extends Collection<D>> Future<String> renderCollectionResultType(final MockContext context,
+				final OperationDescriptor<Sample01> operation, final CollectionResultDescriptor<D, R> resultDescriptor,
+				final RenderType renderType) {
+			return this.submit(context);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public <P> Future<String> renderParameter(final MockContext context, final ParameterDescriptor<P> descriptor,
+				final OperationDescriptor<Sample01> operation, final RenderType renderType) {
+			return this.submit(context);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public <P> Future<String> renderProperty(final MockContext context, final PropertyDescriptor<P, Sample01> descriptor,
+				final RenderType renderType) {
+			return this.submit(context);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public <R> Future<String> renderResultType(final MockContext context, final OperationDescriptor<Sample01> operation,
+				final ResultDescriptor<R> resultDescriptor, final RenderType renderType) {
+			return this.submit(context);
+		}
+
+		/**
+		 * Submits a call, reading the path copied during the call.
+		 * 
+		 * @param context
+		 *            The context.
+		 * @return The pending path.
+		 */
+		private Future<String> submit(final MockContext context) {
+			// The context moves on once the call returns, copy the path now.
+			final String path = context.getPath();
+			this.latch.countDown();
+			return this.executor.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					Assert.assertTrue(PathCopyingFactory.this.latch.await(10, TimeUnit.SECONDS));
+					return path;
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.lunarray.model.descriptor.builder.annotation.presentation.builder.PresQualBuilder;
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.resource.simpleresource.SimpleClazzResource;
+import org.lunarray.model.generation.util.model.Qualifier01;
+import org.lunarray.model.generation.util.model.Sample01;
+import org.lunarray.model.generation.util.model.Sample02;
+import org.lunarray.model.generation.util.model.SampleEnum;
+
+/**
+ * Tests that a steady state composition and label lookup do not allocate.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public class ComposerAllocationTest {
+
+	/** The amount of compositions to measure. */
+	private static final int ITERATIONS = 10000;
+	/** The allowed allocation, covers the measurement itself. */
+	private static final long THRESHOLD = 1024;
+	/** The amount of compositions to warm up with. */
+	private static final int WARMUP = 20000;
+	/** The composer. */
+	private Composer<PrefixStackContext, Object, Sample01> composer;
+	/** The context. */
+	private PrefixStackContext context;
+	/** The thread bean. */
+	private com.sun.management.ThreadMXBean threadBean;
+
+	/** Sets up the test. */
+	@Before
+	public void setup() {
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		this.threadBean = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(this.threadBean.isThreadAllocatedMemorySupported());
+		this.threadBean.setThreadAllocatedMemoryEnabled(true);
+		final SimpleClazzResource<Object> resource = new SimpleClazzResource<Object>(Sample01.class, Sample02.class, SampleEnum.class);
+		final Model<Object> model = PresQualBuilder.createBuilder().resources(resource).build();
+		this.context = new PrefixStackContext();
+		this.composer = new Composer<PrefixStackContext, Object, Sample01>(new NoopRenderFactory<PrefixStackContext, Sample01>(),
+				new FixedVariableResolver<PrefixStackContext, Object, Sample01>(model, model.getEntity(Sample01.class), Qualifier01.class,
+						Locale.getDefault()));
+	}
+
+	/**
+	 * Test steady state composition.
+	 * 
+	 * @see Composer#compose(Context, boolean)
+	 */
+	@Test
+	public void testComposeDoesNotAllocate() {
+		for (int i = 0; i < ComposerAllocationTest.WARMUP; i++) {
+			this.composer.compose(this.context, i % 2 == 0);
+		}
+		final long threadId = Thread.currentThread().getId();
+		final long before = this.threadBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < ComposerAllocationTest.ITERATIONS; i++) {
+			this.composer.compose(this.context, i % 2 == 0);
+		}
+		final long allocated = this.threadBean.getThreadAllocatedBytes(threadId) - before;
+		Assert.assertEquals(0, this.context.getDepth());
+		Assert.assertTrue("Allocated " + allocated + " bytes.", allocated < ComposerAllocationTest.THRESHOLD);
+	}
+
+	/**
+	 * Test that a cached label is looked up without allocating.
+	 * 
+	 * @see Composer#getLabel(Context)
+	 */
+	@Test
+	public void testLabelDoesNotAllocate() {
+		for (int i = 0; i < ComposerAllocationTest.WARMUP; i++) {
+			this.composer.getLabel(this.context);
+		}
+		final long threadId = Thread.currentThread().getId();
+		final long before = this.threadBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < ComposerAllocationTest.ITERATIONS; i++) {
+			this.composer.getLabel(this.context);
+		}
+		final long allocated = this.threadBean.getThreadAllocatedBytes(threadId) - before;
+		Assert.assertTrue("Allocated " + allocated + " bytes.", allocated < ComposerAllocationTest.THRESHOLD);
+	}
+}
@@ -0,0 +1,453 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.lunarray.model.descriptor.builder.annotation.presentation.builder.PresQualBuilder;
+import org.lunarray.model.descriptor.builder.annotation.simple.SimpleBuilder;
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.model.operation.OperationDescriptor;
+import org.lunarray.model.descriptor.model.operation.parameters.CollectionParameterDescriptor;
+import org.lunarray.model.descriptor.model.operation.parameters.ParameterDescriptor;
+import org.lunarray.model.descriptor.model.operation.result.CollectionResultDescriptor;
+import org.lunarray.model.descriptor.model.operation.result.ResultDescriptor;
+import org.lunarray.model.descriptor.model.property.CollectionPropertyDescriptor;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+import org.lunarray.model.descriptor.presentation.RenderType;
+import org.lunarray.model.descriptor.resource.simpleresource.SimpleClazzResource;
+import org.lunarray.model.generation.util.model.Qualifier01;
+import org.lunarray.model.generation.util.model.Qualifier02;
+import org.lunarray.model.generation.util.model.Sample01;
+import org.lunarray.model.generation.util.model.Sample02;
+import org.lunarray.model.generation.util.model.Sample04;
+import org.lunarray.model.generation.util.model.SampleEnum;
+
+/**
+ * Stress tests a single composer shared between threads.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public class ComposerConcurrencyTest {
+
+	/** The amount of compositions per thread. */
+	private static final int ITERATIONS = 250;
+	/** The amount of threads. */
+	private static final int THREADS = 16;
+	/** The composer. */
+	private Composer<RecordingContext, Object, Sample01> composer;
+	/** The executor. */
+	private ExecutorService executor;
+	/** The variants. */
+	private List<RecordingContext> variants;
+
+	/** Sets up the test. */
+	@Before
+	public void setup() {
+		final SimpleClazzResource<Object> resource = new SimpleClazzResource<Object>(Sample01.class, Sample02.class, SampleEnum.class);
+		final Model<Object> presentationModel = PresQualBuilder.createBuilder().resources(resource).build();
+		final Model<Object> simpleModel = SimpleBuilder.createBuilder().resources(resource).build();
+		this.variants = new ArrayList<RecordingContext>();
+		for (final Model<Object> model : Arrays.asList(presentationModel, simpleModel)) {
+			for (final Class<?> qualifier : Arrays.<Class<?>> asList(null, Qualifier01.class, Qualifier02.class)) {
+				for (final boolean includeOperations : new boolean[] { false, true }) {
+					this.variants.add(new RecordingContext(model, qualifier, includeOperations));
+				}
+			}
+		}
+		this.composer = new Composer<RecordingContext, Object, Sample01>(new RecordingFactory(), new ContextResolver());
+		this.executor = Executors.newFixedThreadPool(ComposerConcurrencyTest.THREADS);
+	}
+
+	/** Tears down the test. */
+	@After
+	public void tearDown() {
+		this.executor.shutdownNow();
+	}
+
+	/**
+	 * Test concurrent compositions on a shared composer.
+	 * 
+	 * @throws Exception
+	 *             Thrown if a composition failed.
+	 */
+	@Test
+	public void testNoCrossTalk() throws Exception {
+		// Record reference compositions on a separate composer.
+		final Composer<RecordingContext, Object, Sample01> reference = new Composer<RecordingContext, Object, Sample01>(
+				new RecordingFactory(), new ContextResolver());
+		final List<List<List<Object>>> expected = new ArrayList<List<List<Object>>>();
+		for (final RecordingContext variant : this.variants) {
+			final RecordingContext context = variant.copy();
+			reference.compose(context, context.includeOperations);
+			Assert.assertEquals(0, context.depth);
+			expected.add(context.calls);
+		}
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Future<Void>> results = new ArrayList<Future<Void>>();
+		for (int thread = 0; thread < ComposerConcurrencyTest.THREADS; thread++) {
+			final int offset = thread;
+			results.add(this.executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					start.await();
+					for (int i = 0; i < ComposerConcurrencyTest.ITERATIONS; i++) {
+						final int variant = (offset + i) % ComposerConcurrencyTest.this.variants.size();
+						final RecordingContext context = ComposerConcurrencyTest.this.variants.get(variant).copy();
+						ComposerConcurrencyTest.this.composer.compose(context, context.includeOperations);
+						Assert.assertEquals(0, context.depth);
+						Assert.assertEquals(expected.get(variant), context.calls);
+					}
+					return null;
+				}
+			}));
+		}
+		start.countDown();
+		for (final Future<Void> result : results) {
+			result.get();
+		}
+	}
+
+	/**
+	 * Test parallel composition of independent contexts on a thread per task
+	 * executor.
+	 * 
+	 * @see ParallelComposer#composeContexts(Collection, boolean)
+	 */
+	@Test
+	public void testParallelComposeContexts() {
+		final ExecutorService perTask = ComposerExecutors.newThreadPerTaskExecutor();
+		try {
+			final ParallelComposer<RecordingContext, Object, Sample01> parallel = new ParallelComposer<RecordingContext, Object, Sample01>(
+					this.composer, null, perTask);
+			final List<RecordingContext> contexts = new ArrayList<RecordingContext>();
+			final List<List<List<Object>>> expected = new ArrayList<List<List<Object>>>();
+			for (int i = 0; i < ComposerConcurrencyTest.ITERATIONS; i++) {
+				final RecordingContext variant = this.variants.get(i % this.variants.size());
+				final RecordingContext reference = variant.copy();
+				this.composer.compose(reference, true);
+				expected.add(reference.calls);
+				contexts.add(variant.copy());
+			}
+			final List<RecordingContext> results = parallel.composeContexts(contexts, true);
+			Assert.assertEquals(contexts, results);
+			for (int i = 0; i < results.size(); i++) {
+				Assert.assertEquals(expected.get(i), results.get(i).calls);
+			}
+		} finally {
+			perTask.shutdownNow();
+		}
+	}
+
+	/**
+	 * Test that a failing composition fails the parallel composition.
+	 * 
+	 * @see ParallelComposer#composeContexts(Collection, boolean)
+	 */
+	@Test(expected = NullPointerException.class)
+	public void testParallelComposeFailure() {
+		final ParallelComposer<RecordingContext, Object, Sample01> parallel = new ParallelComposer<RecordingContext, Object, Sample01>(
+				this.composer, null, this.executor);
+		final List<RecordingContext> contexts = new ArrayList<RecordingContext>();
+		for (final RecordingContext variant : this.variants) {
+			contexts.add(variant.copy());
+		}
+		// Without a model, the descriptor can't be resolved.
+		contexts.add(new RecordingContext(null, null, true));
+		parallel.composeContexts(contexts, true);
+	}
+
+	/**
+	 * Test parallel composition over a shared executor.
+	 * 
+	 * @see ParallelComposer#composeAll(Context, Collection, boolean,
+	 *      CompositionListener)
+	 */
+	@Test
+	public void testParallelComposeAll() {
+		final ParallelComposer<RecordingContext, Object, Sample01> parallel = new ParallelComposer<RecordingContext, Object, Sample01>(
+				this.composer, new ContextFactory<RecordingContext>() {
+					@Override
+					public RecordingContext createContext(final RecordingContext parent, final EntityDescriptor<?> descriptor) {
+						return parent.copy();
+					}
+				}, this.executor);
+		for (final RecordingContext variant : this.variants) {
+			final RecordingContext reference = variant.copy();
+			this.composer.compose(reference, reference.includeOperations);
+			final List<EntityDescriptor<Sample01>> descriptors = new ArrayList<EntityDescriptor<Sample01>>();
+			for (int i = 0; i < ComposerConcurrencyTest.THREADS; i++) {
+				descriptors.add(variant.model.getEntity(Sample01.class));
+			}
+			final List<RecordingContext> results = parallel.composeAll(variant, descriptors, variant.includeOperations, null);
+			Assert.assertEquals(descriptors.size(), results.size());
+			for (final RecordingContext result : results) {
+				Assert.assertNotSame(variant, result);
+				Assert.assertEquals(0, result.depth);
+				Assert.assertEquals(reference.calls, result.calls);
+			}
+			Assert.assertTrue(variant.calls.isEmpty());
+		}
+	}
+
+	/**
+	 * Test that a warm-up caches the plans and labels of the whole model.
+	 * 
+	 * @see ParallelComposer#warmUp(Context)
+	 */
+	@Test
+	public void testWarmUp() {
+		final ParallelComposer<RecordingContext, Object, Sample01> parallel = new ParallelComposer<RecordingContext, Object, Sample01>(
+				this.composer, null, this.executor);
+		final RecordingContext variant = this.variants.get(0);
+		final WarmUpReport report = parallel.warmUp(variant);
+		final int entities = variant.model.getEntities().size();
+		Assert.assertTrue(report.getFailures().toString(), report.isSuccessful());
+		Assert.assertEquals(entities, report.getEntities());
+		Assert.assertEquals(2, report.getQualifiers());
+		Assert.assertEquals(entities * 3 * 2, report.getPlans());
+		Assert.assertEquals(entities * 3, report.getLabels());
+		Assert.assertTrue(report.getFootprint() > 0);
+		for (final RecordingContext context : this.variants.subList(0, 6)) {
+			this.composer.compose(context, context.includeOperations);
+		}
+		Assert.assertEquals(report.getPlans(), this.composer.getPlanCache().size());
+		final WarmUpReport again = parallel.warmUp(variant);
+		Assert.assertEquals(0, again.getPlans());
+		Assert.assertEquals(0, again.getLabels());
+		Assert.assertEquals(0, again.getFootprint());
+		Assert.assertEquals(report.getPlans(), this.composer.getPlanCache().size());
+	}
+
+	/**
+	 * Test that a warm-up reports unresolved inline descriptors, also for
+	 * plans cached before.
+	 * 
+	 * @see ParallelComposer#warmUp(Context)
+	 */
+	@Test
+	public void testWarmUpUnresolved() {
+		final Model<Object> model = PresQualBuilder.createBuilder().resources(new SimpleClazzResource<Object>(Sample04.class)).build();
+		final EntityDescriptor<Sample04> descriptor = model.getEntity(Sample04.class);
+		final Composer<MockContext, Object, Sample04> unresolved = new Composer<MockContext, Object, Sample04>(
+				new NoopRenderFactory<MockContext, Sample04>(), new FixedVariableResolver<MockContext, Object, Sample04>(model, descriptor,
+						null, Locale.getDefault()));
+		final ParallelComposer<MockContext, Object, Sample04> parallel = new ParallelComposer<MockContext, Object, Sample04>(unresolved,
+				null, this.executor);
+		unresolved.compose(new MockContext(), false);
+		unresolved.getLabel(new MockContext());
+		Assert.assertEquals(2, unresolved.getPlanCache().getPlan(descriptor, null, false).getUnresolved().size());
+		final WarmUpReport report = parallel.warmUp(new MockContext());
+		Assert.assertFalse(report.isSuccessful());
+		Assert.assertEquals(1, report.getPlans());
+		Assert.assertEquals(0, report.getLabels());
+		Assert.assertEquals(2, report.getFailures().size());
+		Assert.assertEquals(report.getFailures(), parallel.warmUp(new MockContext()).getFailures());
+	}
+
+	/**
+	 * Resolves all variables from the context.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class ContextResolver
+			implements VariableResolver<RecordingContext, Object, Sample01> {
+
+		/** {@inheritDoc} */
+		@Override
+		public EntityDescriptor<Sample01> getDescriptor(final RecordingContext context) {
+			return context.model.getEntity(Sample01.class);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Locale getLocale(final RecordingContext context) {
+			return Locale.getDefault();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Model<Object> getModel(final RecordingContext context) {
+			return context.model;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Class<?> getQualifier(final RecordingContext context) {
+			return context.qualifier;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean hasQualifier(final RecordingContext context) {
+			return context.qualifier != null;
+		}
+	}
+
+	/**
+	 * A context that records the render calls made against it.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class RecordingContext
+			implements Context {
+
+		/** The recorded calls. */
+		private final List<List<Object>> calls;
+		/** The prefix depth. */
+		private int depth;
+		/** Include the operations. */
+		private final boolean includeOperations;
+		/** The model. */
+		private final Model<Object> model;
+		/** The qualifier. */
+		private final Class<?> qualifier;
+
+		/**
+		 * Constructs the context.
+		 * 
+		 * @param model
+		 *            The model.
+		 * @param qualifier
+		 *            The qualifier.
+		 * @param includeOperations
+		 *            Include the operations.
+		 */
+		public RecordingContext(final Model<Object> model, final Class<?> qualifier, final boolean includeOperations) {
+			this.model = model;
+			this.qualifier = qualifier;
+			this.includeOperations = includeOperations;
+			this.calls = new ArrayList<List<Object>>();
+		}
+
+		/**
+		 * Copies the context, without calls.
+		 * 
+		 * @return The copy.
+		 */
+		public RecordingContext copy() {
+			return new RecordingContext(this.model, this.qualifier, this.includeOperations);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public PropertyDescriptor<?, ?> popPrefix() {
+			this.depth--;
+			this.record("pop");
+			return null;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void pushPrefix(final PropertyDescriptor<?, ?> prefix) {
+			this.depth++;
+			this.record("push", prefix);
+		}
+
+		/**
+		 * Records a call.
+		 * 
+		 * @param call
+		 *            The call.
+		 */
+		private void record(final Object... call) {
+			final List<Object> recorded = new ArrayList<Object>(Arrays.asList(call));
+			recorded.add(Integer.valueOf(this.depth));
+			this.calls.add(recorded);
+		}
+	}
+
+	/**
+	 * A render factory that records calls in the context.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class RecordingFactory
+			implements RenderFactory<RecordingContext, Sample01> {
+
+		/** {@inheritDoc} */
+		@Override
+		public void beginOperation(final RecordingContext context, final OperationDescriptor<Sample01> descriptor) {
+			context.record("beginOperation", descriptor);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void endOperation(final RecordingContext context, final OperationDescriptor<Sample01> operation) {
+			context.record("endOperation", operation);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public <D, P extends Collection<D>> void renderCollectionParameter(final RecordingContext context,
+				final OperationDescriptor<Sample01> operation, final CollectionParameterDescriptor<D, P> descriptor,
+				final RenderType renderType) {
+			context.record("collectionParameter", operation, descriptor, renderType);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public <D, P extends Collection<D>> void renderCollectionProperty(final RecordingContext context,
+				final CollectionPropertyDescriptor<D, P, Sample01> descriptor, final RenderType renderType) {
+			context.record("collectionProperty", descriptor, renderType);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public <D, R extends Collection<D>> void renderCollectionResultType(final RecordingContext context,
+				final OperationDescriptor<Sample01> operation, final CollectionResultDescriptor<D, R> resultDescriptor,
+				final RenderType renderType) {
+			context.record("collectionResult", operation, resultDescriptor, renderType);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public <P> void renderParameter(final RecordingContext context, final ParameterDescriptor<P> descriptor,
+				final OperationDescriptor<Sample01> operation, final RenderType renderType) {
+			context.record("parameter", operation, descriptor, renderType);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public <P> void renderProperty(final RecordingContext context, final PropertyDescriptor<P, Sample01> descriptor,
+				final RenderType renderType) {
+			context.record("property", descriptor, renderType);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public <R> void renderResultType(final RecordingContext context, final OperationDescriptor<Sample01> operation,
+				final ResultDescriptor<R> resultDescriptor, final RenderType renderType) {
+			context.record("result", operation, resultDescriptor, renderType);
+		}
+	}
+}
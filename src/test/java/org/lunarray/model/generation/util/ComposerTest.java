@@ -17,6 +17,12 @@
  */
 package org.lunarray.model.generation.util;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 
 import org.easymock.EasyMock;
@@ -27,10 +33,16 @@ import org.lunarray.model.descriptor.builder.annotation.presentation.builder.Pre
 import org.lunarray.model.descriptor.builder.annotation.simple.SimpleBuilder;
 import org.lunarray.model.descriptor.model.Model;
 import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.model.operation.OperationDescriptor;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+import org.lunarray.model.descriptor.presentation.RenderType;
 import org.lunarray.model.descriptor.resource.simpleresource.SimpleClazzResource;
 import org.lunarray.model.generation.util.model.Qualifier01;
 import org.lunarray.model.generation.util.model.Sample01;
 import org.lunarray.model.generation.util.model.Sample02;
+import org.lunarray.model.generation.util.model.Sample04;
+import org.lunarray.model.generation.util.model.Sample05;
+import org.lunarray.model.generation.util.model.Sample06;
 import org.lunarray.model.generation.util.model.SampleEnum;
 
 /**
@@ -65,22 +77,251 @@ public class ComposerTest {
 		// TODO create not nice mock
 		this.builder = EasyMock.createNiceMock(RenderFactory.class);
 		this.context = new MockContext();
-		this.composer = new Composer<MockContext, Object, Sample01>();
 		final SimpleClazzResource<Object> resource = new SimpleClazzResource<Object>(Sample01.class, Sample02.class, SampleEnum.class);
 		this.presentationModel = PresQualBuilder.createBuilder().resources(resource).build();
 		this.simpleModel = SimpleBuilder.createBuilder().resources(resource).build();
 		this.presentationDescriptor = this.presentationModel.getEntity(Sample01.class);
 		this.simpleDescriptor = this.simpleModel.getEntity(Sample01.class);
-		this.composer.setContext(this.context);
-		this.composer.setPropertyRenderStrategyFactory(this.builder);
-		this.composer.setVariableResolver(this.resolver);
+		this.composer = new Composer<MockContext, Object, Sample01>(this.builder, this.resolver);
 		EasyMock.reset(this.resolver, this.builder);
 	}
 
+	/**
+	 * Test the batch composer.
+	 * 
+	 * @see Composer#composeAll(Context, java.util.Collection, boolean,
+	 *      CompositionListener)
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testComposeAll() {
+		final CompositionListener<MockContext, Sample01> listener = EasyMock.createStrictMock(CompositionListener.class);
+		EasyMock.expect(this.resolver.hasQualifier(this.context)).andReturn(false).once();
+		EasyMock.expect(this.resolver.getModel(this.context)).andReturn(this.presentationModel).once();
+		EasyMock.expect(this.resolver.getLocale(this.context)).andReturn(Locale.getDefault()).once();
+		listener.beginEntity(this.context, this.presentationDescriptor, "Sample object 01");
+		listener.endEntity(this.context, this.presentationDescriptor);
+		listener.beginEntity(this.context, this.presentationDescriptor, "Sample object 01");
+		listener.endEntity(this.context, this.presentationDescriptor);
+		EasyMock.replay(this.resolver, this.builder, listener);
+		this.composer.composeAll(this.context, Arrays.asList(this.presentationDescriptor, this.presentationDescriptor), true, listener);
+		Assert.assertEquals(1, this.composer.getPlanCache().size());
+		EasyMock.verify(this.resolver, this.builder, listener);
+	}
+
+	/**
+	 * Test pulling composition events.
+	 * 
+	 * @see Composer#events(Context, boolean)
+	 */
+	@Test
+	public void testEvents() {
+		final NoopRenderFactory<MockContext, Sample01> counting = new NoopRenderFactory<MockContext, Sample01>();
+		final Composer<MockContext, Object, Sample01> pushing = new Composer<MockContext, Object, Sample01>(counting, this.resolver);
+		EasyMock.expect(this.resolver.hasQualifier(this.context)).andReturn(false).anyTimes();
+		EasyMock.expect(this.resolver.getDescriptor(this.context)).andReturn(this.presentationDescriptor).anyTimes();
+		EasyMock.expect(this.resolver.getModel(this.context)).andReturn(this.presentationModel).anyTimes();
+		EasyMock.replay(this.resolver, this.builder);
+		pushing.compose(this.context, true);
+		final long pushed = counting.getCalls();
+		final NoopRenderFactory<MockContext, Sample01> pulled = new NoopRenderFactory<MockContext, Sample01>();
+		final Iterator<CompositionStep> events = this.composer.events(this.context, true);
+		int prefixes = 0;
+		while (events.hasNext()) {
+			final CompositionStep event = events.next();
+			if ((event.getType() == StepType.PUSH_PREFIX) || (event.getType() == StepType.POP_PREFIX)) {
+				prefixes++;
+			}
+			event.replay(this.context, pulled);
+		}
+		Assert.assertTrue(pushed > 0);
+		Assert.assertEquals(pushed, pulled.getCalls());
+		Assert.assertEquals(pushed + prefixes, this.composer.getPlanCache().getPlan(this.presentationDescriptor, null, true).size());
+		EasyMock.verify(this.resolver, this.builder);
+	}
+
+	/**
+	 * Test that the handles of operations of inline members are the shared
+	 * operation plans, and compose under the prefixes they were begun under.
+	 * 
+	 * @see OperationPlan#replayParameters(Context, RenderFactory, List)
+	 */
+	@Test
+	public void testLazyInlineOperations() {
+		final Model<Object> model = PresQualBuilder.createBuilder()
+				.resources(new SimpleClazzResource<Object>(Sample02.class, Sample04.class, Sample05.class, Sample06.class)).build();
+		final EntityDescriptor<Sample04> descriptor = model.getEntity(Sample04.class);
+		final FixedVariableResolver<MockContext, Object, Sample04> fixed = new FixedVariableResolver<MockContext, Object, Sample04>(model,
+				descriptor, null, Locale.getDefault());
+		final RecordingRenderFactory<MockContext, Sample04> eager = new RecordingRenderFactory<MockContext, Sample04>();
+		final LazyRecordingFactory<Sample04> lazy = new LazyRecordingFactory<Sample04>();
+		final CompositionPlanCache cache = new CompositionPlanCache();
+		new Composer<MockContext, Object, Sample04>(eager, fixed, cache, new LabelCache()).compose(new MockContext(), true);
+		new Composer<MockContext, Object, Sample04>(lazy, fixed, cache, new LabelCache()).compose(this.context, true);
+		Assert.assertEquals(2, lazy.handles.size());
+		Assert.assertSame(lazy.handles.get(0), lazy.handles.get(1));
+		Assert.assertSame(cache.getOperationPlans().getPlan(lazy.handles.get(0).getOperation(), null), lazy.handles.get(0));
+		final RecordingRenderFactory<MockContext, Sample04> deferred = new RecordingRenderFactory<MockContext, Sample04>();
+		final MockContext dialog = new MockContext();
+		for (int i = 0; i < lazy.handles.size(); i++) {
+			Assert.assertFalse(lazy.prefixes.get(i).isEmpty());
+			lazy.handles.get(i).replayParameters(dialog, deferred, lazy.prefixes.get(i));
+			Assert.assertEquals(0, dialog.getDepth());
+		}
+		final List<List<Object>> parameters = new ArrayList<List<Object>>();
+		for (final List<Object> call : eager.getCalls()) {
+			if (!"beginOperation".equals(call.get(0)) && !"endOperation".equals(call.get(0)) && (call.get(1) instanceof OperationDescriptor)) {
+				parameters.add(call);
+			}
+		}
+		Assert.assertFalse(parameters.isEmpty());
+		Assert.assertEquals(parameters, deferred.getCalls());
+	}
+
+	/**
+	 * Test lazily composing operations.
+	 * 
+	 * @see LazyOperationRenderFactory#beginOperation(Context,
+	 *      org.lunarray.model.descriptor.model.operation.OperationDescriptor,
+	 *      OperationPlan)
+	 */
+	@Test
+	public void testLazyOperations() {
+		final NoopRenderFactory<MockContext, Sample01> eager = new NoopRenderFactory<MockContext, Sample01>();
+		final LazyRecordingFactory<Sample01> lazy = new LazyRecordingFactory<Sample01>();
+		EasyMock.expect(this.resolver.hasQualifier(this.context)).andReturn(false).anyTimes();
+		EasyMock.expect(this.resolver.getDescriptor(this.context)).andReturn(this.presentationDescriptor).anyTimes();
+		EasyMock.expect(this.resolver.getModel(this.context)).andReturn(this.presentationModel).anyTimes();
+		EasyMock.replay(this.resolver, this.builder);
+		new Composer<MockContext, Object, Sample01>(eager, this.resolver).compose(this.context, true);
+		new Composer<MockContext, Object, Sample01>(lazy, this.resolver).compose(this.context, true);
+		Assert.assertFalse(lazy.handles.isEmpty());
+		Assert.assertTrue(lazy.getCalls() < eager.getCalls());
+		for (final OperationPlan handle : lazy.handles) {
+			handle.replayParameters(this.context, lazy);
+		}
+		// The handle begins count as a begin each.
+		Assert.assertEquals(eager.getCalls(), lazy.getCalls() + lazy.handles.size());
+		EasyMock.verify(this.resolver, this.builder);
+	}
+
+	/**
+	 * Test that a shared operation handle spanning other steps than the
+	 * operation in the plan is rejected, rather than skipping the wrong
+	 * steps.
+	 * 
+	 * @see LazyOperationRenderFactory#beginOperation(Context,
+	 *      org.lunarray.model.descriptor.model.operation.OperationDescriptor,
+	 *      OperationPlan)
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testLazyOperationsMismatch() {
+		final CompositionPlanCache planCache = new CompositionPlanCache();
+		EasyMock.expect(this.resolver.hasQualifier(this.context)).andReturn(false).anyTimes();
+		EasyMock.expect(this.resolver.getDescriptor(this.context)).andReturn(this.presentationDescriptor).anyTimes();
+		EasyMock.expect(this.resolver.getModel(this.context)).andReturn(this.presentationModel).anyTimes();
+		EasyMock.replay(this.resolver, this.builder);
+		new Composer<MockContext, Object, Sample01>(this.builder, this.resolver, planCache, new LabelCache()).compose(this.context, true);
+		final CompositionPlan<Sample01> plan = planCache.getPlan(this.presentationDescriptor, null, true);
+		planCache.getOperationPlans().clear();
+		for (final CompositionStep step : plan) {
+			if (step.getType() == StepType.BEGIN_OPERATION) {
+				planCache.getOperationPlans().putPlan(step.getOperation(), null,
+						new OperationPlan(step.getOperation(), Collections.singletonList(step)));
+			}
+		}
+		plan.replay(this.context, new LazyRecordingFactory<Sample01>());
+	}
+
+	/**
+	 * Test the label cache.
+	 * 
+	 * @see Composer#getLabel(Context)
+	 */
+	@Test
+	public void testLabelCached() {
+		EasyMock.expect(this.resolver.hasQualifier(this.context)).andReturn(false).anyTimes();
+		EasyMock.expect(this.resolver.getDescriptor(this.context)).andReturn(this.presentationDescriptor).anyTimes();
+		EasyMock.expect(this.resolver.getLocale(this.context)).andReturn(Locale.getDefault()).anyTimes();
+		EasyMock.replay(this.resolver, this.builder);
+		Assert.assertEquals("Sample object 01", this.composer.getLabel(this.context));
+		Assert.assertEquals("Sample object 01", this.composer.getLabel(this.context));
+		Assert.assertEquals(1, this.composer.getLabelCache().size());
+		this.composer.getLabelCache().invalidate();
+		Assert.assertEquals(0, this.composer.getLabelCache().size());
+		EasyMock.verify(this.resolver, this.builder);
+	}
+
+	/**
+	 * Test the monitor.
+	 * 
+	 * @see Composer#compose(Context, boolean)
+	 */
+	@Test
+	public void testMonitored() {
+		final HistogramCompositionMonitor monitor = new HistogramCompositionMonitor();
+		final Composer<MockContext, Object, Sample01> monitored = new Composer<MockContext, Object, Sample01>(this.builder, this.resolver,
+				new CompositionPlanCache(), new LabelCache(), monitor);
+		EasyMock.expect(this.resolver.hasQualifier(this.context)).andReturn(false).anyTimes();
+		EasyMock.expect(this.resolver.getDescriptor(this.context)).andReturn(this.presentationDescriptor).anyTimes();
+		EasyMock.expect(this.resolver.getModel(this.context)).andReturn(this.presentationModel).once();
+		EasyMock.expect(this.resolver.getLocale(this.context)).andReturn(Locale.getDefault()).anyTimes();
+		EasyMock.replay(this.resolver, this.builder);
+		monitored.compose(this.context, true);
+		monitored.compose(this.context, true);
+		monitored.getLabel(this.context);
+		monitored.getLabel(this.context);
+		Assert.assertEquals(2, monitor.getCompositions());
+		Assert.assertEquals(0.5d, monitor.getPlanHitRate(), 0d);
+		Assert.assertEquals(0.5d, monitor.getLabelHitRate(), 0d);
+		Assert.assertEquals(4, monitor.getResolverCalls("getDescriptor"));
+		Assert.assertEquals(1, monitor.getResolverCalls("getModel"));
+		Assert.assertEquals(0, monitor.getResolverCalls("getQualifier"));
+		final CompositionStatistics statistics = monitored.getPlanCache().getPlan(this.presentationDescriptor, null, true).getStatistics();
+		Assert.assertEquals(2L * statistics.getMembers(), monitor.getMembers());
+		Assert.assertEquals(2L * statistics.getCount(StepType.PROPERTY), monitor.getCount(StepType.PROPERTY));
+		Assert.assertEquals(statistics.getDepth(), monitor.getDepth());
+		Assert.assertTrue(statistics.getDepth() > 0);
+		Assert.assertTrue(monitor.getDurationPercentile(1d) >= monitor.getDurationPercentile(0.5d));
+		Assert.assertTrue(monitor.getTotalDuration() > 0);
+		// The monitoring wrapper is internal.
+		Assert.assertSame(this.resolver, monitored.getVariableResolver());
+		EasyMock.verify(this.resolver, this.builder);
+	}
+
+	/**
+	 * Test that property paths are passed to a path render factory.
+	 * 
+	 * @see PathRenderFactory#renderProperty(Context,
+	 *      org.lunarray.model.descriptor.model.property.PropertyDescriptor,
+	 *      org.lunarray.model.descriptor.presentation.RenderType, PropertyPath)
+	 */
+	@Test
+	public void testPaths() {
+		final PathRecordingFactory recording = new PathRecordingFactory();
+		final Composer<MockContext, Object, Sample01> paths = new Composer<MockContext, Object, Sample01>(recording, this.resolver);
+		EasyMock.expect(this.resolver.hasQualifier(this.context)).andReturn(false).anyTimes();
+		EasyMock.expect(this.resolver.getDescriptor(this.context)).andReturn(this.presentationDescriptor).anyTimes();
+		EasyMock.expect(this.resolver.getModel(this.context)).andReturn(this.presentationModel).anyTimes();
+		EasyMock.replay(this.resolver, this.builder);
+		paths.compose(this.context, false);
+		Assert.assertTrue(recording.getPaths().contains("testValue"));
+		Assert.assertTrue(recording.getPaths().contains("inlineValue2.testValue"));
+		final CompositionPlan<Sample01> plan = paths.getPlan(this.context, false);
+		int index = 0;
+		for (final CompositionStep step : plan) {
+			if (step.getType() == StepType.PUSH_PREFIX) {
+				Assert.assertNull(plan.getPath(index));
+			}
+			index++;
+		}
+		EasyMock.verify(this.resolver, this.builder);
+	}
+
 	/**
 	 * Test the composer.
 	 * 
-	 * @see Composer#compose(boolean)
+	 * @see Composer#compose(Context, boolean)
 	 */
 	@Test
 	public void testPresentationNoQualifierComposition() {
@@ -89,15 +330,15 @@ public class ComposerTest {
 		EasyMock.expect(this.resolver.getModel(this.context)).andReturn(this.presentationModel).anyTimes();
 		EasyMock.expect(this.resolver.getLocale(this.context)).andReturn(Locale.getDefault()).anyTimes();
 		EasyMock.replay(this.resolver, this.builder);
-		this.composer.compose(false);
-		Assert.assertEquals("Sample object 01", this.composer.getLabel());
+		this.composer.compose(this.context, false);
+		Assert.assertEquals("Sample object 01", this.composer.getLabel(this.context));
 		EasyMock.verify(this.resolver, this.builder);
 	}
 
 	/**
 	 * Test the composer.
 	 * 
-	 * @see Composer#compose(boolean)
+	 * @see Composer#compose(Context, boolean)
 	 */
 	@Test
 	public void testPresentationNoQualifierCompositionOperations() {
@@ -106,15 +347,15 @@ public class ComposerTest {
 		EasyMock.expect(this.resolver.getModel(this.context)).andReturn(this.presentationModel).anyTimes();
 		EasyMock.expect(this.resolver.getLocale(this.context)).andReturn(Locale.getDefault()).anyTimes();
 		EasyMock.replay(this.resolver, this.builder);
-		this.composer.compose(true);
-		Assert.assertEquals("Sample object 01", this.composer.getLabel());
+		this.composer.compose(this.context, true);
+		Assert.assertEquals("Sample object 01", this.composer.getLabel(this.context));
 		EasyMock.verify(this.resolver, this.builder);
 	}
 
 	/**
 	 * Test the composer.
 	 * 
-	 * @see Composer#compose(boolean)
+	 * @see Composer#compose(Context, boolean)
 	 */
 	@Test
 	public void testPresentationQualifierComposition() {
@@ -126,15 +367,15 @@ public class ComposerTest {
 		this.resolver.getQualifier(this.context);
 		EasyMock.expectLastCall().andReturn(qualifier).anyTimes();
 		EasyMock.replay(this.resolver, this.builder);
-		this.composer.compose(false);
-		Assert.assertEquals("Sample object 01", this.composer.getLabel());
+		this.composer.compose(this.context, false);
+		Assert.assertEquals("Sample object 01", this.composer.getLabel(this.context));
 		EasyMock.verify(this.resolver, this.builder);
 	}
 
 	/**
 	 * Test the composer.
 	 * 
-	 * @see Composer#compose(boolean)
+	 * @see Composer#compose(Context, boolean)
 	 */
 	@Test
 	public void testPresentationQualifierCompositionOperations() {
@@ -146,15 +387,15 @@ public class ComposerTest {
 		this.resolver.getQualifier(this.context);
 		EasyMock.expectLastCall().andReturn(qualifier).anyTimes();
 		EasyMock.replay(this.resolver, this.builder);
-		this.composer.compose(true);
-		Assert.assertEquals("Sample object 01", this.composer.getLabel());
+		this.composer.compose(this.context, true);
+		Assert.assertEquals("Sample object 01", this.composer.getLabel(this.context));
 		EasyMock.verify(this.resolver, this.builder);
 	}
 
 	/**
 	 * Test the composer.
 	 * 
-	 * @see Composer#compose(boolean)
+	 * @see Composer#compose(Context, boolean)
 	 */
 	@Test
 	public void testSimpleNoQualifierComposition() {
@@ -163,15 +404,15 @@ public class ComposerTest {
 		EasyMock.expect(this.resolver.getModel(this.context)).andReturn(this.simpleModel).anyTimes();
 		EasyMock.expect(this.resolver.getLocale(this.context)).andReturn(Locale.getDefault()).anyTimes();
 		EasyMock.replay(this.resolver, this.builder);
-		this.composer.compose(false);
-		Assert.assertEquals("Sample01", this.composer.getLabel());
+		this.composer.compose(this.context, false);
+		Assert.assertEquals("Sample01", this.composer.getLabel(this.context));
 		EasyMock.verify(this.resolver, this.builder);
 	}
 
 	/**
 	 * Test the composer.
 	 * 
-	 * @see Composer#compose(boolean)
+	 * @see Composer#compose(Context, boolean)
 	 */
 	@Test
 	public void testSimpleNoQualifierCompositionOperations() {
@@ -180,15 +421,15 @@ public class ComposerTest {
 		EasyMock.expect(this.resolver.getModel(this.context)).andReturn(this.simpleModel).anyTimes();
 		EasyMock.expect(this.resolver.getLocale(this.context)).andReturn(Locale.getDefault()).anyTimes();
 		EasyMock.replay(this.resolver, this.builder);
-		this.composer.compose(true);
-		Assert.assertEquals("Sample01", this.composer.getLabel());
+		this.composer.compose(this.context, true);
+		Assert.assertEquals("Sample01", this.composer.getLabel(this.context));
 		EasyMock.verify(this.resolver, this.builder);
 	}
 
 	/**
 	 * Test the composer.
 	 * 
-	 * @see Composer#compose(boolean)
+	 * @see Composer#compose(Context, boolean)
 	 */
 	@Test
 	public void testSimpleQualifierComposition() {
@@ -200,15 +441,15 @@ public class ComposerTest {
 		this.resolver.getQualifier(this.context);
 		EasyMock.expectLastCall().andReturn(qualifier).anyTimes();
 		EasyMock.replay(this.resolver, this.builder);
-		this.composer.compose(false);
-		Assert.assertEquals("Sample01", this.composer.getLabel());
+		this.composer.compose(this.context, false);
+		Assert.assertEquals("Sample01", this.composer.getLabel(this.context));
 		EasyMock.verify(this.resolver, this.builder);
 	}
 
 	/**
 	 * Test the composer.
 	 * 
-	 * @see Composer#compose(boolean)
+	 * @see Composer#compose(Context, boolean)
 	 */
 	@Test
 	public void testSimpleQualifierCompositionOperations() {
@@ -220,8 +461,157 @@ public class ComposerTest {
 		this.resolver.getQualifier(this.context);
 		EasyMock.expectLastCall().andReturn(qualifier).anyTimes();
 		EasyMock.replay(this.resolver, this.builder);
-		this.composer.compose(true);
-		Assert.assertEquals("Sample01", this.composer.getLabel());
+		this.composer.compose(this.context, true);
+		Assert.assertEquals("Sample01", this.composer.getLabel(this.context));
 		EasyMock.verify(this.resolver, this.builder);
 	}
+
+	/**
+	 * Test that every window composes its slice of the whole plan, in order,
+	 * and that windows are bounded by whole members.
+	 * 
+	 * @see Composer#compose(Context, boolean, int, int)
+	 */
+	@Test
+	public void testWindowed() {
+		final RecordingRenderFactory<MockContext, Sample01> full = new RecordingRenderFactory<MockContext, Sample01>();
+		final CompositionPlanCache cache = new CompositionPlanCache();
+		final Composer<MockContext, Object, Sample01> fullComposer = new Composer<MockContext, Object, Sample01>(full, this.resolver, cache,
+				new LabelCache());
+		EasyMock.expect(this.resolver.hasQualifier(this.context)).andReturn(false).anyTimes();
+		EasyMock.expect(this.resolver.getDescriptor(this.context)).andReturn(this.presentationDescriptor).anyTimes();
+		EasyMock.expect(this.resolver.getModel(this.context)).andReturn(this.presentationModel).anyTimes();
+		EasyMock.replay(this.resolver, this.builder);
+		fullComposer.compose(this.context, true);
+		final CompositionPlan<Sample01> plan = fullComposer.getPlan(this.context, true);
+		final int count = plan.getMemberCount();
+		Assert.assertTrue(count > 2);
+		final List<List<Object>> windowed = new ArrayList<List<Object>>();
+		int cursor = 0;
+		int windows = 0;
+		while (cursor < count) {
+			final int next = Math.min(cursor + 2, count);
+			final List<List<Object>> calls = this.window(cache, cursor, 2, next);
+			Assert.assertEquals(ComposerTest.slice(full, plan, cursor, next), calls);
+			windowed.addAll(calls);
+			cursor = next;
+			windows++;
+		}
+		Assert.assertEquals((count + 1) / 2, windows);
+		Assert.assertEquals(full.getCalls(), windowed);
+		// Past the end and empty windows compose nothing.
+		Assert.assertTrue(this.window(cache, count, 2, count).isEmpty());
+		Assert.assertTrue(this.window(cache, count + 5, 2, count).isEmpty());
+		Assert.assertTrue(this.window(cache, 1, 0, 1).isEmpty());
+		// A window never splits an inline member, pushed twice.
+		final List<CompositionStep> steps = new ArrayList<CompositionStep>();
+		for (final CompositionStep step : plan) {
+			steps.add(step);
+		}
+		int inline = -1;
+		for (int member = 1; (inline < 0) && (member < count); member++) {
+			final int first = plan.getMemberStart(member);
+			if ((steps.get(first).getType() == StepType.PUSH_PREFIX) && (steps.get(first + 1).getType() == StepType.PUSH_PREFIX)) {
+				inline = member;
+			}
+		}
+		Assert.assertTrue(inline > 0);
+		final List<List<Object>> starting = this.window(cache, inline, 1, inline + 1);
+		Assert.assertEquals(ComposerTest.slice(full, plan, inline, inline + 1), starting);
+		Assert.assertTrue(starting.size() > 1);
+		final List<List<Object>> ending = this.window(cache, inline - 1, 2, inline + 1);
+		Assert.assertEquals(ComposerTest.slice(full, plan, inline - 1, inline + 1), ending);
+		Assert.assertEquals(starting, ending.subList(ending.size() - starting.size(), ending.size()));
+		EasyMock.verify(this.resolver, this.builder);
+	}
+
+	/**
+	 * Gets the calls of a window of top level members from a full
+	 * composition. Prefix steps don't call the factory.
+	 * 
+	 * @param full
+	 *            The factory the full plan was composed with.
+	 * @param plan
+	 *            The plan.
+	 * @param from
+	 *            The first member.
+	 * @param to
+	 *            The member after the window.
+	 * @return The calls of the window.
+	 */
+	private static List<List<Object>> slice(final RecordingRenderFactory<MockContext, Sample01> full, final CompositionPlan<Sample01> plan,
+			final int from, final int to) {
+		int index = 0;
+		int start = 0;
+		int end = 0;
+		for (final CompositionStep step : plan) {
+			if (index == plan.getMemberStart(from)) {
+				start = end;
+			}
+			if (index == plan.getMemberStart(to)) {
+				break;
+			}
+			if ((step.getType() != StepType.PUSH_PREFIX) && (step.getType() != StepType.POP_PREFIX)) {
+				end++;
+			}
+			index++;
+		}
+		return full.getCalls().subList(start, end);
+	}
+
+	/**
+	 * Composes a window on a fresh recording factory.
+	 * 
+	 * @param cache
+	 *            The plan cache.
+	 * @param offset
+	 *            The index of the first member.
+	 * @param limit
+	 *            The maximum amount of members.
+	 * @param next
+	 *            The expected cursor of the next window.
+	 * @return The calls of the window.
+	 */
+	private List<List<Object>> window(final CompositionPlanCache cache, final int offset, final int limit, final int next) {
+		final RecordingRenderFactory<MockContext, Sample01> windowed = new RecordingRenderFactory<MockContext, Sample01>();
+		final Composer<MockContext, Object, Sample01> composer = new Composer<MockContext, Object, Sample01>(windowed, this.resolver, cache,
+				new LabelCache());
+		Assert.assertEquals(next, composer.compose(this.context, true, offset, limit));
+		Assert.assertEquals(0, this.context.getDepth());
+		return windowed.getCalls();
+	}
+
+	/**
+	 * A render factory that records the lazy operation handles, with the
+	 * prefixes they were begun under.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 * @param <E>
+	 *            The entity type.
+	 */
+	private static final class LazyRecordingFactory<E>
+			extends NoopRenderFactory<MockContext, E>
+			implements LazyOperationRenderFactory<MockContext, E> {
+
+		/** The recorded handles. */
+		private final List<OperationPlan> handles;
+		/** The recorded prefixes, by handle index. */
+		private final List<List<PropertyDescriptor<?, ?>>> prefixes;
+
+		/**
+		 * Default constructor.
+		 */
+		public LazyRecordingFactory() {
+			this.handles = new ArrayList<OperationPlan>();
+			this.prefixes = new ArrayList<List<PropertyDescriptor<?, ?>>>();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void beginOperation(final MockContext context, final OperationDescriptor<E> descriptor, final OperationPlan handle) {
+			Assert.assertSame(descriptor, handle.getOperation());
+			this.handles.add(handle);
+			this.prefixes.add(context.getPrefixes());
+		}
+	}
 }
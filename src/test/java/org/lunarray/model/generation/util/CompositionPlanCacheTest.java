@@ -0,0 +1,202 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.lunarray.model.descriptor.builder.annotation.presentation.builder.PresQualBuilder;
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.resource.simpleresource.SimpleClazzResource;
+import org.lunarray.model.generation.util.model.Sample01;
+import org.lunarray.model.generation.util.model.Sample02;
+import org.lunarray.model.generation.util.model.Sample03;
+import org.lunarray.model.generation.util.model.Sample04;
+import org.lunarray.model.generation.util.model.Sample05;
+import org.lunarray.model.generation.util.model.Sample06;
+import org.lunarray.model.generation.util.model.SampleEnum;
+
+/**
+ * Test the composition plan cache.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public class CompositionPlanCacheTest {
+
+	/** The strategy builder. */
+	private RenderFactory<MockContext, Sample01> builder;
+	/** The composer. */
+	private Composer<MockContext, Object, Sample01> composer;
+	/** The context. */
+	private MockContext context;
+	/** The entity descriptor. */
+	private EntityDescriptor<Sample01> presentationDescriptor;
+	/** The model. */
+	private Model<Object> presentationModel;
+	/** The resolver. */
+	private VariableResolver<MockContext, Object, Sample01> resolver;
+
+	/** Sets up the test. */
+	@SuppressWarnings("unchecked")
+	@Before
+	public void setup() throws Exception {
+		this.resolver = EasyMock.createMock(VariableResolver.class);
+		this.builder = EasyMock.createNiceMock(RenderFactory.class);
+		this.context = new MockContext();
+		final SimpleClazzResource<Object> resource = new SimpleClazzResource<Object>(Sample01.class, Sample02.class, SampleEnum.class);
+		this.presentationModel = PresQualBuilder.createBuilder().resources(resource).build();
+		this.presentationDescriptor = this.presentationModel.getEntity(Sample01.class);
+		this.composer = new Composer<MockContext, Object, Sample01>(this.builder, this.resolver);
+		EasyMock.reset(this.resolver, this.builder);
+	}
+
+	/**
+	 * Test that member decisions are shared between plans.
+	 * 
+	 * @see Composer#compose(Context, boolean)
+	 */
+	@Test
+	public void testDecisionTablesShared() {
+		EasyMock.expect(this.resolver.hasQualifier(this.context)).andReturn(false).anyTimes();
+		EasyMock.expect(this.resolver.getDescriptor(this.context)).andReturn(this.presentationDescriptor).anyTimes();
+		EasyMock.expect(this.resolver.getModel(this.context)).andReturn(this.presentationModel).times(2);
+		EasyMock.replay(this.resolver, this.builder);
+		this.composer.compose(this.context, true);
+		this.composer.compose(this.context, false);
+		// The members and properties of Sample01, and the members of the inline Sample02.
+		Assert.assertEquals(3, this.composer.getPlanCache().getDecisionTables().size());
+		Assert.assertEquals(2, this.composer.getPlanCache().size());
+		this.composer.getPlanCache().clear();
+		Assert.assertEquals(0, this.composer.getPlanCache().getDecisionTables().size());
+		EasyMock.verify(this.resolver, this.builder);
+	}
+
+	/**
+	 * Test that a self inlining entity is inlined once.
+	 * 
+	 * @see Composer#compose(Context, boolean)
+	 */
+	@Test
+	public void testInlineCycle() {
+		final Model<Object> model = PresQualBuilder.createBuilder().resources(new SimpleClazzResource<Object>(Sample03.class)).build();
+		final EntityDescriptor<Sample03> descriptor = model.getEntity(Sample03.class);
+		final Composer<MockContext, Object, Sample03> cyclic = new Composer<MockContext, Object, Sample03>(
+				new NoopRenderFactory<MockContext, Sample03>(), new FixedVariableResolver<MockContext, Object, Sample03>(model, descriptor,
+						null, Locale.getDefault()));
+		cyclic.compose(this.context, true);
+		final CompositionStatistics statistics = cyclic.getPlanCache().getPlan(descriptor, null, true).getStatistics();
+		Assert.assertEquals(1, statistics.getDepth());
+		Assert.assertEquals(statistics.getCount(StepType.PUSH_PREFIX), statistics.getCount(StepType.POP_PREFIX));
+	}
+
+	/**
+	 * Test that an expansion first made shallow isn't reused past the
+	 * maximum depth.
+	 * 
+	 * @see CompositionPlanCache#getMaximumInlineDepth()
+	 */
+	@Test
+	public void testInlineDepthReuse() {
+		final Model<Object> model = PresQualBuilder.createBuilder()
+				.resources(new SimpleClazzResource<Object>(Sample02.class, Sample04.class, Sample05.class, Sample06.class)).build();
+		final EntityDescriptor<Sample04> descriptor = model.getEntity(Sample04.class);
+		final RecordingRenderFactory<MockContext, Sample04> recording = new RecordingRenderFactory<MockContext, Sample04>();
+		final Composer<MockContext, Object, Sample04> nested = new Composer<MockContext, Object, Sample04>(recording,
+				new FixedVariableResolver<MockContext, Object, Sample04>(model, descriptor, null, Locale.getDefault()),
+				new CompositionPlanCache(2), new LabelCache());
+		nested.compose(this.context, false);
+		final List<Object> paths = new ArrayList<Object>();
+		for (final List<Object> call : recording.getCalls()) {
+			paths.add(call.get(4));
+		}
+		Assert.assertTrue(paths.contains("first.nested.id"));
+		Assert.assertTrue(paths.contains("second.inner.name"));
+		Assert.assertFalse(paths.contains("second.inner.nested.id"));
+	}
+
+	/**
+	 * Test the maximum inline depth.
+	 * 
+	 * @see CompositionPlanCache#getMaximumInlineDepth()
+	 */
+	@Test
+	public void testMaximumInlineDepth() {
+		final FixedVariableResolver<MockContext, Object, Sample01> fixed = new FixedVariableResolver<MockContext, Object, Sample01>(
+				this.presentationModel, this.presentationDescriptor, null, Locale.getDefault());
+		final Composer<MockContext, Object, Sample01> flat = new Composer<MockContext, Object, Sample01>(this.builder, fixed,
+				new CompositionPlanCache(0), new LabelCache());
+		final Composer<MockContext, Object, Sample01> nested = new Composer<MockContext, Object, Sample01>(this.builder, fixed);
+		EasyMock.replay(this.resolver, this.builder);
+		flat.compose(this.context, true);
+		nested.compose(this.context, true);
+		Assert.assertEquals(1, flat.getPlanCache().getPlan(this.presentationDescriptor, null, true).getStatistics().getDepth());
+		Assert.assertEquals(2, nested.getPlanCache().getPlan(this.presentationDescriptor, null, true).getStatistics().getDepth());
+	}
+
+	/**
+	 * Test that operations are rendered from the operation plans.
+	 * 
+	 * @see Composer#compose(Context, boolean)
+	 */
+	@Test
+	public void testOperationPlans() {
+		EasyMock.expect(this.resolver.hasQualifier(this.context)).andReturn(false).anyTimes();
+		EasyMock.expect(this.resolver.getDescriptor(this.context)).andReturn(this.presentationDescriptor).anyTimes();
+		EasyMock.expect(this.resolver.getModel(this.context)).andReturn(this.presentationModel).anyTimes();
+		EasyMock.replay(this.resolver, this.builder);
+		this.composer.compose(this.context, true);
+		final OperationPlanCache operationPlans = this.composer.getPlanCache().getOperationPlans();
+		Assert.assertTrue(operationPlans.size() > 0);
+		int operations = 0;
+		for (final CompositionStep step : this.composer.getPlan(this.context, true)) {
+			if (step.getType() == StepType.BEGIN_OPERATION) {
+				final OperationPlan operationPlan = operationPlans.getPlan(step.getOperation(), null);
+				Assert.assertSame(step, operationPlan.getSteps()[0]);
+				Assert.assertEquals(step.getOperation().getParameters().size(), operationPlan.getParameterCount());
+				operations++;
+			}
+		}
+		Assert.assertTrue(operations >= operationPlans.size());
+		this.composer.getPlanCache().clear();
+		Assert.assertEquals(0, operationPlans.size());
+		EasyMock.verify(this.resolver, this.builder);
+	}
+
+	/**
+	 * Test the plan cache.
+	 * 
+	 * @see Composer#compose(Context, boolean)
+	 */
+	@Test
+	public void testPlanCached() {
+		EasyMock.expect(this.resolver.hasQualifier(this.context)).andReturn(false).anyTimes();
+		EasyMock.expect(this.resolver.getDescriptor(this.context)).andReturn(this.presentationDescriptor).anyTimes();
+		EasyMock.expect(this.resolver.getModel(this.context)).andReturn(this.presentationModel).once();
+		EasyMock.replay(this.resolver, this.builder);
+		this.composer.compose(this.context, true);
+		this.composer.compose(this.context, true);
+		Assert.assertEquals(1, this.composer.getPlanCache().size());
+		EasyMock.verify(this.resolver, this.builder);
+	}
+}
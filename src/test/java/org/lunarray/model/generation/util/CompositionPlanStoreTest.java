@@ -0,0 +1,218 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.lunarray.model.descriptor.builder.annotation.presentation.builder.PresQualBuilder;
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.resource.simpleresource.SimpleClazzResource;
+import org.lunarray.model.generation.util.model.Qualifier01;
+import org.lunarray.model.generation.util.model.Sample01;
+import org.lunarray.model.generation.util.model.Sample02;
+import org.lunarray.model.generation.util.model.Sample05;
+import org.lunarray.model.generation.util.model.SampleEnum;
+
+/**
+ * Test the composition plan store.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public class CompositionPlanStoreTest {
+
+	/** The size of the file header, in bytes. */
+	private static final int HEADER_SIZE = 18;
+	/** The temporary folder. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	/** The plan cache. */
+	private CompositionPlanCache cache;
+	/** The entity descriptor. */
+	private EntityDescriptor<Sample01> descriptor;
+	/** The model. */
+	private Model<Object> model;
+	/** The store. */
+	private CompositionPlanStore store;
+
+	/** Sets up the test. */
+	@Before
+	public void setup() throws Exception {
+		final SimpleClazzResource<Object> resource = new SimpleClazzResource<Object>(Sample01.class, Sample02.class, SampleEnum.class);
+		this.model = PresQualBuilder.createBuilder().resources(resource).build();
+		this.descriptor = this.model.getEntity(Sample01.class);
+		this.cache = new CompositionPlanCache();
+		for (final Class<?> qualifier : new Class<?>[] { null, Qualifier01.class }) {
+			for (final boolean includeOperations : new boolean[] { false, true }) {
+				final CompositionPlan<Sample01> plan = new PlanBuilder<Object>(this.model, qualifier, this.cache).build(this.descriptor,
+						includeOperations);
+				this.cache.putPlan(this.descriptor, qualifier, includeOperations, plan);
+			}
+		}
+		this.store = new CompositionPlanStore(new File(this.folder.getRoot(), "plans.bin"));
+	}
+
+	/**
+	 * Test that a corrupt render type is reported as an I/O failure.
+	 * 
+	 * @see CompositionPlanStore#load(Model, CompositionPlanCache, long)
+	 */
+	@Test(expected = IOException.class)
+	public void testCorrupt() throws Exception {
+		final long fingerprint = CompositionPlanStore.fingerprint(this.model);
+		this.store.save(this.cache, fingerprint);
+		final Path path = this.store.getFile().toPath();
+		final String contents = new String(Files.readAllBytes(path), "ISO-8859-1");
+		Assert.assertTrue(contents.contains("TEXT_AREA"));
+		Files.write(path, contents.replace("TEXT_AREA", "TEXT_AREZ").getBytes("ISO-8859-1"));
+		this.store.load(this.model, new CompositionPlanCache(), fingerprint);
+	}
+
+	/**
+	 * Test that a negative or oversized count is reported as an I/O failure,
+	 * rather than allocated.
+	 * 
+	 * @see CompositionPlanStore#load(Model, CompositionPlanCache, long)
+	 */
+	@Test
+	public void testCorruptLength() throws Exception {
+		final long fingerprint = CompositionPlanStore.fingerprint(this.model);
+		this.store.save(this.cache, fingerprint);
+		final Path path = this.store.getFile().toPath();
+		final byte[] contents = Files.readAllBytes(path);
+		for (final int count : new int[] { -1, Integer.MAX_VALUE }) {
+			// The string count follows the magic, version, fingerprint and
+			// inline depth.
+			ByteBuffer.wrap(contents).putInt(CompositionPlanStoreTest.HEADER_SIZE, count);
+			Files.write(path, contents);
+			try {
+				this.store.load(this.model, new CompositionPlanCache(), fingerprint);
+				Assert.fail("Loaded a corrupt count: " + count);
+			} catch (final IOException e) {
+				Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+			}
+		}
+	}
+
+	/**
+	 * Test that the fingerprint covers the declared structure of the model.
+	 * 
+	 * @see CompositionPlanStore#fingerprint(Model)
+	 */
+	@Test
+	public void testFingerprint() {
+		final SimpleClazzResource<Object> resource = new SimpleClazzResource<Object>(Sample01.class, Sample02.class, SampleEnum.class);
+		final Model<Object> otherModel = PresQualBuilder.createBuilder().resources(resource).build();
+		final Model<Object> widerModel = PresQualBuilder.createBuilder()
+				.resources(new SimpleClazzResource<Object>(Sample01.class, Sample02.class, Sample05.class, SampleEnum.class)).build();
+		Assert.assertEquals(CompositionPlanStore.fingerprint(this.model), CompositionPlanStore.fingerprint(otherModel));
+		Assert.assertFalse(CompositionPlanStore.fingerprint(this.model) == CompositionPlanStore.fingerprint(widerModel));
+	}
+
+	/**
+	 * Test that plans stored for another maximum inline depth are ignored.
+	 * 
+	 * @see CompositionPlanStore#load(Model, CompositionPlanCache, long)
+	 */
+	@Test
+	public void testInlineDepth() throws Exception {
+		final long fingerprint = CompositionPlanStore.fingerprint(this.model);
+		this.store.save(this.cache, fingerprint);
+		final CompositionPlanCache shallow = new CompositionPlanCache(2);
+		Assert.assertEquals(0, this.store.load(this.model, shallow, fingerprint));
+		Assert.assertEquals(0, shallow.size());
+	}
+
+	/**
+	 * Test that stored plans are loaded with the same steps.
+	 * 
+	 * @see CompositionPlanStore#load(Model, CompositionPlanCache, long)
+	 */
+	@Test
+	public void testRoundTrip() throws Exception {
+		final long fingerprint = CompositionPlanStore.fingerprint(this.model);
+		Assert.assertEquals(fingerprint, CompositionPlanStore.fingerprint(this.model));
+		Assert.assertEquals(4, this.store.save(this.cache, fingerprint));
+		final CompositionPlanCache loaded = new CompositionPlanCache();
+		Assert.assertEquals(4, this.store.load(this.model, loaded, fingerprint));
+		Assert.assertEquals(4, loaded.size());
+		for (final Class<?> qualifier : new Class<?>[] { null, Qualifier01.class }) {
+			for (final boolean includeOperations : new boolean[] { false, true }) {
+				final CompositionPlan<Sample01> expected = this.cache.getPlan(this.descriptor, qualifier, includeOperations);
+				final CompositionPlan<Sample01> actual = loaded.getPlan(this.descriptor, qualifier, includeOperations);
+				Assert.assertEquals(expected.size(), actual.size());
+				final Iterator<CompositionStep> actualSteps = actual.iterator();
+				for (final CompositionStep step : expected) {
+					final CompositionStep actualStep = actualSteps.next();
+					Assert.assertEquals(step.getType(), actualStep.getType());
+					Assert.assertEquals(step.getRenderType(), actualStep.getRenderType());
+					Assert.assertSame(step.getOperation(), actualStep.getOperation());
+					Assert.assertSame(step.getDescriptor(), actualStep.getDescriptor());
+				}
+				final RecordingRenderFactory<MockContext, Sample01> expectedCalls = new RecordingRenderFactory<MockContext, Sample01>();
+				final RecordingRenderFactory<MockContext, Sample01> actualCalls = new RecordingRenderFactory<MockContext, Sample01>();
+				expected.replay(new MockContext(), expectedCalls);
+				actual.replay(new MockContext(), actualCalls);
+				Assert.assertFalse(expectedCalls.getCalls().isEmpty());
+				Assert.assertEquals(expectedCalls.getCalls(), actualCalls.getCalls());
+			}
+		}
+	}
+
+	/**
+	 * Test that a failed save leaves no temporary file behind.
+	 * 
+	 * @see CompositionPlanStore#save(CompositionPlanCache, long)
+	 */
+	@Test
+	public void testSaveFailure() throws Exception {
+		final File directory = this.folder.newFolder("plans");
+		Assert.assertTrue(new File(directory, "occupied").createNewFile());
+		try {
+			new CompositionPlanStore(directory).save(this.cache, CompositionPlanStore.fingerprint(this.model));
+			Assert.fail("Saved over a directory.");
+		} catch (final IOException e) {
+			Assert.assertFalse(new File(directory.getPath() + ".tmp").exists());
+		}
+	}
+
+	/**
+	 * Test that plans stored for another model are ignored.
+	 * 
+	 * @see CompositionPlanStore#load(Model, CompositionPlanCache, long)
+	 */
+	@Test
+	public void testStale() throws Exception {
+		final long fingerprint = CompositionPlanStore.fingerprint(this.model);
+		this.store.save(this.cache, fingerprint);
+		final CompositionPlanCache loaded = new CompositionPlanCache();
+		Assert.assertEquals(0, this.store.load(this.model, loaded, fingerprint + 1));
+		Assert.assertEquals(0, loaded.size());
+		Assert.assertEquals(0, new CompositionPlanStore(new File(this.folder.getRoot(), "missing.bin")).load(this.model, loaded, fingerprint));
+	}
+}
@@ -0,0 +1,97 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.Locale;
+
+import org.lunarray.common.check.CheckUtil;
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+
+/**
+ * A variable resolver that resolves fixed values, regardless of context.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <C>
+ *            The context type.
+ * @param <S>
+ *            The super type.
+ * @param <E>
+ *            The entity type.
+ */
+public class FixedVariableResolver<C extends Context, S, E extends S>
+		implements VariableResolver<C, S, E> {
+
+	/** The descriptor. */
+	private final EntityDescriptor<E> descriptor;
+	/** The locale. */
+	private final Locale locale;
+	/** The model. */
+	private final Model<S> model;
+	/** The qualifier. */
+	private final Class<?> qualifier;
+
+	/**
+	 * Constructs the resolver.
+	 * 
+	 * @param model
+	 *            The model.
+	 * @param descriptor
+	 *            The descriptor.
+	 * @param qualifier
+	 *            The qualifier, may be null.
+	 * @param locale
+	 *            The locale.
+	 */
+	public FixedVariableResolver(final Model<S> model, final EntityDescriptor<E> descriptor, final Class<?> qualifier, final Locale locale) {
+		this.model = model;
+		this.descriptor = descriptor;
+		this.qualifier = qualifier;
+		this.locale = locale;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public EntityDescriptor<E> getDescriptor(final C context) {
+		return this.descriptor;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Locale getLocale(final C context) {
+		return this.locale;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Model<S> getModel(final C context) {
+		return this.model;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Class<?> getQualifier(final C context) {
+		return this.qualifier;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean hasQualifier(final C context) {
+		return !CheckUtil.isNull(this.qualifier);
+	}
+}
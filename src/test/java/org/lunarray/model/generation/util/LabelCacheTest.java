@@ -0,0 +1,118 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.lunarray.model.descriptor.builder.annotation.presentation.builder.PresQualBuilder;
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.resource.simpleresource.SimpleClazzResource;
+import org.lunarray.model.generation.util.model.Qualifier01;
+import org.lunarray.model.generation.util.model.Qualifier02;
+import org.lunarray.model.generation.util.model.Sample01;
+import org.lunarray.model.generation.util.model.Sample02;
+import org.lunarray.model.generation.util.model.SampleEnum;
+
+/**
+ * Test the label cache.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public class LabelCacheTest {
+
+	/** The cache. */
+	private LabelCache cache;
+	/** The first descriptor. */
+	private EntityDescriptor<Sample01> first;
+	/** The second descriptor. */
+	private EntityDescriptor<Sample02> second;
+
+	/** Sets up the test. */
+	@Before
+	public void setup() {
+		final SimpleClazzResource<Object> resource = new SimpleClazzResource<Object>(Sample01.class, Sample02.class, SampleEnum.class);
+		final Model<Object> model = PresQualBuilder.createBuilder().resources(resource).build();
+		this.first = model.getEntity(Sample01.class);
+		this.second = model.getEntity(Sample02.class);
+		this.cache = new LabelCache(3);
+	}
+
+	/**
+	 * Test that a label read since the last put outlives older labels.
+	 * 
+	 * @see LabelCache#getLabel(EntityDescriptor, Class, java.util.Locale)
+	 */
+	@Test
+	public void testEvictLeastRecentlyRead() {
+		this.cache.putLabel(this.first, null, null, "first");
+		this.cache.putLabel(this.second, null, null, "second");
+		this.cache.putLabel(this.second, Qualifier01.class, null, "second 1");
+		Assert.assertEquals("first", this.cache.getLabel(this.first, null, null));
+		Assert.assertTrue(this.cache.putLabel(this.second, Qualifier02.class, null, "second 2"));
+		Assert.assertFalse(this.cache.putLabel(this.second, Qualifier02.class, null, "second 2 again"));
+		Assert.assertEquals(3, this.cache.size());
+		Assert.assertEquals("first", this.cache.getLabel(this.first, null, null));
+		Assert.assertNull(this.cache.getLabel(this.second, null, null));
+		Assert.assertEquals("second 2", this.cache.getLabel(this.second, Qualifier02.class, null));
+	}
+
+	/**
+	 * Test that a label cached again after invalidation is evicted as the
+	 * newest label, not by its invalidated entry.
+	 * 
+	 * @see LabelCache#invalidate(EntityDescriptor)
+	 */
+	@Test
+	public void testInvalidateAndEvict() {
+		this.cache.putLabel(this.first, null, null, "first");
+		this.cache.putLabel(this.second, null, null, "second");
+		this.cache.invalidate(this.first);
+		Assert.assertNull(this.cache.getLabel(this.first, null, null));
+		Assert.assertEquals(1, this.cache.size());
+		this.cache.putLabel(this.first, null, null, "first again");
+		this.cache.putLabel(this.second, Qualifier01.class, null, "second 1");
+		Assert.assertEquals(3, this.cache.size());
+		this.cache.putLabel(this.second, Qualifier02.class, null, "second 2");
+		Assert.assertEquals(3, this.cache.size());
+		Assert.assertEquals("first again", this.cache.getLabel(this.first, null, null));
+		Assert.assertNull(this.cache.getLabel(this.second, null, null));
+		Assert.assertEquals("second 1", this.cache.getLabel(this.second, Qualifier01.class, null));
+		Assert.assertEquals("second 2", this.cache.getLabel(this.second, Qualifier02.class, null));
+	}
+
+	/**
+	 * Test that repeated invalidation keeps the cache within bounds.
+	 * 
+	 * @see LabelCache#invalidate(EntityDescriptor)
+	 */
+	@Test
+	public void testRepeatedInvalidate() {
+		for (int i = 0; i < 100; i++) {
+			this.cache.putLabel(this.first, null, null, "first " + i);
+			this.cache.invalidate(this.first);
+		}
+		Assert.assertEquals(0, this.cache.size());
+		this.cache.putLabel(this.first, null, null, "first");
+		this.cache.putLabel(this.second, null, null, "second");
+		this.cache.putLabel(this.second, Qualifier01.class, null, "second 1");
+		Assert.assertEquals(3, this.cache.size());
+		Assert.assertEquals("first", this.cache.getLabel(this.first, null, null));
+	}
+}
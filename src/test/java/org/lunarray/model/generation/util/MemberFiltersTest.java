@@ -0,0 +1,149 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.lunarray.model.descriptor.builder.annotation.presentation.builder.PresQualBuilder;
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.model.member.MemberDescriptor;
+import org.lunarray.model.descriptor.presentation.RenderType;
+import org.lunarray.model.descriptor.resource.simpleresource.SimpleClazzResource;
+import org.lunarray.model.generation.util.model.Sample01;
+import org.lunarray.model.generation.util.model.Sample02;
+import org.lunarray.model.generation.util.model.SampleEnum;
+
+/**
+ * Test the member filters.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public class MemberFiltersTest {
+
+	/** The strategy builder. */
+	private RenderFactory<MockContext, Sample01> builder;
+	/** The context. */
+	private MockContext context;
+	/** The entity descriptor. */
+	private EntityDescriptor<Sample01> presentationDescriptor;
+	/** The model. */
+	private Model<Object> presentationModel;
+	/** The resolver. */
+	private VariableResolver<MockContext, Object, Sample01> resolver;
+
+	/** Sets up the test. */
+	@SuppressWarnings("unchecked")
+	@Before
+	public void setup() throws Exception {
+		this.resolver = EasyMock.createMock(VariableResolver.class);
+		this.builder = EasyMock.createNiceMock(RenderFactory.class);
+		this.context = new MockContext();
+		final SimpleClazzResource<Object> resource = new SimpleClazzResource<Object>(Sample01.class, Sample02.class, SampleEnum.class);
+		this.presentationModel = PresQualBuilder.createBuilder().resources(resource).build();
+		this.presentationDescriptor = this.presentationModel.getEntity(Sample01.class);
+		EasyMock.reset(this.resolver, this.builder);
+	}
+
+	/**
+	 * Test filtered composition.
+	 * 
+	 * @see Composer#compose(Context, boolean, MemberFilter)
+	 */
+	@Test
+	public void testFiltered() {
+		final PathRecordingFactory recording = new PathRecordingFactory();
+		final Composer<MockContext, Object, Sample01> filtered = new Composer<MockContext, Object, Sample01>(recording, this.resolver);
+		EasyMock.expect(this.resolver.hasQualifier(this.context)).andReturn(false).anyTimes();
+		EasyMock.expect(this.resolver.getDescriptor(this.context)).andReturn(this.presentationDescriptor).anyTimes();
+		EasyMock.expect(this.resolver.getModel(this.context)).andReturn(this.presentationModel).anyTimes();
+		EasyMock.replay(this.resolver, this.builder);
+		filtered.compose(this.context, true, MemberFilters.names("testValue", "inlineValue2.testValue"));
+		Assert.assertTrue(recording.getPaths().contains("testValue"));
+		Assert.assertTrue(recording.getPaths().contains("inlineValue2.testValue"));
+		Assert.assertTrue(Arrays.asList("testValue", "inlineValue2", "inlineValue2.testValue").containsAll(recording.getPaths()));
+		Assert.assertSame(filtered.getPlan(this.context, true, MemberFilters.names("inlineValue2.testValue", "testValue")),
+				filtered.getPlan(this.context, true, MemberFilters.names("testValue", "inlineValue2.testValue")));
+		for (final CompositionStep step : filtered.getPlan(this.context, true, MemberFilters.names("testValue"))) {
+			Assert.assertNotEquals(StepType.BEGIN_OPERATION, step.getType());
+		}
+		recording.getPaths().clear();
+		filtered.compose(this.context, false, MemberFilters.keys());
+		Assert.assertEquals(Collections.singleton("testValue3"), recording.getPaths());
+		Assert.assertEquals(3, filtered.getPlanCache().size());
+		filtered.compose(this.context, false);
+		Assert.assertEquals(4, filtered.getPlanCache().size());
+		EasyMock.verify(this.resolver, this.builder);
+	}
+
+	/**
+	 * Test that the plans of filters without value equality are bounded.
+	 * 
+	 * @see CompositionPlanCache#getMaximumFilters()
+	 */
+	@Test
+	public void testFilteredBounded() {
+		final Composer<MockContext, Object, Sample01> filtered = new Composer<MockContext, Object, Sample01>(this.builder, this.resolver,
+				new CompositionPlanCache(CompositionPlanCache.DEFAULT_MAXIMUM_INLINE_DEPTH, 2),
+				new LabelCache());
+		EasyMock.expect(this.resolver.hasQualifier(this.context)).andReturn(false).anyTimes();
+		EasyMock.expect(this.resolver.getDescriptor(this.context)).andReturn(this.presentationDescriptor).anyTimes();
+		EasyMock.expect(this.resolver.getModel(this.context)).andReturn(this.presentationModel).anyTimes();
+		EasyMock.replay(this.resolver, this.builder);
+		final MemberFilter keys = MemberFilters.keys();
+		for (int i = 0; i < 10; i++) {
+			filtered.compose(this.context, false, keys);
+			filtered.compose(this.context, false, new MemberFilter() {
+				@Override
+				public boolean accept(final String path, final MemberDescriptor<?> member, final RenderType renderType, final boolean key) {
+					return true;
+				}
+			});
+			Assert.assertTrue(filtered.getPlanCache().size() <= 2);
+		}
+		Assert.assertNotNull(filtered.getPlanCache().getPlan(this.presentationDescriptor, null, false, keys));
+		EasyMock.verify(this.resolver, this.builder);
+	}
+
+	/**
+	 * Test that a filtered plan built without cached decision tables doesn't
+	 * resolve the members the filter rejects.
+	 * 
+	 * @see PlanBuilder
+	 */
+	@Test
+	public void testFilteredNotAdapted() {
+		final Composer<MockContext, Object, Sample01> filtered = new Composer<MockContext, Object, Sample01>(this.builder, this.resolver);
+		EasyMock.expect(this.resolver.hasQualifier(this.context)).andReturn(false).anyTimes();
+		EasyMock.expect(this.resolver.getDescriptor(this.context)).andReturn(this.presentationDescriptor).anyTimes();
+		EasyMock.expect(this.resolver.getModel(this.context)).andReturn(this.presentationModel).anyTimes();
+		EasyMock.replay(this.resolver, this.builder);
+		filtered.compose(this.context, true, MemberFilters.names("testValue"));
+		Assert.assertEquals(0, filtered.getPlanCache().getOperationPlans().size());
+		Assert.assertEquals(0, filtered.getPlanCache().getDecisionTables().size());
+		filtered.compose(this.context, true);
+		Assert.assertTrue(filtered.getPlanCache().getOperationPlans().size() > 0);
+		Assert.assertTrue(filtered.getPlanCache().getDecisionTables().size() > 0);
+		EasyMock.verify(this.resolver, this.builder);
+	}
+}
@@ -17,38 +17,18 @@
  */
 package org.lunarray.model.generation.util;
 
-import java.util.Deque;
-import java.util.LinkedList;
-
-import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
-
 /**
  * A mock context.
  * 
  * @author Pal Hargitai (pal@lunarray.org)
  */
 public class MockContext
-		implements Context {
-
-	/** A stack. */
-	private final Deque<PropertyDescriptor<?, ?>> stack;
+		extends PrefixStackContext {
 
 	/**
 	 * Default constructor.
 	 */
 	public MockContext() {
-		this.stack = new LinkedList<PropertyDescriptor<?, ?>>();
-	}
-
-	/** {@inheritDoc} */
-	@Override
-	public PropertyDescriptor<?, ?> popPrefix() {
-		return this.stack.pop();
-	}
-
-	/** {@inheritDoc} */
-	@Override
-	public void pushPrefix(final PropertyDescriptor<?, ?> prefix) {
-		this.stack.push(prefix);
+		// Default constructor.
 	}
 }
@@ -0,0 +1,114 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.Collection;
+
+import org.lunarray.model.descriptor.model.operation.OperationDescriptor;
+import org.lunarray.model.descriptor.model.operation.parameters.CollectionParameterDescriptor;
+import org.lunarray.model.descriptor.model.operation.parameters.ParameterDescriptor;
+import org.lunarray.model.descriptor.model.operation.result.CollectionResultDescriptor;
+import org.lunarray.model.descriptor.model.operation.result.ResultDescriptor;
+import org.lunarray.model.descriptor.model.property.CollectionPropertyDescriptor;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+import org.lunarray.model.descriptor.presentation.RenderType;
+
+/**
+ * A render factory that does nothing, but counts the calls made.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <C>
+ *            The context type.
+ * @param <E>
+ *            The entity type.
+ */
+public class NoopRenderFactory<C extends Context, E>
+		implements RenderFactory<C, E> {
+
+	/** The amount of calls. */
+	private long calls;
+
+	/**
+	 * Default constructor.
+	 */
+	public NoopRenderFactory() {
+		// Default constructor.
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void beginOperation(final C context, final OperationDescriptor<E> descriptor) {
+		this.calls++;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void endOperation(final C context, final OperationDescriptor<E> operation) {
+		this.calls++;
+	}
+
+	/**
+	 * Gets the amount of calls.
+	 * 
+	 * @return The amount of calls.
+	 */
+	public long getCalls() {
+		return this.calls;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <D, P extends Collection<D>> void renderCollectionParameter(final C context, final OperationDescriptor<E> operation,
+			final CollectionParameterDescriptor<D, P> descriptor, final RenderType renderType) {
+		this.calls++;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <D, P extends Collection<D>> void renderCollectionProperty(final C context, final CollectionPropertyDescriptor<D, P, E> descriptor,
+			final RenderType renderType) {
+		this.calls++;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <D, R extends Collection<D>> void renderCollectionResultType(final C context, final OperationDescriptor<E> operation,
+			final CollectionResultDescriptor<D, R> resultDescriptor, final RenderType renderType) {
+		this.calls++;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <P> void renderParameter(final C context, final ParameterDescriptor<P> descriptor, final OperationDescriptor<E> operation,
+			final RenderType renderType) {
+		this.calls++;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <P> void renderProperty(final C context, final PropertyDescriptor<P, E> descriptor, final RenderType renderType) {
+		this.calls++;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <R> void renderResultType(final C context, final OperationDescriptor<E> operation, final ResultDescriptor<R> resultDescriptor,
+			final RenderType renderType) {
+		this.calls++;
+	}
+}
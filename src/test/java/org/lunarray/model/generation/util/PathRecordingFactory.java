@@ -0,0 +1,74 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.lunarray.model.descriptor.model.property.CollectionPropertyDescriptor;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+import org.lunarray.model.descriptor.presentation.RenderType;
+import org.lunarray.model.generation.util.model.Sample01;
+
+/**
+ * A render factory that records the property paths, and checks them
+ * against the context path.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public final class PathRecordingFactory
+		extends NoopRenderFactory<MockContext, Sample01>
+		implements PathRenderFactory<MockContext, Sample01> {
+
+	/** The recorded paths. */
+	private final Set<String> paths;
+
+	/**
+	 * Default constructor.
+	 */
+	public PathRecordingFactory() {
+		this.paths = new HashSet<String>();
+	}
+
+	/**
+	 * Gets the value for the paths field.
+	 * 
+	 * @return The value for the paths field.
+	 */
+	public Set<String> getPaths() {
+		return this.paths;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <D, P extends Collection<D>> void renderCollectionProperty(final MockContext context,
+			final CollectionPropertyDescriptor<D, P, Sample01> descriptor, final RenderType renderType, final PropertyPath path) {
+		Assert.assertSame(context.getPath(), path.getPath());
+		this.paths.add(path.getPath());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <P> void renderProperty(final MockContext context, final PropertyDescriptor<P, Sample01> descriptor,
+			final RenderType renderType, final PropertyPath path) {
+		Assert.assertSame(context.getPath(), path.getPath());
+		this.paths.add(path.getPath());
+	}
+}
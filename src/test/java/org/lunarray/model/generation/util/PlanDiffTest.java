@@ -0,0 +1,372 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.lunarray.model.descriptor.builder.annotation.presentation.builder.PresQualBuilder;
+import org.lunarray.model.descriptor.model.Model;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.model.member.MemberDescriptor;
+import org.lunarray.model.descriptor.model.operation.OperationDescriptor;
+import org.lunarray.model.descriptor.model.operation.parameters.ParameterDescriptor;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+import org.lunarray.model.descriptor.presentation.RenderType;
+import org.lunarray.model.descriptor.resource.simpleresource.SimpleClazzResource;
+import org.lunarray.model.generation.util.model.Sample01;
+import org.lunarray.model.generation.util.model.Sample02;
+import org.lunarray.model.generation.util.model.SampleEnum;
+
+/**
+ * Test the plan difference.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public class PlanDiffTest {
+
+	/** The strategy builder. */
+	private RenderFactory<MockContext, Sample01> builder;
+	/** The composer. */
+	private Composer<MockContext, Object, Sample01> composer;
+	/** The context. */
+	private MockContext context;
+	/** The entity descriptor. */
+	private EntityDescriptor<Sample01> presentationDescriptor;
+	/** The model. */
+	private Model<Object> presentationModel;
+	/** The delta render factory. */
+	private ChangeRecordingFactory recording;
+	/** The resolver. */
+	private VariableResolver<MockContext, Object, Sample01> resolver;
+
+	/** Sets up the test. */
+	@SuppressWarnings("unchecked")
+	@Before
+	public void setup() throws Exception {
+		this.resolver = EasyMock.createMock(VariableResolver.class);
+		this.builder = EasyMock.createNiceMock(RenderFactory.class);
+		this.context = new MockContext();
+		this.recording = new ChangeRecordingFactory();
+		final SimpleClazzResource<Object> resource = new SimpleClazzResource<Object>(Sample01.class, Sample02.class, SampleEnum.class);
+		this.presentationModel = PresQualBuilder.createBuilder().resources(resource).build();
+		this.presentationDescriptor = this.presentationModel.getEntity(Sample01.class);
+		this.composer = new Composer<MockContext, Object, Sample01>(this.builder, this.resolver);
+		EasyMock.reset(this.resolver, this.builder);
+	}
+
+	/**
+	 * Test that members are keyed by kind and parameter types.
+	 * 
+	 * @see PlanDiff#key(CompositionStep)
+	 */
+	@Test
+	public void testKey() {
+		final OperationDescriptor<Object> operation = PlanDiffTest.operation("echo", String.class, Integer.class);
+		Assert.assertEquals("property:echo", PlanDiff.key(CompositionStep.pushPrefix(PlanDiffTest.property("echo"))));
+		Assert.assertEquals("operation:echo()", PlanDiff.key(CompositionStep.beginOperation(PlanDiffTest.operation("echo"))));
+		Assert.assertEquals("operation:echo(java.lang.String,java.lang.Integer)", PlanDiff.key(CompositionStep.beginOperation(operation)));
+	}
+
+	/**
+	 * Test that swapping two members in a longer plan updates a single
+	 * member.
+	 * 
+	 * @see PlanDiff#replay(CompositionPlan, CompositionPlan, Context,
+	 *      DeltaRenderFactory)
+	 */
+	@Test
+	public void testMove() {
+		final List<List<CompositionStep>> members = new ArrayList<List<CompositionStep>>();
+		for (int i = 0; i < 8; i++) {
+			members.add(PlanDiffTest.propertyMember(PlanDiffTest.property("value" + i)));
+		}
+		final CompositionPlan<Object> previous = PlanDiffTest.plan(members);
+		Collections.swap(members, 3, 4);
+		PlanDiff.replay(previous, PlanDiffTest.plan(members), this.context, this.recording);
+		Assert.assertEquals(1, this.recording.changes.size());
+		Assert.assertTrue(this.recording.changes.toString(),
+				this.recording.changes.contains("update property:value3 at 4") || this.recording.changes.contains("update property:value4 at 3"));
+	}
+
+	/**
+	 * Test that a property and an operation sharing a name are told apart.
+	 * 
+	 * @see PlanDiff#replay(CompositionPlan, CompositionPlan, Context,
+	 *      DeltaRenderFactory)
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testNameShared() {
+		final List<CompositionStep> property = PlanDiffTest.propertyMember(PlanDiffTest.property("echo"));
+		final List<CompositionStep> operation = PlanDiffTest.operationMember(PlanDiffTest.operation("echo"));
+		PlanDiff.replay(PlanDiffTest.plan(Arrays.asList(operation)), PlanDiffTest.plan(Arrays.asList(property, operation)), this.context,
+				this.recording);
+		Assert.assertEquals(Arrays.asList("insert property:echo at 0"), this.recording.changes);
+	}
+
+	/**
+	 * Test that reordered overloads keep their keys, so only the moved
+	 * overload is updated.
+	 * 
+	 * @see PlanDiff#replay(CompositionPlan, CompositionPlan, Context,
+	 *      DeltaRenderFactory)
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testOverloadsReordered() {
+		final List<CompositionStep> text = PlanDiffTest.operationMember(PlanDiffTest.operation("echo", String.class));
+		final List<CompositionStep> number = PlanDiffTest.operationMember(PlanDiffTest.operation("echo", Integer.class));
+		final List<CompositionStep> value = PlanDiffTest.propertyMember(PlanDiffTest.property("value"));
+		PlanDiff.replay(PlanDiffTest.plan(Arrays.asList(text, number, value)), PlanDiffTest.plan(Arrays.asList(number, value, text)),
+				this.context, this.recording);
+		Assert.assertEquals(Arrays.asList("update operation:echo(java.lang.String) at 2"), this.recording.changes);
+	}
+
+	/**
+	 * Test incremental recomposition.
+	 * 
+	 * @see Composer#recompose(Context, CompositionPlan, boolean,
+	 *      DeltaRenderFactory)
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testRecompose() {
+		final DeltaRenderFactory<MockContext, Sample01> unchanged = EasyMock.createStrictMock(DeltaRenderFactory.class);
+		final DeltaRenderFactory<MockContext, Sample01> delta = EasyMock.createNiceMock(DeltaRenderFactory.class);
+		EasyMock.expect(this.resolver.hasQualifier(this.context)).andReturn(false).anyTimes();
+		EasyMock.expect(this.resolver.getDescriptor(this.context)).andReturn(this.presentationDescriptor).anyTimes();
+		EasyMock.expect(this.resolver.getModel(this.context)).andReturn(this.presentationModel).anyTimes();
+		delta.beginInsert(EasyMock.same(this.context), EasyMock.startsWith("operation:echoMethod("), EasyMock.anyInt());
+		EasyMock.expectLastCall().once();
+		delta.remove(EasyMock.same(this.context), EasyMock.anyObject(String.class));
+		EasyMock.expectLastCall().andThrow(new AssertionError("No member was removed.")).anyTimes();
+		delta.beginUpdate(EasyMock.same(this.context), EasyMock.anyObject(String.class), EasyMock.anyInt());
+		EasyMock.expectLastCall().andThrow(new AssertionError("No member was changed.")).anyTimes();
+		EasyMock.replay(this.resolver, this.builder, unchanged, delta);
+		final CompositionPlan<Sample01> properties = this.composer.getPlan(this.context, false);
+		Assert.assertSame(properties, this.composer.recompose(this.context, properties, false, unchanged));
+		final CompositionPlan<Sample01> members = this.composer.recompose(this.context, properties, true, delta);
+		Assert.assertSame(this.composer.getPlan(this.context, true), members);
+		EasyMock.verify(this.resolver, this.builder, unchanged, delta);
+	}
+
+	/**
+	 * Test that inserting a member in between doesn't move the members after
+	 * it.
+	 * 
+	 * @see Composer#recompose(Context, CompositionPlan, boolean,
+	 *      DeltaRenderFactory)
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testRecomposeInsert() {
+		final DeltaRenderFactory<MockContext, Sample01> delta = EasyMock.createNiceMock(DeltaRenderFactory.class);
+		final Capture<Integer> index = new Capture<Integer>();
+		EasyMock.expect(this.resolver.hasQualifier(this.context)).andReturn(false).anyTimes();
+		EasyMock.expect(this.resolver.getDescriptor(this.context)).andReturn(this.presentationDescriptor).anyTimes();
+		EasyMock.expect(this.resolver.getModel(this.context)).andReturn(this.presentationModel).anyTimes();
+		delta.beginInsert(EasyMock.same(this.context), EasyMock.eq("property:testValue"), EasyMock.captureInt(index));
+		EasyMock.expectLastCall().once();
+		delta.remove(EasyMock.same(this.context), EasyMock.anyObject(String.class));
+		EasyMock.expectLastCall().andThrow(new AssertionError("No member was removed.")).anyTimes();
+		delta.beginUpdate(EasyMock.same(this.context), EasyMock.anyObject(String.class), EasyMock.anyInt());
+		EasyMock.expectLastCall().andThrow(new AssertionError("No member was moved.")).anyTimes();
+		EasyMock.replay(this.resolver, this.builder, delta);
+		final CompositionPlan<Sample01> previous = this.composer.getPlan(this.context, true, new MemberFilter() {
+
+			/** {@inheritDoc} */
+			@Override
+			public boolean accept(final String path, final MemberDescriptor<?> member, final RenderType renderType, final boolean key) {
+				return !"testValue".equals(path);
+			}
+		});
+		final CompositionPlan<Sample01> current = this.composer.recompose(this.context, previous, true, delta);
+		Assert.assertEquals(previous.getMemberCount() + 1, current.getMemberCount());
+		Assert.assertTrue(index.getValue().intValue() < previous.getMemberCount());
+		EasyMock.verify(this.resolver, this.builder, delta);
+	}
+
+	/**
+	 * Test that moving a single member updates only that member.
+	 * 
+	 * @see Composer#recompose(Context, CompositionPlan, boolean,
+	 *      DeltaRenderFactory)
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testRecomposeMove() {
+		final DeltaRenderFactory<MockContext, Sample01> delta = EasyMock.createNiceMock(DeltaRenderFactory.class);
+		EasyMock.expect(this.resolver.hasQualifier(this.context)).andReturn(false).anyTimes();
+		EasyMock.expect(this.resolver.getDescriptor(this.context)).andReturn(this.presentationDescriptor).anyTimes();
+		EasyMock.expect(this.resolver.getModel(this.context)).andReturn(this.presentationModel).anyTimes();
+		EasyMock.replay(this.resolver, this.builder);
+		final CompositionPlan<Sample01> current = this.composer.getPlan(this.context, true);
+		final List<CompositionStep> steps = new ArrayList<CompositionStep>();
+		for (final CompositionStep step : current) {
+			steps.add(step);
+		}
+		// Move the first member to the end.
+		final int second = current.getMemberStart(1);
+		final List<CompositionStep> moved = new ArrayList<CompositionStep>(steps.subList(second, steps.size()));
+		moved.addAll(steps.subList(0, second));
+		final CompositionPlan<Sample01> previous = new CompositionPlan<Sample01>(moved, this.composer.getPlanCache().getOperationPlans(),
+				null, Collections.<String> emptyList());
+		final String key = PlanDiff.key(steps.get(0));
+		delta.beginUpdate(this.context, key, 0);
+		EasyMock.expectLastCall().once();
+		delta.beginInsert(EasyMock.same(this.context), EasyMock.anyObject(String.class), EasyMock.anyInt());
+		EasyMock.expectLastCall().andThrow(new AssertionError("No member was inserted.")).anyTimes();
+		delta.remove(EasyMock.same(this.context), EasyMock.anyObject(String.class));
+		EasyMock.expectLastCall().andThrow(new AssertionError("No member was removed.")).anyTimes();
+		delta.beginUpdate(EasyMock.same(this.context), EasyMock.not(EasyMock.eq(key)), EasyMock.anyInt());
+		EasyMock.expectLastCall().andThrow(new AssertionError("Only the first member moved.")).anyTimes();
+		EasyMock.replay(delta);
+		Assert.assertSame(current, this.composer.recompose(this.context, previous, true, delta));
+		EasyMock.verify(this.resolver, this.builder, delta);
+	}
+
+	/**
+	 * Creates an operation.
+	 * 
+	 * @param name
+	 *            The operation name.
+	 * @param parameterTypes
+	 *            The parameter types.
+	 * @return The operation.
+	 */
+	@SuppressWarnings("unchecked")
+	private static OperationDescriptor<Object> operation(final String name, final Class<?>... parameterTypes) {
+		final OperationDescriptor<Object> operation = EasyMock.createNiceMock(OperationDescriptor.class);
+		final List<ParameterDescriptor<?>> parameters = new ArrayList<ParameterDescriptor<?>>();
+		for (final Class<?> parameterType : parameterTypes) {
+			final ParameterDescriptor<Object> parameter = EasyMock.createNiceMock(ParameterDescriptor.class);
+			EasyMock.expect(parameter.getParameterType()).andReturn((Class<Object>) parameterType).anyTimes();
+			EasyMock.replay(parameter);
+			parameters.add(parameter);
+		}
+		EasyMock.expect(operation.getName()).andReturn(name).anyTimes();
+		EasyMock.expect(operation.getParameters()).andReturn(parameters).anyTimes();
+		EasyMock.replay(operation);
+		return operation;
+	}
+
+	/**
+	 * Creates the steps of an operation member.
+	 * 
+	 * @param operation
+	 *            The operation.
+	 * @return The steps.
+	 */
+	private static List<CompositionStep> operationMember(final OperationDescriptor<Object> operation) {
+		return Arrays.asList(CompositionStep.beginOperation(operation), CompositionStep.endOperation(operation));
+	}
+
+	/**
+	 * Creates a plan.
+	 * 
+	 * @param members
+	 *            The steps of the members.
+	 * @return The plan.
+	 */
+	private static CompositionPlan<Object> plan(final List<List<CompositionStep>> members) {
+		final List<CompositionStep> steps = new ArrayList<CompositionStep>();
+		for (final List<CompositionStep> member : members) {
+			steps.addAll(member);
+		}
+		return new CompositionPlan<Object>(steps, new OperationPlanCache(), null, Collections.<String> emptyList());
+	}
+
+	/**
+	 * Creates a property.
+	 * 
+	 * @param name
+	 *            The property name.
+	 * @return The property.
+	 */
+	@SuppressWarnings("unchecked")
+	private static PropertyDescriptor<String, Object> property(final String name) {
+		final PropertyDescriptor<String, Object> property = EasyMock.createNiceMock(PropertyDescriptor.class);
+		EasyMock.expect(property.getName()).andReturn(name).anyTimes();
+		EasyMock.replay(property);
+		return property;
+	}
+
+	/**
+	 * Creates the steps of a property member.
+	 * 
+	 * @param property
+	 *            The property.
+	 * @return The steps.
+	 */
+	private static List<CompositionStep> propertyMember(final PropertyDescriptor<String, Object> property) {
+		return Arrays.asList(CompositionStep.pushPrefix(property), CompositionStep.property(property, RenderType.TEXT),
+				CompositionStep.popPrefix(property));
+	}
+
+	/**
+	 * A delta render factory that records the member changes.
+	 * 
+	 * @author Pal Hargitai (pal@lunarray.org)
+	 */
+	private static final class ChangeRecordingFactory
+			extends NoopRenderFactory<MockContext, Object>
+			implements DeltaRenderFactory<MockContext, Object> {
+
+		/** The recorded changes. */
+		private final List<String> changes;
+
+		/**
+		 * Default constructor.
+		 */
+		public ChangeRecordingFactory() {
+			this.changes = new ArrayList<String>();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void beginInsert(final MockContext context, final String member, final int index) {
+			this.changes.add("insert " + member + " at " + index);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void beginUpdate(final MockContext context, final String member, final int index) {
+			this.changes.add("update " + member + " at " + index);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void endMember(final MockContext context, final String member) {
+			// Nothing to record.
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void remove(final MockContext context, final String member) {
+			this.changes.add("remove " + member);
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+
+/**
+ * Test the prefix stack context.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public class PrefixStackContextTest {
+
+	/** The context. */
+	private PrefixStackContext context;
+	/** The inline property. */
+	private PropertyDescriptor<?, ?> inline;
+	/** The value property. */
+	private PropertyDescriptor<?, ?> value;
+
+	/** Sets up the test. */
+	@Before
+	public void setup() {
+		this.context = new PrefixStackContext(1);
+		this.inline = EasyMock.createMock(PropertyDescriptor.class);
+		this.value = EasyMock.createMock(PropertyDescriptor.class);
+		EasyMock.expect(this.inline.getName()).andReturn("inlineValue2").once();
+		EasyMock.expect(this.value.getName()).andReturn("testValue").once();
+		EasyMock.replay(this.inline, this.value);
+	}
+
+	/**
+	 * Test the cached path.
+	 * 
+	 * @see PrefixStackContext#getPath()
+	 */
+	@Test
+	public void testPath() {
+		Assert.assertEquals("", this.context.getPath());
+		for (int i = 0; i < 2; i++) {
+			// Pushed as the composer pushes an inline property.
+			this.context.pushPrefix(this.inline);
+			this.context.pushPrefix(this.inline);
+			this.context.pushPrefix(this.value);
+			Assert.assertEquals(3, this.context.getDepth());
+			Assert.assertSame("inlineValue2.testValue".intern(), this.context.getPath());
+			Assert.assertSame(this.value, this.context.popPrefix());
+			Assert.assertEquals("inlineValue2", this.context.getPath());
+			Assert.assertSame(this.inline, this.context.getPrefix());
+			this.context.reset();
+			Assert.assertEquals(0, this.context.getDepth());
+			Assert.assertNull(this.context.getPrefix());
+		}
+		EasyMock.verify(this.inline, this.value);
+	}
+
+	/**
+	 * Test popping an empty stack.
+	 * 
+	 * @see PrefixStackContext#popPrefix()
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testPopEmpty() {
+		this.context.popPrefix();
+	}
+}
@@ -0,0 +1,91 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.lunarray.model.descriptor.model.entity.EntityDescriptor;
+import org.lunarray.model.descriptor.qualifier.QualifierEntityDescriptor;
+import org.lunarray.model.generation.util.model.Qualifier01;
+import org.lunarray.model.generation.util.model.Qualifier02;
+import org.lunarray.model.generation.util.model.Sample01;
+
+/**
+ * Test the qualified descriptor memo.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ */
+public class QualifiedDescriptorCacheTest {
+
+	/** The memo. */
+	private QualifiedDescriptorCache cache;
+	/** The entity descriptor. */
+	private EntityDescriptor<Sample01> descriptor;
+	/** The qualified entity descriptor. */
+	private EntityDescriptor<Sample01> qualified;
+	/** The qualifier entity descriptor. */
+	private QualifierEntityDescriptor<Sample01> qualifierDescriptor;
+
+	/** Sets up the test. */
+	@SuppressWarnings("unchecked")
+	@Before
+	public void setup() {
+		this.cache = new QualifiedDescriptorCache();
+		this.descriptor = EasyMock.createMock(EntityDescriptor.class);
+		this.qualified = EasyMock.createMock(EntityDescriptor.class);
+		this.qualifierDescriptor = EasyMock.createMock(QualifierEntityDescriptor.class);
+	}
+
+	/**
+	 * Test that descriptors are qualified once per qualifier.
+	 * 
+	 * @see QualifiedDescriptorCache#qualify(EntityDescriptor, Class)
+	 */
+	@Test
+	public void testQualifiedOnce() {
+		EasyMock.expect(this.descriptor.adapt(QualifierEntityDescriptor.class)).andReturn(this.qualifierDescriptor).times(2);
+		EasyMock.expect(this.qualifierDescriptor.getQualifierEntity(Qualifier01.class)).andReturn(this.qualified).once();
+		EasyMock.expect(this.qualifierDescriptor.getQualifierEntity(Qualifier02.class)).andReturn(this.descriptor).once();
+		EasyMock.replay(this.descriptor, this.qualified, this.qualifierDescriptor);
+		for (int i = 0; i < 3; i++) {
+			Assert.assertSame(this.qualified, this.cache.qualify(this.descriptor, Qualifier01.class));
+			Assert.assertSame(this.descriptor, this.cache.qualify(this.descriptor, Qualifier02.class));
+			Assert.assertSame(this.descriptor, this.cache.qualify(this.descriptor, null));
+		}
+		Assert.assertEquals(2, this.cache.size());
+		this.cache.clear();
+		Assert.assertEquals(0, this.cache.size());
+		EasyMock.verify(this.descriptor, this.qualified, this.qualifierDescriptor);
+	}
+
+	/**
+	 * Test that unqualifiable descriptors are returned as is.
+	 * 
+	 * @see QualifiedDescriptorCache#qualify(EntityDescriptor, Class)
+	 */
+	@Test
+	public void testUnqualifiable() {
+		EasyMock.expect(this.descriptor.adapt(QualifierEntityDescriptor.class)).andReturn(null).once();
+		EasyMock.replay(this.descriptor, this.qualified, this.qualifierDescriptor);
+		Assert.assertSame(this.descriptor, this.cache.qualify(this.descriptor, Qualifier01.class));
+		Assert.assertSame(this.descriptor, this.cache.qualify(this.descriptor, Qualifier01.class));
+		EasyMock.verify(this.descriptor, this.qualified, this.qualifierDescriptor);
+	}
+}
@@ -0,0 +1,141 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.lunarray.model.descriptor.model.operation.OperationDescriptor;
+import org.lunarray.model.descriptor.model.operation.parameters.CollectionParameterDescriptor;
+import org.lunarray.model.descriptor.model.operation.parameters.ParameterDescriptor;
+import org.lunarray.model.descriptor.model.operation.result.CollectionResultDescriptor;
+import org.lunarray.model.descriptor.model.operation.result.ResultDescriptor;
+import org.lunarray.model.descriptor.model.property.CollectionPropertyDescriptor;
+import org.lunarray.model.descriptor.model.property.PropertyDescriptor;
+import org.lunarray.model.descriptor.presentation.RenderType;
+
+/**
+ * A render factory that records the calls made, in order. Every call is
+ * recorded with its descriptors, its render type and, for a prefix stack
+ * context, the current path.
+ * 
+ * @author Pal Hargitai (pal@lunarray.org)
+ * @param <C>
+ *            The context type.
+ * @param <E>
+ *            The entity type.
+ */
+public class RecordingRenderFactory<C extends Context, E>
+		implements RenderFactory<C, E> {
+
+	/** The recorded calls. */
+	private final List<List<Object>> calls;
+
+	/**
+	 * Default constructor.
+	 */
+	public RecordingRenderFactory() {
+		this.calls = new ArrayList<List<Object>>();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void beginOperation(final C context, final OperationDescriptor<E> descriptor) {
+		this.record(context, "beginOperation", descriptor, null, null);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void endOperation(final C context, final OperationDescriptor<E> operation) {
+		this.record(context, "endOperation", operation, null, null);
+	}
+
+	/**
+	 * Gets the value for the calls field.
+	 * 
+	 * @return The value for the calls field.
+	 */
+	public List<List<Object>> getCalls() {
+		return this.calls;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <D, P extends Collection<D>> void renderCollectionParameter(final C context, final OperationDescriptor<E> operation,
+			final CollectionParameterDescriptor<D, P> descriptor, final RenderType renderType) {
+		this.record(context, "renderCollectionParameter", operation, descriptor, renderType);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <D, P extends Collection<D>> void renderCollectionProperty(final C context, final CollectionPropertyDescriptor<D, P, E> descriptor,
+			final RenderType renderType) {
+		this.record(context, "renderCollectionProperty", descriptor, null, renderType);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <D, R extends Collection<D>> void renderCollectionResultType(final C context, final OperationDescriptor<E> operation,
+			final CollectionResultDescriptor<D, R> resultDescriptor, final RenderType renderType) {
+		this.record(context, "renderCollectionResultType", operation, resultDescriptor, renderType);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <P> void renderParameter(final C context, final ParameterDescriptor<P> descriptor, final OperationDescriptor<E> operation,
+			final RenderType renderType) {
+		this.record(context, "renderParameter", operation, descriptor, renderType);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <P> void renderProperty(final C context, final PropertyDescriptor<P, E> descriptor, final RenderType renderType) {
+		this.record(context, "renderProperty", descriptor, null, renderType);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public <R> void renderResultType(final C context, final OperationDescriptor<E> operation, final ResultDescriptor<R> resultDescriptor,
+			final RenderType renderType) {
+		this.record(context, "renderResultType", operation, resultDescriptor, renderType);
+	}
+
+	/**
+	 * Records a call.
+	 * 
+	 * @param context
+	 *            The context.
+	 * @param method
+	 *            The method name.
+	 * @param descriptor
+	 *            The member descriptor.
+	 * @param inner
+	 *            The parameter or result descriptor, may be null.
+	 * @param renderType
+	 *            The render type, may be null.
+	 */
+	private void record(final C context, final String method, final Object descriptor, final Object inner, final RenderType renderType) {
+		String path = null;
+		if (context instanceof PrefixStackContext) {
+			path = ((PrefixStackContext) context).getPath();
+		}
+		this.calls.add(Arrays.asList(method, descriptor, inner, renderType, path));
+	}
+}
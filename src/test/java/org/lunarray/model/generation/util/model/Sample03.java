@@ -0,0 +1,63 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util.model;
+
+import java.io.Serializable;
+
+import org.lunarray.model.descriptor.model.annotations.Key;
+import org.lunarray.model.descriptor.presentation.annotations.PresentationHint;
+import org.lunarray.model.descriptor.util.BooleanInherit;
+
+public class Sample03
+		implements Serializable {
+
+	/** Serial id. */
+	private static final long serialVersionUID = 3816203359215470553L;
+
+	@Key
+	private String id;
+
+	@PresentationHint(inLine = BooleanInherit.TRUE)
+	private Sample03 parent;
+
+	private String testValue;
+
+	public String getId() {
+		return this.id;
+	}
+
+	public Sample03 getParent() {
+		return this.parent;
+	}
+
+	public String getTestValue() {
+		return this.testValue;
+	}
+
+	public void setId(final String id) {
+		this.id = id;
+	}
+
+	public void setParent(final Sample03 parent) {
+		this.parent = parent;
+	}
+
+	public void setTestValue(final String testValue) {
+		this.testValue = testValue;
+	}
+}
@@ -0,0 +1,67 @@
+/* 
+ * Model Tools.
+ * Copyright (C) 2013 Pal Hargitai (pal@lunarray.org)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.lunarray.model.generation.util.model;
+
+import java.io.Serializable;
+
+import org.lunarray.model.descriptor.model.annotations.Key;
+import org.lunarray.model.descriptor.presentation.annotations.PresentationHint;
+import org.lunarray.model.descriptor.util.BooleanInherit;
+
+public class Sample05
+		implements Serializable {
+
+	/** Serial id. */
+	private static final long serialVersionUID = 6270354139562813270L;
+
+	@Key
+	private String id;
+
+	private String name;
+
+	@PresentationHint(inLine = BooleanInherit.TRUE)
+	private Sample02 nested;
+
+	public String echoMethod(final String argument) {
+		return argument;
+	}
+
+	public String getId() {
+		return this.id;
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public Sample02 getNested() {
+		return this.nested;
+	}
+
+	public void setId(final String id) {
+		this.id = id;
+	}
+
+	public void setName(final String name) {
+		this.name = name;
+	}
+
+	public void setNested(final Sample02 nested) {
+		this.nested = nested;
+	}
+}